@@ -1,6 +1,10 @@
 /* (C)2023 */
 package com.example.demo;
 
+import com.example.demo.service.CapacityProfile;
+import com.example.demo.service.DeploymentAlarms;
+import com.example.demo.service.PerformanceGateProfile;
+import com.example.demo.service.ServiceOptions;
 import com.example.demo.toolchain.Toolchain;
 
 import software.amazon.awscdk.App;
@@ -39,7 +43,18 @@ public class Demo {
 
         // note that the Toolchain build() method encapsulates
         // implementaton details for adding role permissions in cross-account scenarios
-        Toolchain.Builder.create(app, Constants.APP_NAME+"Toolchain")
+        toolchain(app).build();
+
+        app.synth();
+    }
+
+    /**
+     * The Toolchain of the application, before it is built, so the synth benchmark
+     * (SynthBenchmark) can add stages to it.
+     */
+    public static Toolchain.Builder toolchain(App app) {
+
+        return Toolchain.Builder.create(app, Constants.APP_NAME+"Toolchain")
                 .stackProperties(StackProps.builder()
                         .env(Environment.builder()
                                 .account(Demo.TOOLCHAIN_ACCOUNT)
@@ -54,9 +69,16 @@ public class Demo {
                         Environment.builder()
                                 .account(Demo.SERVICE_ACCOUNT)
                                 .region(Demo.SERVICE_REGION)
-                                .build())                                                                                                             
-                .build();
-
-        app.synth();
+                                .build(),
+                        ServiceOptions.builder()
+                                .capacity(CapacityProfile.builder()
+                                        .minTasks(2)
+                                        .maxTasks(6)
+                                        .build())
+                                .alarms(DeploymentAlarms.builder()
+                                        .serviceLatencyP99Millis(250)
+                                        .build())
+                                .performanceGate(PerformanceGateProfile.defaults())
+                                .build());
     }
 }
\ No newline at end of file
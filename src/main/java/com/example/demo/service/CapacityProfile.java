@@ -0,0 +1,187 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Size and scaling of the service in a stage: the Fargate task size, the container memory, and
+ * the bounds and targets of the target tracking policies (ALB requests per target and CPU).
+ * Both policies scale out, only the CPU policy scales in: the request count of the idle target
+ * group of a blue/green pair would otherwise keep the service scaled out. With maxTasks equal to
+ * minTasks the service runs a fixed number of tasks.
+ */
+public final class CapacityProfile {
+
+    private final int taskCpu;
+    private final int taskMemoryMiB;
+    private final int containerMemoryReservationMiB;
+    private final int containerMemoryLimitMiB;
+    private final int minTasks;
+    private final int maxTasks;
+    private final int requestsPerTarget;
+    private final int cpuUtilizationPercent;
+    private final Duration scaleInCooldown;
+    private final Duration scaleOutCooldown;
+
+    private CapacityProfile(Builder builder) {
+        this.taskCpu = builder.taskCpu;
+        this.taskMemoryMiB = builder.taskMemoryMiB;
+        this.containerMemoryReservationMiB = builder.containerMemoryReservationMiB;
+        this.containerMemoryLimitMiB = builder.containerMemoryLimitMiB;
+        this.minTasks = builder.minTasks;
+        this.maxTasks = builder.maxTasks;
+        this.requestsPerTarget = builder.requestsPerTarget;
+        this.cpuUtilizationPercent = builder.cpuUtilizationPercent;
+        this.scaleInCooldown = builder.scaleInCooldown;
+        this.scaleOutCooldown = builder.scaleOutCooldown;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Two tasks of 1 vCPU and 2 GiB, without autoscaling.
+     */
+    public static CapacityProfile defaults() {
+        return builder().build();
+    }
+
+    public int getTaskCpu() {
+        return taskCpu;
+    }
+
+    public int getTaskMemoryMiB() {
+        return taskMemoryMiB;
+    }
+
+    public int getContainerMemoryReservationMiB() {
+        return containerMemoryReservationMiB;
+    }
+
+    public int getContainerMemoryLimitMiB() {
+        return containerMemoryLimitMiB;
+    }
+
+    public int getMinTasks() {
+        return minTasks;
+    }
+
+    public int getMaxTasks() {
+        return maxTasks;
+    }
+
+    public boolean isAutoScaling() {
+        return maxTasks > minTasks;
+    }
+
+    public int getRequestsPerTarget() {
+        return requestsPerTarget;
+    }
+
+    public int getCpuUtilizationPercent() {
+        return cpuUtilizationPercent;
+    }
+
+    public Duration getScaleInCooldown() {
+        return scaleInCooldown;
+    }
+
+    public Duration getScaleOutCooldown() {
+        return scaleOutCooldown;
+    }
+
+    public static final class Builder {
+
+        private int taskCpu = 1024;
+        private int taskMemoryMiB = 2048;
+        private int containerMemoryReservationMiB = 256;
+        private int containerMemoryLimitMiB = 512;
+        private int minTasks = 2;
+        private int maxTasks = 2;
+        private int requestsPerTarget = 1000;
+        private int cpuUtilizationPercent = 60;
+        // scale in slowly, a task removed too early is expensive to start again
+        private Duration scaleInCooldown = Duration.minutes(5);
+        private Duration scaleOutCooldown = Duration.minutes(1);
+
+        private Builder() {}
+
+        /**
+         * CPU units of the task, 1024 per vCPU. Must be a valid Fargate combination with the
+         * task memory.
+         */
+        public Builder taskCpu(int taskCpu) {
+            this.taskCpu = taskCpu;
+            return this;
+        }
+
+        public Builder taskMemoryMiB(int taskMemoryMiB) {
+            this.taskMemoryMiB = taskMemoryMiB;
+            return this;
+        }
+
+        public Builder containerMemoryReservationMiB(int containerMemoryReservationMiB) {
+            this.containerMemoryReservationMiB = containerMemoryReservationMiB;
+            return this;
+        }
+
+        /**
+         * Hard memory limit of the service container. The JVM options are derived from it.
+         */
+        public Builder containerMemoryLimitMiB(int containerMemoryLimitMiB) {
+            this.containerMemoryLimitMiB = containerMemoryLimitMiB;
+            return this;
+        }
+
+        public Builder minTasks(int minTasks) {
+            this.minTasks = minTasks;
+            return this;
+        }
+
+        public Builder maxTasks(int maxTasks) {
+            this.maxTasks = maxTasks;
+            return this;
+        }
+
+        /**
+         * Target of ALBRequestCountPerTarget: requests per task per minute. Scale-out only.
+         */
+        public Builder requestsPerTarget(int requestsPerTarget) {
+            this.requestsPerTarget = requestsPerTarget;
+            return this;
+        }
+
+        /**
+         * Target of the average CPU utilization of the service. This policy also scales in.
+         */
+        public Builder cpuUtilizationPercent(int cpuUtilizationPercent) {
+            this.cpuUtilizationPercent = cpuUtilizationPercent;
+            return this;
+        }
+
+        public Builder scaleInCooldown(Duration scaleInCooldown) {
+            this.scaleInCooldown = scaleInCooldown;
+            return this;
+        }
+
+        public Builder scaleOutCooldown(Duration scaleOutCooldown) {
+            this.scaleOutCooldown = scaleOutCooldown;
+            return this;
+        }
+
+        public CapacityProfile build() {
+
+            if (minTasks < 1 || maxTasks < minTasks) {
+                throw new IllegalArgumentException("Invalid task counts: min " + minTasks + ", max " + maxTasks);
+            }
+            if (containerMemoryLimitMiB > taskMemoryMiB || containerMemoryReservationMiB > containerMemoryLimitMiB) {
+                throw new IllegalArgumentException("Container memory " + containerMemoryReservationMiB + "/"
+                        + containerMemoryLimitMiB + " MiB does not fit the task memory " + taskMemoryMiB + " MiB");
+            }
+            // fails early, at the stage definition, when the container cannot hold the JVM
+            JvmOptions.forContainer(taskCpu, containerMemoryLimitMiB);
+            return new CapacityProfile(this);
+        }
+    }
+}
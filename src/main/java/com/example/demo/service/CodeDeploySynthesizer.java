@@ -0,0 +1,59 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import software.amazon.awscdk.DefaultStackSynthesizer;
+import software.amazon.awscdk.ISynthesisSession;
+import software.amazon.awscdk.StackProps;
+
+/**
+ * Synthesizer of the Service stack: it synthesizes the stack like the default synthesizer, then
+ * writes the CodeDeploy task definition and AppSpec of its TaskDefinitionTemplate next to the
+ * template, once the template they are checked against exists.
+ */
+public final class CodeDeploySynthesizer extends DefaultStackSynthesizer {
+
+    private TaskDefinitionTemplate template;
+
+    /**
+     * @return the props with a new CodeDeploySynthesizer, in place of the synthesizer they have
+     */
+    public static StackProps props(StackProps props) {
+
+        StackProps.Builder builder = StackProps.builder().synthesizer(new CodeDeploySynthesizer());
+        if (props != null) {
+            builder.analyticsReporting(props.getAnalyticsReporting())
+                    .crossRegionReferences(props.getCrossRegionReferences())
+                    .description(props.getDescription())
+                    .env(props.getEnv())
+                    .permissionsBoundary(props.getPermissionsBoundary())
+                    .stackName(props.getStackName())
+                    .tags(props.getTags())
+                    .terminationProtection(props.getTerminationProtection());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param template rendered and written when the stack is synthesized
+     */
+    public CodeDeploySynthesizer codeDeployTemplate(TaskDefinitionTemplate template) {
+        this.template = template;
+        return this;
+    }
+
+    @Override
+    public void synthesize(ISynthesisSession session) {
+
+        super.synthesize(session);
+        if (template == null) {
+            return;
+        }
+        try {
+            template.synthesize(Paths.get(session.getOutdir()));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write the CodeDeploy templates to " + session.getOutdir(), e);
+        }
+    }
+}
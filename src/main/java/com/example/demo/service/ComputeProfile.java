@@ -0,0 +1,177 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import software.amazon.awscdk.services.ecr.assets.Platform;
+import software.amazon.awscdk.services.ecs.CapacityProviderStrategy;
+import software.amazon.awscdk.services.ecs.CpuArchitecture;
+
+/**
+ * Where the tasks of the service run: the CPU architecture of the task definition, and the
+ * Fargate capacity providers the tasks are placed on.
+ *
+ * With a spotWeight, the service mixes Fargate and Fargate Spot: the first onDemandBase tasks
+ * always run on Fargate, and the tasks above it are split between Fargate and Fargate Spot by
+ * their weights. Spot tasks are stopped with a SIGTERM two minutes ahead, like a deployment
+ * stops a task, so the service drains them the same way. Fargate Spot only runs x86 Linux
+ * tasks: ARM64 stages run on Fargate only. The pipeline publishes its images for the
+ * architectures of its stages, as multi-arch images when there are both, so the same digest runs
+ * on both architectures.
+ */
+public final class ComputeProfile {
+
+    public enum Architecture {
+        X86_64(CpuArchitecture.X86_64, Platform.LINUX_AMD64, "linux/amd64"),
+        ARM64(CpuArchitecture.ARM64, Platform.LINUX_ARM64, "linux/arm64");
+
+        private final CpuArchitecture cpuArchitecture;
+        private final Platform assetPlatform;
+        private final String dockerPlatform;
+
+        Architecture(CpuArchitecture cpuArchitecture, Platform assetPlatform, String dockerPlatform) {
+            this.cpuArchitecture = cpuArchitecture;
+            this.assetPlatform = assetPlatform;
+            this.dockerPlatform = dockerPlatform;
+        }
+
+        public CpuArchitecture getCpuArchitecture() {
+            return cpuArchitecture;
+        }
+
+        /**
+         * @return the platform the Docker image assets are built for, outside the pipeline
+         */
+        public Platform getAssetPlatform() {
+            return assetPlatform;
+        }
+
+        /**
+         * @return the platform of the image, as docker build --platform names it
+         */
+        public String getDockerPlatform() {
+            return dockerPlatform;
+        }
+    }
+
+    static final String FARGATE = "FARGATE";
+    static final String FARGATE_SPOT = "FARGATE_SPOT";
+
+    private final Architecture architecture;
+    private final int onDemandBase;
+    private final int onDemandWeight;
+    private final int spotWeight;
+
+    private ComputeProfile(Builder builder) {
+        this.architecture = builder.architecture;
+        this.onDemandBase = builder.onDemandBase;
+        this.onDemandWeight = builder.onDemandWeight;
+        this.spotWeight = builder.spotWeight;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * x86 tasks, all on Fargate.
+     */
+    public static ComputeProfile defaults() {
+        return builder().build();
+    }
+
+    public Architecture getArchitecture() {
+        return architecture;
+    }
+
+    public int getOnDemandBase() {
+        return onDemandBase;
+    }
+
+    public int getOnDemandWeight() {
+        return onDemandWeight;
+    }
+
+    public int getSpotWeight() {
+        return spotWeight;
+    }
+
+    public boolean isSpot() {
+        return spotWeight > 0;
+    }
+
+    /**
+     * @return the capacity provider strategy of the service, empty when every task runs on
+     *     Fargate with the FARGATE launch type
+     */
+    public List<CapacityProviderStrategy> getCapacityProviderStrategies() {
+
+        List<CapacityProviderStrategy> strategies = new ArrayList<>();
+        if (!isSpot()) {
+            return strategies;
+        }
+        strategies.add(CapacityProviderStrategy.builder()
+                .capacityProvider(FARGATE)
+                .base(onDemandBase)
+                .weight(onDemandWeight)
+                .build());
+        strategies.add(CapacityProviderStrategy.builder()
+                .capacityProvider(FARGATE_SPOT)
+                .weight(spotWeight)
+                .build());
+        return strategies;
+    }
+
+    public static final class Builder {
+
+        private Architecture architecture = Architecture.X86_64;
+        private int onDemandBase = 1;
+        private int onDemandWeight = 1;
+        private int spotWeight = 0;
+
+        private Builder() {}
+
+        public Builder architecture(Architecture architecture) {
+            this.architecture = architecture;
+            return this;
+        }
+
+        /**
+         * Tasks that always run on Fargate, whatever the weights, at least 1 with Fargate Spot.
+         */
+        public Builder onDemandBase(int onDemandBase) {
+            this.onDemandBase = onDemandBase;
+            return this;
+        }
+
+        public Builder onDemandWeight(int onDemandWeight) {
+            this.onDemandWeight = onDemandWeight;
+            return this;
+        }
+
+        /**
+         * Weight of Fargate Spot for the tasks above the on-demand base, 0 (default) to run every
+         * task on Fargate. X86_64 only.
+         */
+        public Builder spotWeight(int spotWeight) {
+            this.spotWeight = spotWeight;
+            return this;
+        }
+
+        public ComputeProfile build() {
+
+            if (onDemandWeight < 0 || spotWeight < 0 || onDemandWeight + spotWeight == 0) {
+                throw new IllegalArgumentException(
+                        "Invalid capacity provider weights: " + onDemandWeight + " Fargate, " + spotWeight + " Spot");
+            }
+            // otherwise a Spot interruption can stop every task of the service at once
+            if (spotWeight > 0 && onDemandBase < 1) {
+                throw new IllegalArgumentException("Fargate Spot needs an on-demand base of at least 1 task");
+            }
+            if (spotWeight > 0 && architecture != Architecture.X86_64) {
+                throw new IllegalArgumentException("Fargate Spot does not run " + architecture + " tasks");
+            }
+            return new ComputeProfile(this);
+        }
+    }
+}
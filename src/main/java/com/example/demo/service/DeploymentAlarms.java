@@ -0,0 +1,156 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Thresholds of the CloudWatch alarms that roll back a blue/green deployment: the p99 of the
+ * ALB TargetResponseTime and the rate of target 5xx responses, of each target group, and
+ * optionally the p99 latency the service publishes itself (LatencyP99 of the 2xx responses of
+ * one route, from the EMF metrics).
+ *
+ * An alarm fires when datapointsToAlarm of the last evaluationPeriods periods breach the
+ * threshold. With the default one minute period and 2 of 3 datapoints, a canary that degrades
+ * latency is rolled back within the 5 minutes of CANARY_10_PERCENT_5_MINUTES.
+ */
+public final class DeploymentAlarms {
+
+    private final Duration responseTimeP99;
+    private final double target5xxRatePercent;
+    private final int serviceLatencyP99Millis;
+    private final String serviceLatencyRoute;
+    private final Duration period;
+    private final int evaluationPeriods;
+    private final int datapointsToAlarm;
+
+    private DeploymentAlarms(Builder builder) {
+        this.responseTimeP99 = builder.responseTimeP99;
+        this.target5xxRatePercent = builder.target5xxRatePercent;
+        this.serviceLatencyP99Millis = builder.serviceLatencyP99Millis;
+        this.serviceLatencyRoute = builder.serviceLatencyRoute;
+        this.period = builder.period;
+        this.evaluationPeriods = builder.evaluationPeriods;
+        this.datapointsToAlarm = builder.datapointsToAlarm;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Rolls back on a TargetResponseTime p99 above 1 second or more than 1% of 5xx responses,
+     * without an alarm on the service latency.
+     */
+    public static DeploymentAlarms defaults() {
+        return builder().build();
+    }
+
+    public Duration getResponseTimeP99() {
+        return responseTimeP99;
+    }
+
+    public double getTarget5xxRatePercent() {
+        return target5xxRatePercent;
+    }
+
+    public int getServiceLatencyP99Millis() {
+        return serviceLatencyP99Millis;
+    }
+
+    public boolean isServiceLatencyAlarm() {
+        return serviceLatencyP99Millis > 0;
+    }
+
+    public String getServiceLatencyRoute() {
+        return serviceLatencyRoute;
+    }
+
+    public Duration getPeriod() {
+        return period;
+    }
+
+    public int getEvaluationPeriods() {
+        return evaluationPeriods;
+    }
+
+    public int getDatapointsToAlarm() {
+        return datapointsToAlarm;
+    }
+
+    public static final class Builder {
+
+        private Duration responseTimeP99 = Duration.seconds(1);
+        private double target5xxRatePercent = 1;
+        private int serviceLatencyP99Millis = 0;
+        private String serviceLatencyRoute = "/";
+        private Duration period = Duration.minutes(1);
+        private int evaluationPeriods = 3;
+        private int datapointsToAlarm = 2;
+
+        private Builder() {}
+
+        /**
+         * Threshold of the p99 of the ALB TargetResponseTime of a target group.
+         */
+        public Builder responseTimeP99(Duration responseTimeP99) {
+            this.responseTimeP99 = responseTimeP99;
+            return this;
+        }
+
+        /**
+         * Threshold of HTTPCode_Target_5XX_Count, in percent of the RequestCount of a target
+         * group.
+         */
+        public Builder target5xxRatePercent(double target5xxRatePercent) {
+            this.target5xxRatePercent = target5xxRatePercent;
+            return this;
+        }
+
+        /**
+         * Threshold of the LatencyP99 the service publishes for the route, 0 to disable the
+         * alarm. The service measures without the load balancer and network time.
+         */
+        public Builder serviceLatencyP99Millis(int serviceLatencyP99Millis) {
+            this.serviceLatencyP99Millis = serviceLatencyP99Millis;
+            return this;
+        }
+
+        /**
+         * Route template of the service latency alarm, as published in the Route dimension.
+         */
+        public Builder serviceLatencyRoute(String serviceLatencyRoute) {
+            this.serviceLatencyRoute = serviceLatencyRoute;
+            return this;
+        }
+
+        public Builder period(Duration period) {
+            this.period = period;
+            return this;
+        }
+
+        public Builder evaluationPeriods(int evaluationPeriods) {
+            this.evaluationPeriods = evaluationPeriods;
+            return this;
+        }
+
+        public Builder datapointsToAlarm(int datapointsToAlarm) {
+            this.datapointsToAlarm = datapointsToAlarm;
+            return this;
+        }
+
+        public DeploymentAlarms build() {
+
+            if (datapointsToAlarm < 1 || datapointsToAlarm > evaluationPeriods) {
+                throw new IllegalArgumentException("Invalid alarm datapoints: " + datapointsToAlarm + " out of "
+                        + evaluationPeriods);
+            }
+            if (target5xxRatePercent <= 0 || target5xxRatePercent > 100) {
+                throw new IllegalArgumentException("Invalid 5xx rate threshold: " + target5xxRatePercent + "%");
+            }
+            if (serviceLatencyP99Millis < 0) {
+                throw new IllegalArgumentException("Invalid service latency threshold: " + serviceLatencyP99Millis);
+            }
+            return new DeploymentAlarms(this);
+        }
+    }
+}
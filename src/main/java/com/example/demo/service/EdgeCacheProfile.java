@@ -0,0 +1,131 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.services.cloudfront.PriceClass;
+
+/**
+ * Settings of the CloudFront distribution in front of the load balancer of a stage.
+ *
+ * The service marks its static responses as cacheable by shared caches for a day, with
+ * s-maxage, and browsers revalidate them on every request with their ETag. The distribution caches
+ * them for at most maxTtl, and compresses them when the viewer accepts it. The origin shield, in
+ * the region of the stage by default, collapses the misses of all edge locations into a single
+ * request to the load balancer.
+ *
+ * The content only changes with a deployment: the AfterAllowTraffic hook of every deployment
+ * invalidates invalidationPaths once production traffic is served by the new version.
+ */
+public final class EdgeCacheProfile {
+
+    private final Duration defaultTtl;
+    private final Duration maxTtl;
+    private final PriceClass priceClass;
+    private final String originShieldRegion;
+    private final List<String> invalidationPaths;
+
+    private EdgeCacheProfile(Builder builder) {
+        this.defaultTtl = builder.defaultTtl;
+        this.maxTtl = builder.maxTtl;
+        this.priceClass = builder.priceClass;
+        this.originShieldRegion = builder.originShieldRegion;
+        this.invalidationPaths = builder.invalidationPaths;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static EdgeCacheProfile defaults() {
+        return builder().build();
+    }
+
+    public Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    public Duration getMaxTtl() {
+        return maxTtl;
+    }
+
+    public PriceClass getPriceClass() {
+        return priceClass;
+    }
+
+    /**
+     * @return the region of the origin shield, null for the region of the stage
+     */
+    public String getOriginShieldRegion() {
+        return originShieldRegion;
+    }
+
+    public List<String> getInvalidationPaths() {
+        return invalidationPaths;
+    }
+
+    public static final class Builder {
+
+        private Duration defaultTtl = Duration.minutes(5);
+        private Duration maxTtl = Duration.hours(1);
+        private PriceClass priceClass = PriceClass.PRICE_CLASS_100;
+        private String originShieldRegion = null;
+        private List<String> invalidationPaths = Arrays.asList("/*");
+
+        private Builder() {}
+
+        /**
+         * TTL of the responses that do not say how long they may be cached.
+         */
+        public Builder defaultTtl(Duration defaultTtl) {
+            this.defaultTtl = defaultTtl;
+            return this;
+        }
+
+        /**
+         * Caps the s-maxage and max-age of the responses.
+         */
+        public Builder maxTtl(Duration maxTtl) {
+            this.maxTtl = maxTtl;
+            return this;
+        }
+
+        public Builder priceClass(PriceClass priceClass) {
+            this.priceClass = priceClass;
+            return this;
+        }
+
+        /**
+         * Origin shield region, the region of the stage by default. It must be a region that
+         * supports origin shield.
+         */
+        public Builder originShieldRegion(String originShieldRegion) {
+            this.originShieldRegion = originShieldRegion;
+            return this;
+        }
+
+        /**
+         * Paths invalidated after every deployment, at most 15 with a wildcard.
+         */
+        public Builder invalidationPaths(List<String> invalidationPaths) {
+            this.invalidationPaths = new ArrayList<>(invalidationPaths);
+            return this;
+        }
+
+        public EdgeCacheProfile build() {
+
+            if (defaultTtl.toSeconds().intValue() > maxTtl.toSeconds().intValue()) {
+                throw new IllegalArgumentException(
+                        "The default TTL " + defaultTtl.toHumanString() + " cannot exceed the maximum TTL "
+                                + maxTtl.toHumanString());
+            }
+            if (invalidationPaths.isEmpty()
+                    || invalidationPaths.stream().anyMatch(path -> !path.startsWith("/") || path.contains(","))) {
+                throw new IllegalArgumentException("Invalid invalidation paths: " + invalidationPaths);
+            }
+            return new EdgeCacheProfile(this);
+        }
+    }
+}
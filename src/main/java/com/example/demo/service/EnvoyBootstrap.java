@@ -0,0 +1,189 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awscdk.Duration;
+
+/**
+ * Static Envoy configuration of the proxy sidecar, passed to Envoy with --config-yaml (JSON is
+ * valid YAML), so the task needs no configuration file nor control plane.
+ *
+ * The listener keeps idle connections of the load balancer open longer than the load balancer
+ * does, and the connections to the service are closed by Envoy before the service closes them,
+ * for the same reason as the keep-alive timeout of the service: the side that reuses a
+ * connection must be the first to close it.
+ *
+ * @see <a href="https://www.envoyproxy.io/docs/envoy/v1.27.0/configuration/overview/bootstrap">Bootstrap</a>
+ */
+final class EnvoyBootstrap {
+
+    static final String CLUSTER = "service";
+
+    private static final String CONNECTION_MANAGER_TYPE =
+            "type.googleapis.com/envoy.extensions.filters.network.http_connection_manager.v3.HttpConnectionManager";
+
+    /** Only requests that never reached the service are retried, whatever their method. */
+    static final String RETRY_ON = "connect-failure,refused-stream";
+
+    /** Retries allowed in flight whatever the budget, so a task with little traffic can retry. */
+    static final int MIN_RETRY_CONCURRENCY = 3;
+
+    private final ProxyProfile proxy;
+    private final int listenerPort;
+    private final Duration loadBalancerIdleTimeout;
+
+    EnvoyBootstrap(ProxyProfile proxy, int listenerPort, Duration loadBalancerIdleTimeout) {
+        this.proxy = proxy;
+        this.listenerPort = listenerPort;
+        this.loadBalancerIdleTimeout = loadBalancerIdleTimeout;
+    }
+
+    Map<String, Object> render() {
+
+        Map<String, Object> bootstrap = new LinkedHashMap<>();
+        bootstrap.put("admin", map("address", socketAddress("127.0.0.1", ProxyProfile.ADMIN_PORT)));
+        bootstrap.put("static_resources", map("listeners", list(listener()), "clusters", list(cluster())));
+        return bootstrap;
+    }
+
+    String toJson() {
+        try {
+            return new ObjectMapper().writeValueAsString(render());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render the Envoy configuration", e);
+        }
+    }
+
+    private Map<String, Object> listener() {
+
+        List<Object> routes = new ArrayList<>();
+        for (Map.Entry<String, Duration> route : proxy.getRouteTimeouts().entrySet()) {
+            routes.add(route(route.getKey(), route.getValue()));
+        }
+        routes.add(route("/", proxy.getRequestTimeout()));
+
+        Map<String, Object> connectionManager = new LinkedHashMap<>();
+        connectionManager.put("@type", CONNECTION_MANAGER_TYPE);
+        connectionManager.put("stat_prefix", "ingress");
+        connectionManager.put("codec_type", "AUTO");
+        connectionManager.put(
+                "common_http_protocol_options",
+                map("idle_timeout", seconds(loadBalancerIdleTimeout.toSeconds().intValue() + 5)));
+        connectionManager.put(
+                "route_config",
+                map(
+                        "name",
+                        "local",
+                        "virtual_hosts",
+                        list(map("name", CLUSTER, "domains", list("*"), "routes", routes))));
+        connectionManager.put(
+                "http_filters",
+                list(map(
+                        "name",
+                        "envoy.filters.http.router",
+                        "typed_config",
+                        map("@type", "type.googleapis.com/envoy.extensions.filters.http.router.v3.Router"))));
+
+        return map(
+                "name",
+                "ingress",
+                "address",
+                socketAddress("0.0.0.0", listenerPort),
+                "filter_chains",
+                list(map(
+                        "filters",
+                        list(map(
+                                "name",
+                                "envoy.filters.network.http_connection_manager",
+                                "typed_config",
+                                connectionManager)))));
+    }
+
+    private Map<String, Object> route(String prefix, Duration timeout) {
+
+        Map<String, Object> action = new LinkedHashMap<>();
+        action.put("cluster", CLUSTER);
+        action.put("timeout", millis(timeout.toMilliseconds().intValue()));
+        if (proxy.getMaxRetries() > 0) {
+            action.put("retry_policy", map("retry_on", RETRY_ON, "num_retries", proxy.getMaxRetries()));
+        }
+        return map("match", map("prefix", prefix), "route", action);
+    }
+
+    private Map<String, Object> cluster() {
+
+        Map<String, Object> thresholds = new LinkedHashMap<>();
+        thresholds.put("max_connections", proxy.getMaxConnections());
+        thresholds.put("max_pending_requests", proxy.getMaxPendingRequests());
+        thresholds.put(
+                "retry_budget",
+                map(
+                        "budget_percent",
+                        map("value", (double) proxy.getRetryBudgetPercent()),
+                        "min_retry_concurrency",
+                        MIN_RETRY_CONCURRENCY));
+
+        Map<String, Object> cluster = new LinkedHashMap<>();
+        cluster.put("name", CLUSTER);
+        cluster.put("type", "STATIC");
+        cluster.put("connect_timeout", "1s");
+        cluster.put(
+                "load_assignment",
+                map(
+                        "cluster_name",
+                        CLUSTER,
+                        "endpoints",
+                        list(map(
+                                "lb_endpoints",
+                                list(map(
+                                        "endpoint",
+                                        map(
+                                                "address",
+                                                socketAddress("127.0.0.1", proxy.getApplicationPort()))))))));
+        cluster.put("circuit_breakers", map("thresholds", list(thresholds)));
+        cluster.put(
+                "typed_extension_protocol_options",
+                map(
+                        "envoy.extensions.upstreams.http.v3.HttpProtocolOptions",
+                        map(
+                                "@type",
+                                "type.googleapis.com/envoy.extensions.upstreams.http.v3.HttpProtocolOptions",
+                                "common_http_protocol_options",
+                                map("idle_timeout", seconds(loadBalancerIdleTimeout.toSeconds().intValue())),
+                                "explicit_http_config",
+                                map("http_protocol_options", Collections.emptyMap()))));
+        return cluster;
+    }
+
+    private static Map<String, Object> socketAddress(String address, int port) {
+        return map("socket_address", map("address", address, "port_value", port));
+    }
+
+    private static String seconds(int seconds) {
+        return seconds + "s";
+    }
+
+    private static String millis(int millis) {
+        return millis % 1000 == 0 ? (millis / 1000) + "s" : (millis / 1000.0) + "s";
+    }
+
+    private static Map<String, Object> map(Object... entries) {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put((String) entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+    private static List<Object> list(Object... values) {
+        return new ArrayList<>(Arrays.asList(values));
+    }
+}
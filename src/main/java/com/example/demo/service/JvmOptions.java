@@ -0,0 +1,123 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM options of the service container, derived from the task CPU and the container memory
+ * limit, so the heap, the garbage collector and the off-heap caps follow the task size of each
+ * stage. The JVM ergonomics only see the container cgroup limits: with less than 2 CPUs or
+ * 1792 MiB they pick the serial collector, and they give a quarter of the memory to the heap.
+ */
+public final class JvmOptions {
+
+    /**
+     * Memory outside the heap, metaspace and direct buffers: code cache, thread stacks, GC data
+     * structures, the CDS archive and the native allocations of the JVM.
+     */
+    static final int NATIVE_OVERHEAD_MIB = 128;
+
+    static final int MAX_HEAP_PERCENTAGE = 80;
+
+    /**
+     * Smallest heap, metaspace and direct memory caps the service starts with. Containers too
+     * small for the default caps get these, and containers too small for these are rejected.
+     */
+    static final int MIN_HEAP_MIB = 64;
+
+    static final int MIN_METASPACE_MIB = 64;
+    static final int MIN_DIRECT_MEMORY_MIB = 16;
+
+    /**
+     * Below these limits a concurrent collector costs more than it saves.
+     */
+    static final int G1_MIN_PROCESSORS = 2;
+
+    static final int G1_MIN_MEMORY_MIB = 1792;
+
+    private final int processors;
+    private final int heapPercentage;
+    private final int maxMetaspaceMiB;
+    private final int maxDirectMemoryMiB;
+    private final boolean g1;
+
+    private JvmOptions(int processors, int containerMemoryMiB) {
+
+        this.processors = processors;
+        // Jersey, HK2 and Grizzly load about 60 MiB of class metadata
+        int metaspaceMiB = Math.min(256, Math.max(96, containerMemoryMiB / 8));
+        int directMemoryMiB = Math.min(256, Math.max(32, containerMemoryMiB / 16));
+        if (containerMemoryMiB - metaspaceMiB - directMemoryMiB - NATIVE_OVERHEAD_MIB < MIN_HEAP_MIB) {
+            metaspaceMiB = MIN_METASPACE_MIB;
+            directMemoryMiB = MIN_DIRECT_MEMORY_MIB;
+        }
+        int heapMiB = containerMemoryMiB - metaspaceMiB - directMemoryMiB - NATIVE_OVERHEAD_MIB;
+        if (heapMiB < MIN_HEAP_MIB) {
+            throw new IllegalArgumentException("The container memory limit " + containerMemoryMiB
+                    + " MiB is too small for the JVM, it needs at least " + minContainerMemoryMiB() + " MiB");
+        }
+        this.maxMetaspaceMiB = metaspaceMiB;
+        this.maxDirectMemoryMiB = directMemoryMiB;
+        // rounded down: the heap never takes more than what is left
+        this.heapPercentage = Math.min(MAX_HEAP_PERCENTAGE, heapMiB * 100 / containerMemoryMiB);
+        this.g1 = processors >= G1_MIN_PROCESSORS && containerMemoryMiB >= G1_MIN_MEMORY_MIB;
+    }
+
+    /**
+     * @return the smallest container memory limit with room for the minimum heap
+     */
+    static int minContainerMemoryMiB() {
+        return MIN_HEAP_MIB + MIN_METASPACE_MIB + MIN_DIRECT_MEMORY_MIB + NATIVE_OVERHEAD_MIB;
+    }
+
+    /**
+     * @param taskCpu CPU units of the Fargate task, 1024 per vCPU
+     * @param containerMemoryMiB hard memory limit of the container
+     */
+    public static JvmOptions forContainer(int taskCpu, int containerMemoryMiB) {
+        return new JvmOptions(Math.max(1, taskCpu / 1024), containerMemoryMiB);
+    }
+
+    public List<String> toList() {
+
+        List<String> options = new ArrayList<>();
+        options.add("-XX:ActiveProcessorCount=" + processors);
+        options.add("-XX:InitialRAMPercentage=" + heapPercentage);
+        options.add("-XX:MaxRAMPercentage=" + heapPercentage);
+        options.add("-XX:MaxMetaspaceSize=" + maxMetaspaceMiB + "m");
+        options.add("-XX:MaxDirectMemorySize=" + maxDirectMemoryMiB + "m");
+        options.add(g1 ? "-XX:+UseG1GC" : "-XX:+UseSerialGC");
+        // let ECS replace the task instead of running with an exhausted heap
+        options.add("-XX:+ExitOnOutOfMemoryError");
+        return options;
+    }
+
+    public int getProcessors() {
+        return processors;
+    }
+
+    public int getHeapPercentage() {
+        return heapPercentage;
+    }
+
+    public int getMaxMetaspaceMiB() {
+        return maxMetaspaceMiB;
+    }
+
+    public int getMaxDirectMemoryMiB() {
+        return maxDirectMemoryMiB;
+    }
+
+    public boolean isG1() {
+        return g1;
+    }
+
+    /**
+     * @return the options separated by spaces, as expected in JAVA_OPTS
+     */
+    @Override
+    public String toString() {
+        return String.join(" ", toList());
+    }
+}
@@ -0,0 +1,240 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Settings of the load balancer and of the blue and green target groups, which get the same
+ * health check, deregistration delay, slow start and routing algorithm so both versions of the
+ * service behave the same.
+ *
+ * The ALB does not support slow start with the least outstanding requests algorithm. The
+ * default is least outstanding requests, which already sends fewer requests to a new task while
+ * it is slower than the others; slow start requires the round robin algorithm.
+ *
+ * With the weighted random algorithm, anomaly mitigation lowers the weight of the tasks that
+ * answer with more errors than the others, and restores it once they recover. A task that is
+ * slow but still answers is only detected when something turns its slowness into errors, such
+ * as the request timeouts of the proxy sidecar (see ProxyProfile).
+ */
+public final class LoadBalancerProfile {
+
+    public enum Algorithm {
+        ROUND_ROBIN("round_robin"),
+        LEAST_OUTSTANDING_REQUESTS("least_outstanding_requests"),
+        WEIGHTED_RANDOM("weighted_random");
+
+        private final String attributeValue;
+
+        Algorithm(String attributeValue) {
+            this.attributeValue = attributeValue;
+        }
+
+        /**
+         * @return the value of the load_balancing.algorithm.type target group attribute
+         */
+        public String getAttributeValue() {
+            return attributeValue;
+        }
+    }
+
+    /**
+     * ECS kills the container 120 seconds after SIGTERM at most, and the service drains its
+     * connections for the deregistration delay before it stops.
+     */
+    static final int MAX_DEREGISTRATION_DELAY_SECONDS = 90;
+
+    private final String healthCheckPath;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private final int healthyThresholdCount;
+    private final int unhealthyThresholdCount;
+    private final Duration deregistrationDelay;
+    private final Duration slowStart;
+    private final Algorithm algorithm;
+    private final boolean anomalyMitigation;
+    private final Duration idleTimeout;
+    private final boolean http2Enabled;
+
+    private LoadBalancerProfile(Builder builder) {
+        this.healthCheckPath = builder.healthCheckPath;
+        this.healthCheckInterval = builder.healthCheckInterval;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+        this.healthyThresholdCount = builder.healthyThresholdCount;
+        this.unhealthyThresholdCount = builder.unhealthyThresholdCount;
+        this.deregistrationDelay = builder.deregistrationDelay;
+        this.slowStart = builder.slowStart;
+        this.algorithm = builder.algorithm;
+        this.anomalyMitigation = builder.anomalyMitigation;
+        this.idleTimeout = builder.idleTimeout;
+        this.http2Enabled = builder.http2Enabled;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static LoadBalancerProfile defaults() {
+        return builder().build();
+    }
+
+    public String getHealthCheckPath() {
+        return healthCheckPath;
+    }
+
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public Duration getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    public int getHealthyThresholdCount() {
+        return healthyThresholdCount;
+    }
+
+    public int getUnhealthyThresholdCount() {
+        return unhealthyThresholdCount;
+    }
+
+    public Duration getDeregistrationDelay() {
+        return deregistrationDelay;
+    }
+
+    public Duration getSlowStart() {
+        return slowStart;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return whether the weighted random algorithm moves traffic away from the failing tasks
+     */
+    public boolean isAnomalyMitigation() {
+        return anomalyMitigation;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public static final class Builder {
+
+        private String healthCheckPath = "/health/ready";
+        private Duration healthCheckInterval = Duration.seconds(10);
+        private Duration healthCheckTimeout = Duration.seconds(5);
+        private int healthyThresholdCount = 2;
+        private int unhealthyThresholdCount = 3;
+        private Duration deregistrationDelay = Duration.seconds(30);
+        private Duration slowStart = Duration.seconds(0);
+        private Algorithm algorithm = Algorithm.LEAST_OUTSTANDING_REQUESTS;
+        private boolean anomalyMitigation = false;
+        private Duration idleTimeout = Duration.seconds(60);
+        private boolean http2Enabled = true;
+
+        private Builder() {}
+
+        public Builder healthCheckPath(String healthCheckPath) {
+            this.healthCheckPath = healthCheckPath;
+            return this;
+        }
+
+        public Builder healthCheckInterval(Duration healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
+        public Builder healthCheckTimeout(Duration healthCheckTimeout) {
+            this.healthCheckTimeout = healthCheckTimeout;
+            return this;
+        }
+
+        public Builder healthyThresholdCount(int healthyThresholdCount) {
+            this.healthyThresholdCount = healthyThresholdCount;
+            return this;
+        }
+
+        public Builder unhealthyThresholdCount(int unhealthyThresholdCount) {
+            this.unhealthyThresholdCount = unhealthyThresholdCount;
+            return this;
+        }
+
+        /**
+         * Time the load balancer drains a deregistered task. The service keeps serving for the
+         * same time after SIGTERM.
+         */
+        public Builder deregistrationDelay(Duration deregistrationDelay) {
+            this.deregistrationDelay = deregistrationDelay;
+            return this;
+        }
+
+        /**
+         * Time a new task takes to receive its full share of requests, 0 to disable. Requires
+         * the round robin algorithm, or weighted random without anomaly mitigation.
+         */
+        public Builder slowStart(Duration slowStart) {
+            this.slowStart = slowStart;
+            return this;
+        }
+
+        public Builder algorithm(Algorithm algorithm) {
+            this.algorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Moves traffic away from the tasks that fail more than the others. Requires the
+         * weighted random algorithm.
+         */
+        public Builder anomalyMitigation(boolean anomalyMitigation) {
+            this.anomalyMitigation = anomalyMitigation;
+            return this;
+        }
+
+        /**
+         * Idle timeout of the connections of the load balancer. The service keeps idle
+         * connections open 5 seconds longer, so the load balancer always closes them first.
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder http2Enabled(boolean http2Enabled) {
+            this.http2Enabled = http2Enabled;
+            return this;
+        }
+
+        public LoadBalancerProfile build() {
+
+            int slowStartSeconds = slowStart.toSeconds().intValue();
+            if (slowStartSeconds > 0 && algorithm == Algorithm.LEAST_OUTSTANDING_REQUESTS) {
+                throw new IllegalArgumentException("Slow start requires the round robin algorithm");
+            }
+            if (anomalyMitigation && algorithm != Algorithm.WEIGHTED_RANDOM) {
+                throw new IllegalArgumentException("Anomaly mitigation requires the weighted random algorithm");
+            }
+            if (anomalyMitigation && slowStartSeconds > 0) {
+                throw new IllegalArgumentException("Slow start cannot be combined with anomaly mitigation");
+            }
+            if (slowStartSeconds > 0 && (slowStartSeconds < 30 || slowStartSeconds > 900)) {
+                throw new IllegalArgumentException("Slow start must be between 30 and 900 seconds");
+            }
+            if (healthCheckTimeout.toSeconds().intValue() >= healthCheckInterval.toSeconds().intValue()) {
+                throw new IllegalArgumentException("The health check timeout must be lower than its interval");
+            }
+            if (deregistrationDelay.toSeconds().intValue() > MAX_DEREGISTRATION_DELAY_SECONDS) {
+                throw new IllegalArgumentException(
+                        "The deregistration delay cannot exceed " + MAX_DEREGISTRATION_DELAY_SECONDS + " seconds");
+            }
+            return new LoadBalancerProfile(this);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Settings of the AfterAllowTestTraffic hook that compares the replacement tasks, behind the
+ * test listener, with the tasks that serve production, before CodeDeploy shifts any traffic
+ * (see com.example.demo.service.gate.PerformanceGate).
+ *
+ * The burst is bounded: requests are sent with at most concurrency in flight, to each listener,
+ * and every request times out after requestTimeout. Keep it small enough for the production
+ * tasks, which serve it on top of their traffic.
+ */
+public final class PerformanceGateProfile {
+
+    private final String path;
+    private final int requests;
+    private final int concurrency;
+    private final Duration requestTimeout;
+    private final double maxLatencyRatio;
+    private final int latencySlackMillis;
+    private final double maxErrorRateIncreasePercent;
+    private final Duration timeout;
+
+    private PerformanceGateProfile(Builder builder) {
+        this.path = builder.path;
+        this.requests = builder.requests;
+        this.concurrency = builder.concurrency;
+        this.requestTimeout = builder.requestTimeout;
+        this.maxLatencyRatio = builder.maxLatencyRatio;
+        this.latencySlackMillis = builder.latencySlackMillis;
+        this.maxErrorRateIncreasePercent = builder.maxErrorRateIncreasePercent;
+        this.timeout = builder.timeout;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static PerformanceGateProfile defaults() {
+        return builder().build();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public double getMaxLatencyRatio() {
+        return maxLatencyRatio;
+    }
+
+    public int getLatencySlackMillis() {
+        return latencySlackMillis;
+    }
+
+    public double getMaxErrorRateIncreasePercent() {
+        return maxErrorRateIncreasePercent;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public static final class Builder {
+
+        private String path = "/";
+        private int requests = 500;
+        private int concurrency = 10;
+        private Duration requestTimeout = Duration.seconds(2);
+        private double maxLatencyRatio = 1.5;
+        private int latencySlackMillis = 25;
+        private double maxErrorRateIncreasePercent = 1;
+        private Duration timeout = Duration.minutes(5);
+
+        private Builder() {}
+
+        public Builder path(String path) {
+            this.path = path;
+            return this;
+        }
+
+        /**
+         * Requests sent to each listener.
+         */
+        public Builder requests(int requests) {
+            this.requests = requests;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * The p99 of the test listener may be up to maxLatencyRatio times the production p99,
+         * plus latencySlackMillis.
+         */
+        public Builder maxLatencyRatio(double maxLatencyRatio) {
+            this.maxLatencyRatio = maxLatencyRatio;
+            return this;
+        }
+
+        public Builder latencySlackMillis(int latencySlackMillis) {
+            this.latencySlackMillis = latencySlackMillis;
+            return this;
+        }
+
+        /**
+         * Percentage points of errors the test listener may have over production.
+         */
+        public Builder maxErrorRateIncreasePercent(double maxErrorRateIncreasePercent) {
+            this.maxErrorRateIncreasePercent = maxErrorRateIncreasePercent;
+            return this;
+        }
+
+        /**
+         * Timeout of the Lambda function, at most 15 minutes.
+         */
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public PerformanceGateProfile build() {
+
+            if (requests < 1 || concurrency < 1 || concurrency > requests) {
+                throw new IllegalArgumentException("Invalid burst: " + requests + " requests, " + concurrency
+                        + " concurrent");
+            }
+            if (maxLatencyRatio < 1 || latencySlackMillis < 0 || maxErrorRateIncreasePercent < 0) {
+                throw new IllegalArgumentException("Invalid regression limits: ratio " + maxLatencyRatio + ", slack "
+                        + latencySlackMillis + " ms, error rate " + maxErrorRateIncreasePercent + "%");
+            }
+            if (timeout.toSeconds().intValue() > 900) {
+                throw new IllegalArgumentException("The timeout cannot exceed 15 minutes");
+            }
+            return new PerformanceGateProfile(this);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import software.amazon.awscdk.Duration;
+
+/**
+ * Envoy sidecar in front of the service container of every task. The load balancer sends its
+ * requests to Envoy, on the container port of the target groups, and Envoy forwards them to the
+ * service, which then only listens on the loopback interface.
+ *
+ * Envoy reuses a bounded pool of connections to the service and answers 503 at once when more
+ * than maxPendingRequests wait for one, instead of queueing them in the service. Every route has
+ * a timeout, requestTimeout unless routeTimeout sets one for a path prefix, after which Envoy
+ * answers 504. Requests that never reached the service (connection failures) are retried at most
+ * maxRetries times, within a retry budget of retryBudgetPercent of the active requests.
+ *
+ * The timeouts turn a slow task into a task that fails: the load balancer of a stage with a
+ * proxy uses the weighted random algorithm with anomaly mitigation (see ServiceOptions), so it
+ * then sends the task less traffic until it recovers. The proxy runs in the task, so it keeps
+ * working with the blue/green task sets of CodeDeploy: every task set brings its own proxy.
+ */
+public final class ProxyProfile {
+
+    /** Envoy admin interface, on the loopback interface only. */
+    static final int ADMIN_PORT = 9901;
+
+    private final String image;
+    private final int cpu;
+    private final int memoryReservationMiB;
+    private final int applicationPort;
+    private final int maxConnections;
+    private final int maxPendingRequests;
+    private final Duration requestTimeout;
+    private final Map<String, Duration> routeTimeouts;
+    private final int maxRetries;
+    private final int retryBudgetPercent;
+
+    private ProxyProfile(Builder builder) {
+        this.image = builder.image;
+        this.cpu = builder.cpu;
+        this.memoryReservationMiB = builder.memoryReservationMiB;
+        this.applicationPort = builder.applicationPort;
+        this.maxConnections = builder.maxConnections;
+        this.maxPendingRequests = builder.maxPendingRequests;
+        this.requestTimeout = builder.requestTimeout;
+        this.routeTimeouts = Collections.unmodifiableMap(new LinkedHashMap<>(builder.routeTimeouts));
+        this.maxRetries = builder.maxRetries;
+        this.retryBudgetPercent = builder.retryBudgetPercent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static ProxyProfile defaults() {
+        return builder().build();
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public int getCpu() {
+        return cpu;
+    }
+
+    public int getMemoryReservationMiB() {
+        return memoryReservationMiB;
+    }
+
+    /**
+     * @return the port of the service container, behind the proxy
+     */
+    public int getApplicationPort() {
+        return applicationPort;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * @return the timeouts per path prefix, in the order they are matched
+     */
+    public Map<String, Duration> getRouteTimeouts() {
+        return routeTimeouts;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public int getRetryBudgetPercent() {
+        return retryBudgetPercent;
+    }
+
+    public static final class Builder {
+
+        private String image = "envoyproxy/envoy:v1.27-latest";
+        private int cpu = 128;
+        private int memoryReservationMiB = 128;
+        private int applicationPort = 8081;
+        private int maxConnections = 64;
+        private int maxPendingRequests = 256;
+        private Duration requestTimeout = Duration.seconds(15);
+        private final Map<String, Duration> routeTimeouts = new LinkedHashMap<>();
+        private int maxRetries = 2;
+        private int retryBudgetPercent = 20;
+
+        private Builder() {}
+
+        public Builder image(String image) {
+            this.image = image;
+            return this;
+        }
+
+        /**
+         * CPU units reserved for Envoy, out of the task CPU.
+         */
+        public Builder cpu(int cpu) {
+            this.cpu = cpu;
+            return this;
+        }
+
+        /**
+         * Memory reserved for Envoy. It must fit in the task memory next to the memory limit of
+         * the service container.
+         */
+        public Builder memoryReservationMiB(int memoryReservationMiB) {
+            this.memoryReservationMiB = memoryReservationMiB;
+            return this;
+        }
+
+        /**
+         * Port the service listens on, on the loopback interface. The proxy takes the container
+         * port of the target groups.
+         */
+        public Builder applicationPort(int applicationPort) {
+            this.applicationPort = applicationPort;
+            return this;
+        }
+
+        /**
+         * Connections from Envoy to the service, at most.
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Requests waiting for a connection to the service, at most. Envoy answers 503 to the
+         * next ones.
+         */
+        public Builder maxPendingRequests(int maxPendingRequests) {
+            this.maxPendingRequests = maxPendingRequests;
+            return this;
+        }
+
+        /**
+         * Timeout of the requests that match no route timeout. It must be lower than the idle
+         * timeout of the load balancer, so the 504 comes from the task.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        /**
+         * Timeout of the requests whose path starts with pathPrefix. Prefixes are matched in the
+         * order they are added.
+         */
+        public Builder routeTimeout(String pathPrefix, Duration timeout) {
+            this.routeTimeouts.put(pathPrefix, timeout);
+            return this;
+        }
+
+        /**
+         * Retries of a request that could not be sent to the service, 0 to disable.
+         */
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Retries in flight, in percent of the active requests.
+         */
+        public Builder retryBudgetPercent(int retryBudgetPercent) {
+            this.retryBudgetPercent = retryBudgetPercent;
+            return this;
+        }
+
+        public ProxyProfile build() {
+
+            if (applicationPort < 1 || applicationPort > 65535 || applicationPort == ADMIN_PORT) {
+                throw new IllegalArgumentException("Invalid application port " + applicationPort);
+            }
+            if (maxConnections < 1 || maxPendingRequests < 0) {
+                throw new IllegalArgumentException(
+                        "Invalid connection pool: " + maxConnections + " connections, " + maxPendingRequests
+                                + " pending requests");
+            }
+            if (maxRetries < 0 || maxRetries > 5 || retryBudgetPercent < 0 || retryBudgetPercent > 100) {
+                throw new IllegalArgumentException(
+                        "Invalid retries: " + maxRetries + " retries, budget " + retryBudgetPercent + "%");
+            }
+            for (Map.Entry<String, Duration> route : routeTimeouts.entrySet()) {
+                if (!route.getKey().startsWith("/") || route.getValue().toMilliseconds().intValue() <= 0) {
+                    throw new IllegalArgumentException("Invalid route timeout " + route.getKey() + " "
+                            + route.getValue().toHumanString());
+                }
+            }
+            if (requestTimeout.toMilliseconds().intValue() <= 0) {
+                throw new IllegalArgumentException("The request timeout must be positive");
+            }
+            return new ProxyProfile(this);
+        }
+    }
+}
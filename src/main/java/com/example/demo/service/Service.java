@@ -1,88 +1,223 @@
 /* (C)2023 */
 package com.example.demo.service;
 
+import com.example.demo.Constants;
+import com.example.demo.service.gate.CacheInvalidationHandler;
+import com.example.demo.service.gate.PerformanceGateHandler;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import software.amazon.awscdk.CfnOutput;
 import software.amazon.awscdk.Duration;
+import software.amazon.awscdk.RemovalPolicy;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.Token;
+import software.amazon.awscdk.regioninfo.RegionInfo;
+import software.amazon.awscdk.services.cloudfront.AllowedMethods;
+import software.amazon.awscdk.services.cloudfront.BehaviorOptions;
+import software.amazon.awscdk.services.cloudfront.CacheCookieBehavior;
+import software.amazon.awscdk.services.cloudfront.CacheHeaderBehavior;
+import software.amazon.awscdk.services.cloudfront.CachePolicy;
+import software.amazon.awscdk.services.cloudfront.CacheQueryStringBehavior;
+import software.amazon.awscdk.services.cloudfront.Distribution;
+import software.amazon.awscdk.services.cloudfront.HttpVersion;
+import software.amazon.awscdk.services.cloudfront.OriginProtocolPolicy;
+import software.amazon.awscdk.services.cloudfront.OriginRequestCookieBehavior;
+import software.amazon.awscdk.services.cloudfront.OriginRequestHeaderBehavior;
+import software.amazon.awscdk.services.cloudfront.OriginRequestPolicy;
+import software.amazon.awscdk.services.cloudfront.OriginRequestQueryStringBehavior;
+import software.amazon.awscdk.services.cloudfront.ViewerProtocolPolicy;
+import software.amazon.awscdk.services.cloudfront.origins.LoadBalancerV2Origin;
+import software.amazon.awscdk.services.cloudwatch.Alarm;
+import software.amazon.awscdk.services.cloudwatch.ComparisonOperator;
+import software.amazon.awscdk.services.cloudwatch.IAlarm;
+import software.amazon.awscdk.services.cloudwatch.IMetric;
+import software.amazon.awscdk.services.cloudwatch.MathExpression;
+import software.amazon.awscdk.services.cloudwatch.Metric;
+import software.amazon.awscdk.services.cloudwatch.TreatMissingData;
+import software.amazon.awscdk.services.codedeploy.AutoRollbackConfig;
 import software.amazon.awscdk.services.codedeploy.EcsApplication;
 import software.amazon.awscdk.services.codedeploy.EcsBlueGreenDeploymentConfig;
 import software.amazon.awscdk.services.codedeploy.EcsDeploymentGroup;
 import software.amazon.awscdk.services.codedeploy.IEcsDeploymentConfig;
+import software.amazon.awscdk.services.ecr.IRepository;
+import software.amazon.awscdk.services.ecr.Repository;
+import software.amazon.awscdk.services.ecr.RepositoryAttributes;
 import software.amazon.awscdk.services.ecr.assets.DockerImageAsset;
+import software.amazon.awscdk.services.ecs.AwsLogDriverProps;
+import software.amazon.awscdk.services.ecs.ContainerDefinition;
 import software.amazon.awscdk.services.ecs.ContainerDefinitionOptions;
+import software.amazon.awscdk.services.ecs.ContainerDependency;
+import software.amazon.awscdk.services.ecs.ContainerDependencyCondition;
 import software.amazon.awscdk.services.ecs.ContainerImage;
+import software.amazon.awscdk.services.ecs.CpuUtilizationScalingProps;
 import software.amazon.awscdk.services.ecs.DeploymentController;
 import software.amazon.awscdk.services.ecs.DeploymentControllerType;
+import software.amazon.awscdk.services.ecs.EnableScalingProps;
 import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
+import software.amazon.awscdk.services.ecs.LogDriver;
+import software.amazon.awscdk.services.ecs.OperatingSystemFamily;
 import software.amazon.awscdk.services.ecs.PortMapping;
 import software.amazon.awscdk.services.ecs.Protocol;
+import software.amazon.awscdk.services.ecs.RequestCountScalingProps;
+import software.amazon.awscdk.services.ecs.RuntimePlatform;
+import software.amazon.awscdk.services.ecs.ScalableTaskCount;
 import software.amazon.awscdk.services.ecs.patterns.ApplicationLoadBalancedFargateService;
 import software.amazon.awscdk.services.elasticloadbalancingv2.AddApplicationActionProps;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationListener;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationProtocol;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ApplicationTargetGroup;
 import software.amazon.awscdk.services.elasticloadbalancingv2.BaseApplicationListenerProps;
+import software.amazon.awscdk.services.elasticloadbalancingv2.HealthCheck;
 import software.amazon.awscdk.services.elasticloadbalancingv2.ListenerAction;
 import software.amazon.awscdk.services.elasticloadbalancingv2.TargetType;
 import software.amazon.awscdk.services.iam.IRole;
 import software.amazon.awscdk.services.iam.ManagedPolicy;
+import software.amazon.awscdk.services.iam.PolicyStatement;
 import software.amazon.awscdk.services.iam.Role;
 import software.amazon.awscdk.services.iam.ServicePrincipal;
+import software.amazon.awscdk.services.lambda.Code;
+import software.amazon.awscdk.services.lambda.Function;
+import software.amazon.awscdk.services.logs.LogGroup;
+import software.amazon.awscdk.services.logs.RetentionDays;
 import software.constructs.Construct;
 
 public class Service extends Stack {
 
-    private static final String ECS_TASK_CPU = "1024";
-    private static final String ECS_TASK_MEMORY = "2048";
-    private static final Integer ECS_CONTAINER_MEMORY_RESERVATION = 256;
-    private static final Integer ECS_CONTAINER_MEMORY_LIMIT = 512;
     private static final Integer ECS_TASK_CONTAINER_PORT = 8080;
     private static final Integer ECS_TASK_CONTAINER_HOST_PORT = 8080;
+    private static final Integer TEST_LISTENER_PORT = 8080;
+    private static final Integer SHUTDOWN_TIMEOUT_SECONDS = 15;
+    private static final String SERVICE_JAR = "./target/service-1.0-SNAPSHOT.jar";
+    static final String IMAGE_CONTEXT = "./target/image";
+    static final String XRAY_DAEMON_CONTAINER = "xray-daemon";
+    static final String PROXY_CONTAINER = "envoy";
 
     ApplicationTargetGroup tgGreen = null;
     ApplicationListener listenerGreen = null;
 
+    private final CapacityProfile capacity;
+    private final ComputeProfile compute;
+    private final LoadBalancerProfile loadBalancer;
+    private final DeploymentAlarms alarms;
+    private final PerformanceGateProfile performanceGate;
+    private final EdgeCacheProfile edgeCache;
+    private final TracingProfile tracing;
+    private final ProxyProfile proxy;
+    private final ServiceImage image;
+
     public Service(Construct scope, String id, IEcsDeploymentConfig deploymentConfig, StackProps props) {
+        this(scope, id, deploymentConfig, ServiceOptions.defaults(), props);
+    }
 
-        super(scope, id, props);
+    public Service(
+            Construct scope,
+            String id,
+            IEcsDeploymentConfig deploymentConfig,
+            ServiceOptions options,
+            StackProps props) {
+        this(scope, id, deploymentConfig, options, ServiceImage.fromAssets(), props);
+    }
 
-        // uploading the green application to the ECR
-        // maven default build dir is /target. Dockerfile is moved to /target so it can find the application jar (see
-        // pom.xml)
-        DockerImageAsset.Builder.create(this, "GreenContainer" + id)
-                .directory("./target")
-                .build();
+    public Service(
+            Construct scope,
+            String id,
+            IEcsDeploymentConfig deploymentConfig,
+            ServiceOptions options,
+            ServiceImage image,
+            StackProps props) {
+
+        super(scope, id, CodeDeploySynthesizer.props(props));
+        if (Token.isUnresolved(this.getAccount()) || Token.isUnresolved(this.getRegion())) {
+            throw new IllegalArgumentException("The Service stack " + id + " needs a concrete env, account and region:"
+                    + " the CodeDeploy files are written outside CloudFormation and cannot refer to them");
+        }
+        this.image = image;
+        this.capacity = options.getCapacity();
+        this.compute = options.getCompute();
+        this.loadBalancer = options.getLoadBalancer();
+        this.alarms = options.getAlarms();
+        this.performanceGate = options.getPerformanceGate();
+        this.edgeCache = options.getEdgeCache();
+        this.tracing = options.getTracing();
+        this.proxy = options.getProxy();
+        if (proxy != null && proxy.getApplicationPort() == Service.ECS_TASK_CONTAINER_PORT) {
+            throw new IllegalArgumentException(
+                    "The proxy listens on " + Service.ECS_TASK_CONTAINER_PORT + ", the service needs another port");
+        }
+
+        String applicationImageUri = image.getApplicationImageUri();
+        if (image.isFromAssets()) {
+            // uploading the green application to the ECR
+            // the build context holds the Dockerfile and the application jar only (see pom.xml): the asset hash
+            // is the hash of their content, and synth does not copy the whole maven build directory per stage
+            DockerImageAsset greenImage = DockerImageAsset.Builder.create(this, "GreenContainer" + id)
+                    .directory(Service.IMAGE_CONTEXT)
+                    .platform(compute.getArchitecture().getAssetPlatform())
+                    .build();
+            applicationImageUri = assetImageUri(greenImage);
+        }
+
+        FargateTaskDefinition taskDefinition =
+                createECSTask(createEnvironment(id), id, createTaskRole(id), createTaskExecutionRole(id));
 
         // L3 ECS Pattern
         ApplicationLoadBalancedFargateService albService = ApplicationLoadBalancedFargateService.Builder.create(
                         this, "Service")
-                .desiredCount(2)
+                .desiredCount(capacity.getMinTasks())
                 .serviceName(id)
                 .deploymentController(DeploymentController.builder()
                         .type(DeploymentControllerType.CODE_DEPLOY)
                         .build())
-                .taskDefinition(
-                        createECSTask(new HashMap<String, String>(), id, createTaskRole(id), createTaskExecutionRole(id)))
+                .taskDefinition(taskDefinition)
                 .loadBalancerName("Alb" + id)
                 .listenerPort(80)
+                // the service reports ready after the warm-up, give it time before ECS checks health
+                .healthCheckGracePeriod(Duration.seconds(60))
+                .capacityProviderStrategies(compute.isSpot() ? compute.getCapacityProviderStrategies() : null)
                 .build();
+        if (compute.isSpot()) {
+            // the service must not be created before the capacity providers are associated to the cluster
+            albService.getCluster().enableFargateCapacityProviders();
+            albService.getService().getNode().addDependency(albService.getCluster());
+        }
+
+        configureLoadBalancer(albService);
+        configureTargetGroup(albService.getTargetGroup());
 
         createGreenListener(albService, id);
+        configureAutoScaling(albService);
+
+        // CodeDeploy deploys a task definition rendered from this one, see TaskDefinitionTemplate
+        TaskDefinitionTemplate template = new TaskDefinitionTemplate(
+                taskDefinition,
+                id,
+                Service.ECS_TASK_CONTAINER_PORT,
+                id,
+                Service.taskRoleName(id),
+                Service.logGroupName(id),
+                applicationImageUri);
+        if (proxy != null) {
+            template.loadBalancerContainer(Service.PROXY_CONTAINER);
+        }
+        template.capacityProviderStrategies(compute.getCapacityProviderStrategies());
+        // written after the template of the stack, which it is checked against
+        ((CodeDeploySynthesizer) this.getSynthesizer()).codeDeployTemplate(template);
 
         // configure AWS CodeDeploy Application and DeploymentGroup
         EcsApplication app = EcsApplication.Builder.create(this, "BlueGreenApplication")
                 .applicationName(id)
                 .build();
 
-        EcsDeploymentGroup.Builder.create(this, "BlueGreenDeploymentGroup")
+        Role codeDeployRole = createCodeDeployExecutionRole(id);
+        EcsDeploymentGroup deploymentGroup = EcsDeploymentGroup.Builder.create(this, "BlueGreenDeploymentGroup")
                 .deploymentGroupName(id)
                 .application(app)
                 .service(albService.getService())
-                .role(createCodeDeployExecutionRole(id))
+                .role(codeDeployRole)
                 .blueGreenDeploymentConfig(EcsBlueGreenDeploymentConfig.builder()
                         .blueTargetGroup(albService.getTargetGroup())
                         .greenTargetGroup(tgGreen)
@@ -91,8 +226,26 @@ public class Service extends Stack {
                         .terminationWaitTime(Duration.minutes(15))
                         .build())
                 .deploymentConfig(deploymentConfig)
+                .alarms(createRollbackAlarms(albService, id))
+                .autoRollback(AutoRollbackConfig.builder()
+                        .deploymentInAlarm(true)
+                        .failedDeployment(true)
+                        .stoppedDeployment(true)
+                        .build())
                 .build();
 
+        if (performanceGate != null) {
+            grantHook(createPerformanceGate(albService, id), codeDeployRole, deploymentGroup);
+            template.afterAllowTestTraffic(performanceGateName(id));
+        }
+
+        Distribution distribution = null;
+        if (edgeCache != null) {
+            distribution = createEdgeCache(albService, id);
+            grantHook(createCacheInvalidation(distribution, id), codeDeployRole, deploymentGroup);
+            template.afterAllowTraffic(cacheInvalidationName(id));
+        }
+
         CfnOutput.Builder.create(this, "VPC")
                 .description("Arn of the VPC ")
                 .value(albService.getCluster().getVpc().getVpcArn())
@@ -121,6 +274,13 @@ public class Service extends Stack {
                 .description("Application is acessible from this url")
                 .value("http://" + albService.getLoadBalancer().getLoadBalancerDnsName())
                 .build();
+
+        if (distribution != null) {
+            CfnOutput.Builder.create(this, "EdgeURL")
+                    .description("Application is acessible through CloudFront from this url")
+                    .value("https://" + distribution.getDistributionDomainName())
+                    .build();
+        }
     }
 
     public FargateTaskDefinition createECSTask(
@@ -131,33 +291,194 @@ public class Service extends Stack {
         taskDef = FargateTaskDefinition.Builder.create(this, "EcsTaskDef" + serviceName)
                 .taskRole(taskRole)
                 .executionRole(executionRole)
-                .cpu(Integer.parseInt(Service.ECS_TASK_CPU))
-                .memoryLimitMiB(Integer.parseInt(Service.ECS_TASK_MEMORY))
+                .cpu(capacity.getTaskCpu())
+                .memoryLimitMiB(capacity.getTaskMemoryMiB())
                 .family(serviceName)
+                // left out for x86, which is the default, so the task definition of existing stacks does not change
+                .runtimePlatform(
+                        compute.getArchitecture() == ComputeProfile.Architecture.X86_64
+                                ? null
+                                : RuntimePlatform.builder()
+                                        .cpuArchitecture(compute.getArchitecture().getCpuArchitecture())
+                                        .operatingSystemFamily(OperatingSystemFamily.LINUX)
+                                        .build())
+                .build();
+
+        // named, so the CodeDeploy task definition can refer to it
+        LogGroup logGroup = LogGroup.Builder.create(this, "LogGroup" + serviceName)
+                .logGroupName(Service.logGroupName(serviceName))
+                .retention(RetentionDays.ONE_MONTH)
+                .removalPolicy(RemovalPolicy.DESTROY)
                 .build();
 
-        taskDef.addContainer(
+        int applicationPort = proxy == null ? Service.ECS_TASK_CONTAINER_PORT : proxy.getApplicationPort();
+        ContainerDefinition application = taskDef.addContainer(
                 "App" + serviceName,
                 ContainerDefinitionOptions.builder()
                         .containerName(serviceName)
-                        .memoryReservationMiB(ECS_CONTAINER_MEMORY_RESERVATION)
-                        .memoryLimitMiB(ECS_CONTAINER_MEMORY_LIMIT)
-                        .image(ContainerImage.fromDockerImageAsset(
-                                DockerImageAsset.Builder.create(this, "BlueContainer" + serviceName)
-                                        .directory(getPathDockerfile())
-                                        .build()))
+                        .memoryReservationMiB(capacity.getContainerMemoryReservationMiB())
+                        .memoryLimitMiB(capacity.getContainerMemoryLimitMiB())
+                        .image(createBootstrapImage(serviceName))
                         .essential(Boolean.TRUE)
                         .portMappings(Arrays.asList(PortMapping.builder()
-                                .containerPort(Service.ECS_TASK_CONTAINER_PORT)
-                                .hostPort(Service.ECS_TASK_CONTAINER_HOST_PORT)
+                                .containerPort(applicationPort)
+                                .hostPort(applicationPort)
                                 .protocol(Protocol.TCP)
                                 .build()))
                         .environment(env)
+                        // SIGKILL only after the service drained and finished its in-flight requests
+                        .stopTimeout(Duration.seconds(drainSeconds() + Service.SHUTDOWN_TIMEOUT_SECONDS + 5))
+                        .healthCheck(software.amazon.awscdk.services.ecs.HealthCheck.builder()
+                                .command(Arrays.asList(
+                                        "CMD-SHELL",
+                                        "curl -f http://localhost:" + applicationPort + "/health/live || exit 1"))
+                                .interval(Duration.seconds(10))
+                                .timeout(Duration.seconds(5))
+                                .retries(3)
+                                .startPeriod(Duration.seconds(30))
+                                .build())
+                        .logging(LogDriver.awsLogs(AwsLogDriverProps.builder()
+                                .streamPrefix(serviceName)
+                                .logGroup(logGroup)
+                                .build()))
                         .build());
 
+        if (tracing != null) {
+            // not essential: the service keeps serving, without traces, if the daemon stops
+            taskDef.addContainer(
+                    "XRayDaemon" + serviceName,
+                    ContainerDefinitionOptions.builder()
+                            .containerName(Service.XRAY_DAEMON_CONTAINER)
+                            .image(ContainerImage.fromRegistry(tracing.getDaemonImage()))
+                            .cpu(tracing.getDaemonCpu())
+                            .memoryReservationMiB(tracing.getDaemonMemoryReservationMiB())
+                            .essential(Boolean.FALSE)
+                            .portMappings(Arrays.asList(PortMapping.builder()
+                                    .containerPort(TracingProfile.DAEMON_PORT)
+                                    .protocol(Protocol.UDP)
+                                    .build()))
+                            .logging(LogDriver.awsLogs(AwsLogDriverProps.builder()
+                                    .streamPrefix(Service.XRAY_DAEMON_CONTAINER)
+                                    .logGroup(logGroup)
+                                    .build()))
+                            .build());
+        }
+
+        if (proxy != null) {
+            EnvoyBootstrap bootstrap =
+                    new EnvoyBootstrap(proxy, Service.ECS_TASK_CONTAINER_PORT, loadBalancer.getIdleTimeout());
+            ContainerDefinition envoy = taskDef.addContainer(
+                    "Proxy" + serviceName,
+                    ContainerDefinitionOptions.builder()
+                            .containerName(Service.PROXY_CONTAINER)
+                            .image(ContainerImage.fromRegistry(proxy.getImage()))
+                            .cpu(proxy.getCpu())
+                            .memoryReservationMiB(proxy.getMemoryReservationMiB())
+                            .essential(Boolean.TRUE)
+                            .command(Arrays.asList(
+                                    "envoy",
+                                    "--config-yaml",
+                                    bootstrap.toJson(),
+                                    "--concurrency",
+                                    String.valueOf(Math.max(1, capacity.getTaskCpu() / 1024)),
+                                    "--log-level",
+                                    "warn"))
+                            .portMappings(Arrays.asList(PortMapping.builder()
+                                    .containerPort(Service.ECS_TASK_CONTAINER_PORT)
+                                    .hostPort(Service.ECS_TASK_CONTAINER_HOST_PORT)
+                                    .protocol(Protocol.TCP)
+                                    .build()))
+                            .logging(LogDriver.awsLogs(AwsLogDriverProps.builder()
+                                    .streamPrefix(Service.PROXY_CONTAINER)
+                                    .logGroup(logGroup)
+                                    .build()))
+                            .build());
+            // ECS stops the containers in the reverse order of their dependencies: the proxy keeps
+            // forwarding requests until the service has drained and stopped
+            application.addContainerDependencies(ContainerDependency.builder()
+                    .container(envoy)
+                    .condition(ContainerDependencyCondition.START)
+                    .build());
+            // the target groups send the requests to the proxy
+            taskDef.setDefaultContainer(envoy);
+        }
+
         return taskDef;
     }
 
+    /**
+     * Environment of the service container. The service publishes its metrics to CloudWatch
+     * through the awslogs driver, using the Embedded Metric Format, and drains its connections
+     * for the deregistration delay of the target groups when it stops. Its keep-alive timeout is
+     * longer than the idle timeout of the load balancer, so it never closes a connection the load
+     * balancer is about to reuse. JAVA_OPTS sizes the JVM for the task CPU and the container
+     * memory limit. With tracing, it sends its segments to the X-Ray daemon sidecar. Behind the
+     * proxy sidecar, it only listens on the loopback interface.
+     */
+    Map<String, String> createEnvironment(final String serviceName) {
+
+        Map<String, String> env = new HashMap<>();
+        env.put("SERVICE_NAME", serviceName);
+        env.put("SERVICE_METRICS_EMF", "true");
+        env.put("SERVICE_METRICS_NAMESPACE", Constants.APP_NAME);
+        env.put("SERVICE_SHUTDOWN_DRAIN_SECONDS", String.valueOf(drainSeconds()));
+        env.put("SERVICE_SHUTDOWN_TIMEOUT_SECONDS", String.valueOf(Service.SHUTDOWN_TIMEOUT_SECONDS));
+        env.put(
+                "SERVICE_KEEPALIVE_IDLE_SECONDS",
+                String.valueOf(loadBalancer.getIdleTimeout().toSeconds().intValue() + 5));
+        env.put(
+                "JAVA_OPTS",
+                JvmOptions.forContainer(capacity.getTaskCpu(), capacity.getContainerMemoryLimitMiB())
+                        .toString());
+        if (tracing != null) {
+            env.put("SERVICE_TRACING", "true");
+            env.put("SERVICE_TRACING_SAMPLE_PERCENT", String.valueOf(tracing.getSamplePercent()));
+            env.put(
+                    "SERVICE_TRACING_TAIL_LATENCY_MILLIS",
+                    String.valueOf(tracing.getTailLatency().toMilliseconds().intValue()));
+            env.put("SERVICE_TRACING_DAEMON_ADDRESS", "127.0.0.1:" + TracingProfile.DAEMON_PORT);
+        }
+        if (proxy != null) {
+            env.put("SERVICE_HOST", "127.0.0.1");
+            env.put("JERSEY_CONFIG_TEST_CONTAINER_PORT", String.valueOf(proxy.getApplicationPort()));
+        }
+        return env;
+    }
+
+    /**
+     * @return the URI of the image asset in the container assets repository of the environment,
+     *     which the stage publishes before CodeDeploy deploys it
+     */
+    private String assetImageUri(final DockerImageAsset asset) {
+        return this.getAccount() + ".dkr.ecr." + this.getRegion() + "." + urlSuffix(this.getRegion()) + "/"
+                + this.resolve(asset.getRepository().getRepositoryName()) + ":" + asset.getAssetHash();
+    }
+
+    /**
+     * Image of the task definition of the stack. CodeDeploy replaces it with the application
+     * image on every deployment, and CloudFormation cannot update the task definition of a
+     * service deployed by CodeDeploy, so it must not change from one pipeline run to the next.
+     */
+    private ContainerImage createBootstrapImage(final String serviceName) {
+
+        if (image.isFromAssets()) {
+            return ContainerImage.fromDockerImageAsset(
+                    DockerImageAsset.Builder.create(this, "BlueContainer" + serviceName)
+                            .directory(getPathDockerfile())
+                            .platform(compute.getArchitecture().getAssetPlatform())
+                            .build());
+        }
+        // the execution role pulls both images from the toolchain repository
+        IRepository repository = Repository.fromRepositoryAttributes(
+                this,
+                "ServiceRepository",
+                RepositoryAttributes.builder()
+                        .repositoryArn(image.getRepositoryArn())
+                        .repositoryName(image.getRepositoryName())
+                        .build());
+        return ContainerImage.fromEcrRepository(repository, image.getBootstrapTag());
+    }
+
     /**
      * The Dockerfile of the blue version of the application is inside
      * a directory relative to this classpath (./compute/runtime-bootstrap)
@@ -179,6 +500,7 @@ public class Service extends Stack {
     Role createTaskRole(final String id) {
 
         return Role.Builder.create(this, "EcsTaskRole" + id)
+                .roleName(Service.taskRoleName(id))
                 .assumedBy(ServicePrincipal.Builder.create("ecs-tasks.amazonaws.com")
                         .build())
                 .managedPolicies(Arrays.asList(
@@ -189,6 +511,37 @@ public class Service extends Stack {
                 .build();
     }
 
+    /**
+     * @return the partition of a concrete region, such as aws or aws-cn, for the values written
+     *     outside CloudFormation, where the AWS::Partition pseudo parameter does not resolve
+     */
+    static String partition(final String region) {
+        String partition = RegionInfo.get(region).getPartition();
+        if (partition == null) {
+            throw new IllegalArgumentException("Unknown region: " + region);
+        }
+        return partition;
+    }
+
+    /**
+     * @return the domain suffix of the endpoints of a concrete region, such as amazonaws.com
+     */
+    static String urlSuffix(final String region) {
+        String urlSuffix = RegionInfo.get(region).getDomainSuffix();
+        if (urlSuffix == null) {
+            throw new IllegalArgumentException("Unknown region: " + region);
+        }
+        return urlSuffix;
+    }
+
+    static String taskRoleName(final String id) {
+        return id + "-task";
+    }
+
+    static String logGroupName(final String id) {
+        return "/ecs/" + id;
+    }
+
     Role createTaskExecutionRole(final String id) {
 
         return Role.Builder.create(this, "EcsExecutionRole" + id)
@@ -199,7 +552,8 @@ public class Service extends Stack {
                         ManagedPolicy.fromManagedPolicyArn(
                                 this,
                                 "ecsTaskExecutionManagedPolicy",
-                                "arn:aws:iam::aws:policy/service-role/AmazonECSTaskExecutionRolePolicy"),
+                                "arn:" + this.getPartition()
+                                        + ":iam::aws:policy/service-role/AmazonECSTaskExecutionRolePolicy"),
                         ManagedPolicy.fromAwsManagedPolicyName("CloudWatchAgentServerPolicy")))
                 .build();
     }
@@ -221,6 +575,320 @@ public class Service extends Stack {
                 .build();
     }
 
+    /**
+     * The service keeps serving for as long as the load balancer drains its connections.
+     */
+    private int drainSeconds() {
+        return loadBalancer.getDeregistrationDelay().toSeconds().intValue();
+    }
+
+    void configureLoadBalancer(ApplicationLoadBalancedFargateService albService) {
+
+        albService
+                .getLoadBalancer()
+                .setAttribute(
+                        "idle_timeout.timeout_seconds",
+                        String.valueOf(loadBalancer.getIdleTimeout().toSeconds().intValue()));
+        albService
+                .getLoadBalancer()
+                .setAttribute("routing.http2.enabled", String.valueOf(loadBalancer.isHttp2Enabled()));
+    }
+
+    /**
+     * Applies the same settings to the blue and the green target groups. The health check
+     * probes the readiness endpoint, which the service answers without rendering the page, and
+     * which fails while the service warms up or drains.
+     */
+    void configureTargetGroup(ApplicationTargetGroup targetGroup) {
+
+        targetGroup.configureHealthCheck(HealthCheck.builder()
+                .path(loadBalancer.getHealthCheckPath())
+                .protocol(software.amazon.awscdk.services.elasticloadbalancingv2.Protocol.HTTP)
+                .healthyHttpCodes("200")
+                .interval(loadBalancer.getHealthCheckInterval())
+                .timeout(loadBalancer.getHealthCheckTimeout())
+                .healthyThresholdCount(loadBalancer.getHealthyThresholdCount())
+                .unhealthyThresholdCount(loadBalancer.getUnhealthyThresholdCount())
+                .build());
+        targetGroup.setAttribute("deregistration_delay.timeout_seconds", String.valueOf(drainSeconds()));
+        targetGroup.setAttribute(
+                "slow_start.duration_seconds",
+                String.valueOf(loadBalancer.getSlowStart().toSeconds().intValue()));
+        targetGroup.setAttribute(
+                "load_balancing.algorithm.type", loadBalancer.getAlgorithm().getAttributeValue());
+        if (loadBalancer.getAlgorithm() == LoadBalancerProfile.Algorithm.WEIGHTED_RANDOM) {
+            targetGroup.setAttribute(
+                    "load_balancing.algorithm.anomaly_mitigation", loadBalancer.isAnomalyMitigation() ? "on" : "off");
+        }
+    }
+
+    /**
+     * Target tracking on the ECS service desired count, which CodeDeploy keeps across the task
+     * set swaps of a blue/green deployment. ALBRequestCountPerTarget is a metric of one target
+     * group, and production traffic moves from one group to the other on every deployment, so
+     * there is one request count policy per group. The service scales out when any policy asks
+     * for it, and scales in only when all of them agree; the group without traffic reports no
+     * data and does not block scale in.
+     */
+    void configureAutoScaling(ApplicationLoadBalancedFargateService albService) {
+
+        if (!capacity.isAutoScaling()) {
+            return;
+        }
+        ScalableTaskCount scaling = albService
+                .getService()
+                .autoScaleTaskCount(EnableScalingProps.builder()
+                        .minCapacity(capacity.getMinTasks())
+                        .maxCapacity(capacity.getMaxTasks())
+                        .build());
+
+        scaling.scaleOnCpuUtilization(
+                "CpuScaling",
+                CpuUtilizationScalingProps.builder()
+                        .targetUtilizationPercent(capacity.getCpuUtilizationPercent())
+                        .scaleInCooldown(capacity.getScaleInCooldown())
+                        .scaleOutCooldown(capacity.getScaleOutCooldown())
+                        .build());
+
+        // Application Auto Scaling only scales in when every target tracking policy agrees, and the
+        // idle target group has no request count to agree with: the request count policies only
+        // scale out, and the CPU policy scales in
+        for (ApplicationTargetGroup targetGroup : Arrays.asList(albService.getTargetGroup(), tgGreen)) {
+            scaling.scaleOnRequestCount(
+                    "RequestCountScaling" + targetGroup.getNode().getId(),
+                    RequestCountScalingProps.builder()
+                            .targetGroup(targetGroup)
+                            .requestsPerTarget(capacity.getRequestsPerTarget())
+                            .disableScaleIn(Boolean.TRUE)
+                            .scaleOutCooldown(capacity.getScaleOutCooldown())
+                            .build());
+        }
+    }
+
+    /**
+     * Alarms that stop and roll back a deployment. Blue/green deployments swap the target groups,
+     * so the load balancer alarms watch both: the replacement tasks may be in either of them.
+     * Missing data does not breach, a target group without traffic is not unhealthy.
+     */
+    List<IAlarm> createRollbackAlarms(ApplicationLoadBalancedFargateService albService, String id) {
+
+        List<IAlarm> rollbackAlarms = new ArrayList<>();
+        String loadBalancerName = albService.getLoadBalancer().getLoadBalancerFullName();
+        for (ApplicationTargetGroup targetGroup : Arrays.asList(albService.getTargetGroup(), tgGreen)) {
+            Map<String, String> dimensions = new HashMap<>();
+            dimensions.put("LoadBalancer", loadBalancerName);
+            dimensions.put("TargetGroup", targetGroup.getTargetGroupFullName());
+            String name = targetGroup.getNode().getId();
+
+            rollbackAlarms.add(createAlarm(
+                    "ResponseTimeAlarm" + name,
+                    "p99 response time of " + name + " above " + alarms.getResponseTimeP99().toMilliseconds() + "ms",
+                    loadBalancerMetric("TargetResponseTime", "p99", dimensions),
+                    alarms.getResponseTimeP99().toMilliseconds().doubleValue() / 1000));
+
+            Map<String, IMetric> usingMetrics = new HashMap<>();
+            usingMetrics.put("errors", loadBalancerMetric("HTTPCode_Target_5XX_Count", "Sum", dimensions));
+            usingMetrics.put("requests", loadBalancerMetric("RequestCount", "Sum", dimensions));
+            rollbackAlarms.add(createAlarm(
+                    "ErrorRateAlarm" + name,
+                    "5xx responses of " + name + " above " + alarms.getTarget5xxRatePercent() + "%",
+                    MathExpression.Builder.create()
+                            .expression("IF(requests > 0, 100 * errors / requests, 0)")
+                            .usingMetrics(usingMetrics)
+                            .label("Target5xxRate")
+                            .period(alarms.getPeriod())
+                            .build(),
+                    alarms.getTarget5xxRatePercent()));
+        }
+
+        if (alarms.isServiceLatencyAlarm()) {
+            Map<String, String> dimensions = new HashMap<>();
+            dimensions.put("ServiceName", id);
+            dimensions.put("Route", alarms.getServiceLatencyRoute());
+            dimensions.put("Method", "GET");
+            dimensions.put("Status", "2xx");
+            // every task publishes its own p99, the slowest one decides
+            rollbackAlarms.add(createAlarm(
+                    "ServiceLatencyAlarm",
+                    "p99 latency of GET " + alarms.getServiceLatencyRoute() + " above "
+                            + alarms.getServiceLatencyP99Millis() + "ms",
+                    Metric.Builder.create()
+                            .namespace(Constants.APP_NAME)
+                            .metricName("LatencyP99")
+                            .dimensionsMap(dimensions)
+                            .statistic("Maximum")
+                            .period(alarms.getPeriod())
+                            .build(),
+                    alarms.getServiceLatencyP99Millis()));
+        }
+        return rollbackAlarms;
+    }
+
+    private Metric loadBalancerMetric(String metricName, String statistic, Map<String, String> dimensions) {
+
+        return Metric.Builder.create()
+                .namespace("AWS/ApplicationELB")
+                .metricName(metricName)
+                .dimensionsMap(dimensions)
+                .statistic(statistic)
+                .period(alarms.getPeriod())
+                .build();
+    }
+
+    private Alarm createAlarm(String id, String description, IMetric metric, double threshold) {
+
+        return Alarm.Builder.create(this, id)
+                .alarmDescription(description)
+                .metric(metric)
+                .threshold(threshold)
+                .comparisonOperator(ComparisonOperator.GREATER_THAN_THRESHOLD)
+                .evaluationPeriods(alarms.getEvaluationPeriods())
+                .datapointsToAlarm(alarms.getDatapointsToAlarm())
+                .treatMissingData(TreatMissingData.NOT_BREACHING)
+                .build();
+    }
+
+    /**
+     * The AfterAllowTestTraffic hook. It runs outside the VPC and reaches both listeners through
+     * the public DNS name of the load balancer. Its code is the service jar, which also contains
+     * the gate (com.example.demo.service.gate).
+     */
+    Function createPerformanceGate(ApplicationLoadBalancedFargateService albService, String id) {
+
+        String loadBalancer = "http://" + albService.getLoadBalancer().getLoadBalancerDnsName();
+        Map<String, String> env = new HashMap<>();
+        env.put("GATE_PRODUCTION_URL", loadBalancer + performanceGate.getPath());
+        env.put("GATE_TEST_URL", loadBalancer + ":" + Service.TEST_LISTENER_PORT + performanceGate.getPath());
+        env.put("GATE_REQUESTS", String.valueOf(performanceGate.getRequests()));
+        env.put("GATE_CONCURRENCY", String.valueOf(performanceGate.getConcurrency()));
+        env.put(
+                "GATE_REQUEST_TIMEOUT_MILLIS",
+                String.valueOf(performanceGate.getRequestTimeout().toMilliseconds().intValue()));
+        env.put("GATE_MAX_LATENCY_RATIO", String.valueOf(performanceGate.getMaxLatencyRatio()));
+        env.put("GATE_LATENCY_SLACK_MILLIS", String.valueOf(performanceGate.getLatencySlackMillis()));
+        env.put(
+                "GATE_MAX_ERROR_RATE_INCREASE_PERCENT",
+                String.valueOf(performanceGate.getMaxErrorRateIncreasePercent()));
+
+        return Function.Builder.create(this, "PerformanceGate")
+                .functionName(performanceGateName(id))
+                .description("Compares the test listener of " + id + " with production before traffic shifts")
+                .runtime(software.amazon.awscdk.services.lambda.Runtime.JAVA_11)
+                .handler(PerformanceGateHandler.class.getName() + "::handleRequest")
+                .code(Code.fromAsset(SERVICE_JAR))
+                .memorySize(1024)
+                .timeout(performanceGate.getTimeout())
+                .environment(env)
+                .build();
+    }
+
+    /**
+     * The AppSpec references the hook by name. AWSCodeDeployRoleForECS allows CodeDeploy to invoke
+     * the functions whose name starts with CodeDeployHook_.
+     */
+    static String performanceGateName(String id) {
+        return "CodeDeployHook_" + id + "_PerformanceGate";
+    }
+
+    /**
+     * Lets CodeDeploy invoke a lifecycle hook of the deployment group, and the hook report its
+     * status.
+     */
+    private void grantHook(Function hook, Role codeDeployRole, EcsDeploymentGroup deploymentGroup) {
+
+        hook.grantInvoke(codeDeployRole);
+        hook.addToRolePolicy(PolicyStatement.Builder.create()
+                .actions(Arrays.asList("codedeploy:PutLifecycleEventHookExecutionStatus"))
+                .resources(Arrays.asList(deploymentGroup.getDeploymentGroupArn()))
+                .build());
+    }
+
+    /**
+     * CloudFront distribution in front of the load balancer. The cache key is the path and the
+     * query string, and the accepted encodings, so the distribution caches the gzip and brotli
+     * versions. CloudFront keeps its connections to the load balancer open for as long as the
+     * load balancer allows, and the origin shield absorbs the misses of the edge locations.
+     */
+    Distribution createEdgeCache(ApplicationLoadBalancedFargateService albService, String id) {
+
+        CachePolicy cachePolicy = CachePolicy.Builder.create(this, "EdgeCachePolicy")
+                .comment("Cache of " + id)
+                .minTtl(Duration.seconds(0))
+                .defaultTtl(edgeCache.getDefaultTtl())
+                .maxTtl(edgeCache.getMaxTtl())
+                .queryStringBehavior(CacheQueryStringBehavior.all())
+                .headerBehavior(CacheHeaderBehavior.none())
+                .cookieBehavior(CacheCookieBehavior.none())
+                .enableAcceptEncodingGzip(Boolean.TRUE)
+                .enableAcceptEncodingBrotli(Boolean.TRUE)
+                .build();
+
+        // the query string is part of the cache key, so it is forwarded anyway
+        OriginRequestPolicy originRequestPolicy = OriginRequestPolicy.Builder.create(this, "EdgeOriginRequestPolicy")
+                .comment("Requests of " + id + " to the load balancer")
+                .queryStringBehavior(OriginRequestQueryStringBehavior.all())
+                .headerBehavior(OriginRequestHeaderBehavior.allowList("CloudFront-Forwarded-Proto"))
+                .cookieBehavior(OriginRequestCookieBehavior.none())
+                .build();
+
+        LoadBalancerV2Origin origin = LoadBalancerV2Origin.Builder.create(albService.getLoadBalancer())
+                .protocolPolicy(OriginProtocolPolicy.HTTP_ONLY)
+                .httpPort(80)
+                .keepaliveTimeout(Duration.seconds(
+                        Math.min(60, loadBalancer.getIdleTimeout().toSeconds().intValue())))
+                .originShieldRegion(
+                        edgeCache.getOriginShieldRegion() != null
+                                ? edgeCache.getOriginShieldRegion()
+                                : this.getRegion())
+                .build();
+
+        return Distribution.Builder.create(this, "EdgeCache")
+                .comment(id)
+                .priceClass(edgeCache.getPriceClass())
+                .httpVersion(HttpVersion.HTTP2_AND_3)
+                .defaultBehavior(BehaviorOptions.builder()
+                        .origin(origin)
+                        .cachePolicy(cachePolicy)
+                        .originRequestPolicy(originRequestPolicy)
+                        .compress(Boolean.TRUE)
+                        .allowedMethods(AllowedMethods.ALLOW_GET_HEAD)
+                        .viewerProtocolPolicy(ViewerProtocolPolicy.REDIRECT_TO_HTTPS)
+                        .build())
+                .build();
+    }
+
+    /**
+     * The AfterAllowTraffic hook, which invalidates the distribution once the new version serves
+     * production. Its code is the service jar, as for the performance gate.
+     */
+    Function createCacheInvalidation(Distribution distribution, String id) {
+
+        Map<String, String> env = new HashMap<>();
+        env.put("EDGE_DISTRIBUTION_ID", distribution.getDistributionId());
+        env.put("EDGE_INVALIDATION_PATHS", String.join(",", edgeCache.getInvalidationPaths()));
+
+        Function invalidation = Function.Builder.create(this, "CacheInvalidation")
+                .functionName(cacheInvalidationName(id))
+                .description("Invalidates the CloudFront distribution of " + id + " after every deployment")
+                .runtime(software.amazon.awscdk.services.lambda.Runtime.JAVA_11)
+                .handler(CacheInvalidationHandler.class.getName() + "::handleRequest")
+                .code(Code.fromAsset(SERVICE_JAR))
+                .memorySize(512)
+                .timeout(Duration.minutes(1))
+                .environment(env)
+                .build();
+        invalidation.addToRolePolicy(PolicyStatement.Builder.create()
+                .actions(Arrays.asList("cloudfront:CreateInvalidation"))
+                .resources(Arrays.asList("arn:" + this.getPartition() + ":cloudfront::" + this.getAccount()
+                        + ":distribution/" + distribution.getDistributionId()))
+                .build());
+        return invalidation;
+    }
+
+    static String cacheInvalidationName(String id) {
+        return "CodeDeployHook_" + id + "_CacheInvalidation";
+    }
+
     public void createGreenListener(ApplicationLoadBalancedFargateService albService, String id) {
 
         // create the green listener and target group
@@ -233,13 +901,14 @@ public class Service extends Stack {
                 .targetType(TargetType.IP)
                 .vpc(albService.getCluster().getVpc())
                 .build();
+        configureTargetGroup(tgGreen);
 
         ApplicationListener listenerGreen = albService
                 .getLoadBalancer()
                 .addListener(
                         "GreenListener",
                         BaseApplicationListenerProps.builder()
-                                .port(8080)
+                                .port(Service.TEST_LISTENER_PORT)
                                 .defaultTargetGroups(Arrays.asList(tgGreen))
                                 .protocol(ApplicationProtocol.HTTP)
                                 .build());
@@ -0,0 +1,86 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+/**
+ * Where the images of the service come from.
+ *
+ * In a pipeline run, the synth step builds the application and the bootstrap images once, and
+ * pushes them to the ECR repository of the toolchain, whose tags are immutable. Every stage then
+ * deploys the application image by digest, so all stages run the same bits, and the task
+ * definition of every Service stack refers to the same bootstrap image.
+ *
+ * Outside the pipeline (cdk synth or cdk deploy from a workstation) there is no published image,
+ * and every Service stack builds both images as Docker image assets.
+ */
+public final class ServiceImage {
+
+    private static final ServiceImage ASSETS = new ServiceImage(null, null, null, null, null);
+
+    private final String account;
+    private final String region;
+    private final String repositoryName;
+    private final String applicationDigest;
+    private final String bootstrapTag;
+
+    private ServiceImage(
+            String account, String region, String repositoryName, String applicationDigest, String bootstrapTag) {
+        this.account = account;
+        this.region = region;
+        this.repositoryName = repositoryName;
+        this.applicationDigest = applicationDigest;
+        this.bootstrapTag = bootstrapTag;
+    }
+
+    /**
+     * Builds the images as Docker image assets of every Service stack.
+     */
+    public static ServiceImage fromAssets() {
+        return ASSETS;
+    }
+
+    /**
+     * @param applicationDigest digest of the application image, sha256:...
+     * @param bootstrapTag tag of the bootstrap image
+     */
+    public static ServiceImage fromRepository(
+            String account, String region, String repositoryName, String applicationDigest, String bootstrapTag) {
+        if (applicationDigest == null || !applicationDigest.startsWith("sha256:")) {
+            throw new IllegalArgumentException("Invalid application image digest: " + applicationDigest);
+        }
+        if (bootstrapTag == null || bootstrapTag.isEmpty()) {
+            throw new IllegalArgumentException("Missing bootstrap image tag");
+        }
+        return new ServiceImage(account, region, repositoryName, applicationDigest, bootstrapTag);
+    }
+
+    public boolean isFromAssets() {
+        return repositoryName == null;
+    }
+
+    public String getRepositoryArn() {
+        return "arn:" + Service.partition(region) + ":ecr:" + region + ":" + account + ":repository/" + repositoryName;
+    }
+
+    public String getRepositoryName() {
+        return repositoryName;
+    }
+
+    public String getApplicationDigest() {
+        return applicationDigest;
+    }
+
+    public String getBootstrapTag() {
+        return bootstrapTag;
+    }
+
+    /**
+     * @return the URI CodeDeploy deploys, by digest, or null for assets
+     */
+    public String getApplicationImageUri() {
+        if (isFromAssets()) {
+            return null;
+        }
+        return account + ".dkr.ecr." + region + "." + Service.urlSuffix(region) + "/" + repositoryName + "@"
+                + applicationDigest;
+    }
+}
@@ -0,0 +1,203 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import software.amazon.awscdk.Duration;
+
+/**
+ * Settings of the service that change from one stage to another.
+ */
+public final class ServiceOptions {
+
+    private final CapacityProfile capacity;
+    private final ComputeProfile compute;
+    private final LoadBalancerProfile loadBalancer;
+    private final DeploymentAlarms alarms;
+    private final PerformanceGateProfile performanceGate;
+    private final EdgeCacheProfile edgeCache;
+    private final TracingProfile tracing;
+    private final ProxyProfile proxy;
+
+    private ServiceOptions(Builder builder) {
+        this.capacity = builder.capacity;
+        this.compute = builder.compute;
+        this.loadBalancer = builder.loadBalancer;
+        this.alarms = builder.alarms;
+        this.performanceGate = builder.performanceGate;
+        this.edgeCache = builder.edgeCache;
+        this.tracing = builder.tracing;
+        this.proxy = builder.proxy;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static ServiceOptions defaults() {
+        return builder().build();
+    }
+
+    public CapacityProfile getCapacity() {
+        return capacity;
+    }
+
+    public ComputeProfile getCompute() {
+        return compute;
+    }
+
+    public LoadBalancerProfile getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public DeploymentAlarms getAlarms() {
+        return alarms;
+    }
+
+    /**
+     * @return the settings of the AfterAllowTestTraffic hook, null when the stage has none
+     */
+    public PerformanceGateProfile getPerformanceGate() {
+        return performanceGate;
+    }
+
+    /**
+     * @return the settings of the CloudFront distribution, null when the stage has none
+     */
+    public EdgeCacheProfile getEdgeCache() {
+        return edgeCache;
+    }
+
+    /**
+     * @return the settings of the request tracing, null when the stage traces no request
+     */
+    public TracingProfile getTracing() {
+        return tracing;
+    }
+
+    /**
+     * @return the settings of the Envoy sidecar, null when the load balancer sends the requests
+     *     to the service directly
+     */
+    public ProxyProfile getProxy() {
+        return proxy;
+    }
+
+    public static final class Builder {
+
+        private CapacityProfile capacity = CapacityProfile.defaults();
+        private ComputeProfile compute = ComputeProfile.defaults();
+        private LoadBalancerProfile loadBalancer = null;
+        private DeploymentAlarms alarms = DeploymentAlarms.defaults();
+        private PerformanceGateProfile performanceGate = null;
+        private EdgeCacheProfile edgeCache = null;
+        private TracingProfile tracing = null;
+        private ProxyProfile proxy = null;
+
+        private Builder() {}
+
+        public Builder capacity(CapacityProfile capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * CPU architecture and Fargate Spot share of the tasks. x86 on Fargate by default.
+         */
+        public Builder compute(ComputeProfile compute) {
+            this.compute = compute;
+            return this;
+        }
+
+        /**
+         * LoadBalancerProfile.defaults() by default, or weighted random with anomaly mitigation
+         * with a proxy.
+         */
+        public Builder loadBalancer(LoadBalancerProfile loadBalancer) {
+            this.loadBalancer = loadBalancer;
+            return this;
+        }
+
+        /**
+         * Alarms that roll back the blue/green deployments of the stage.
+         */
+        public Builder alarms(DeploymentAlarms alarms) {
+            this.alarms = alarms;
+            return this;
+        }
+
+        /**
+         * Compares the replacement tasks with production, on the test listener, before traffic
+         * shifts. Disabled by default.
+         */
+        public Builder performanceGate(PerformanceGateProfile performanceGate) {
+            this.performanceGate = performanceGate;
+            return this;
+        }
+
+        /**
+         * Serves the stage through a CloudFront distribution. Disabled by default.
+         */
+        public Builder edgeCache(EdgeCacheProfile edgeCache) {
+            this.edgeCache = edgeCache;
+            return this;
+        }
+
+        /**
+         * Traces the requests with X-Ray, through a daemon sidecar in every task. Disabled by
+         * default.
+         */
+        public Builder tracing(TracingProfile tracing) {
+            this.tracing = tracing;
+            return this;
+        }
+
+        /**
+         * Sends the requests of the load balancer to the service through an Envoy sidecar.
+         * Disabled by default. The load balancer must then use anomaly mitigation, which ejects
+         * the tasks the proxy timeouts turn into failing ones.
+         */
+        public Builder proxy(ProxyProfile proxy) {
+            this.proxy = proxy;
+            return this;
+        }
+
+        public ServiceOptions build() {
+
+            if (loadBalancer == null) {
+                loadBalancer = proxy == null
+                        ? LoadBalancerProfile.defaults()
+                        : LoadBalancerProfile.builder()
+                                .algorithm(LoadBalancerProfile.Algorithm.WEIGHTED_RANDOM)
+                                .anomalyMitigation(true)
+                                .build();
+            }
+            // the proxy only turns slow tasks into failing ones, the load balancer ejects them
+            if (proxy != null && !loadBalancer.isAnomalyMitigation()) {
+                throw new IllegalArgumentException(
+                        "The proxy requires a load balancer with the weighted random algorithm and anomaly mitigation");
+            }
+
+            int sidecarsMemoryMiB = (tracing == null ? 0 : tracing.getDaemonMemoryReservationMiB())
+                    + (proxy == null ? 0 : proxy.getMemoryReservationMiB());
+            if (capacity.getContainerMemoryLimitMiB() + sidecarsMemoryMiB > capacity.getTaskMemoryMiB()) {
+                throw new IllegalArgumentException("The sidecars (" + sidecarsMemoryMiB
+                        + " MiB) and the service container (" + capacity.getContainerMemoryLimitMiB()
+                        + " MiB) do not fit the task memory " + capacity.getTaskMemoryMiB() + " MiB");
+            }
+            if (proxy != null) {
+                List<Duration> timeouts = new ArrayList<>(proxy.getRouteTimeouts().values());
+                timeouts.add(proxy.getRequestTimeout());
+                for (Duration timeout : timeouts) {
+                    // otherwise the load balancer answers 504 before the proxy, for every task alike
+                    if (timeout.toMilliseconds().intValue()
+                            >= loadBalancer.getIdleTimeout().toMilliseconds().intValue()) {
+                        throw new IllegalArgumentException("The proxy timeout " + timeout.toHumanString()
+                                + " must be lower than the idle timeout of the load balancer");
+                    }
+                }
+            }
+            return new ServiceOptions(this);
+        }
+    }
+}
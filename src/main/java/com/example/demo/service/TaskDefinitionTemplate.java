@@ -0,0 +1,426 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.services.ecs.CapacityProviderStrategy;
+import software.amazon.awscdk.services.ecs.CfnTaskDefinition;
+import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
+
+/**
+ * Renders the task definition and the AppSpec that the CodeDeploy action deploys, from the
+ * synthesized FargateTaskDefinition, so the tasks of every blue/green deployment get the CPU,
+ * memory, container limits, environment, log configuration and health check of the stack.
+ *
+ * The container definitions are resolved by the stack, which returns them in the camelCase
+ * format of the ECS RegisterTaskDefinition API. CloudFormation references are not available to
+ * CodeDeploy, so they are replaced: the image by the URI of the application image, and the roles
+ * and the log group by their names, which the stack sets explicitly. With the image in the task
+ * definition, the CodeDeploy action needs no imageDetail.json.
+ *
+ * The AppSpec also declares the capacity provider strategy of the service, when it has one, and
+ * the AfterAllowTestTraffic and AfterAllowTraffic hooks, when the stage has them: ECS deployments
+ * take their lifecycle hooks from the AppSpec, not from the deployment group.
+ *
+ * The files are written by the synthesizer of the Service stack (CodeDeploySynthesizer), to the
+ * codedeploy directory of the stage assembly, right after the CloudFormation template. The
+ * rendered task definition is checked against that template, which CloudFormation deploys, and
+ * the synthesis fails when they diverge. The CodeDeploy action of the pipeline reads the files
+ * from the cloud assembly artifact.
+ */
+public final class TaskDefinitionTemplate {
+
+    public static final String DIRECTORY = "codedeploy";
+    public static final String TASK_DEFINITION_FILE = "taskdef.json";
+    public static final String APPSPEC_FILE = "appspec.yaml";
+    static final String TASK_DEFINITION_PLACEHOLDER = "<TASK_DEFINITION>";
+
+    /**
+     * Settings of the task definition that must be identical in CloudFormation and CodeDeploy.
+     */
+    static final List<String> TASK_SETTINGS =
+            Arrays.asList("family", "networkMode", "cpu", "memory", "runtimePlatform");
+
+    static final List<String> CONTAINER_SETTINGS = Arrays.asList(
+            "name",
+            "cpu",
+            "memory",
+            "memoryReservation",
+            "essential",
+            "portMappings",
+            "environment",
+            "healthCheck",
+            "stopTimeout",
+            "dependsOn",
+            "command");
+
+    private final Stack stack;
+    private final FargateTaskDefinition taskDefinition;
+    private final String containerName;
+    private final int containerPort;
+    private final String executionRoleName;
+    private final String taskRoleName;
+    private final String logGroupName;
+    private final String imageUri;
+    private String loadBalancerContainerName;
+    private List<CapacityProviderStrategy> capacityProviderStrategies = new ArrayList<>();
+    private String afterAllowTestTrafficHook;
+    private String afterAllowTrafficHook;
+
+    public TaskDefinitionTemplate(
+            FargateTaskDefinition taskDefinition,
+            String containerName,
+            int containerPort,
+            String executionRoleName,
+            String taskRoleName,
+            String logGroupName,
+            String imageUri) {
+        this.stack = Stack.of(taskDefinition);
+        this.taskDefinition = taskDefinition;
+        this.containerName = containerName;
+        this.containerPort = containerPort;
+        this.executionRoleName = executionRoleName;
+        this.taskRoleName = taskRoleName;
+        this.logGroupName = logGroupName;
+        this.imageUri = imageUri;
+        this.loadBalancerContainerName = containerName;
+    }
+
+    /**
+     * @param name container the target groups send the requests to, when it is not the service
+     *     container, such as a proxy sidecar listening on containerPort
+     */
+    public TaskDefinitionTemplate loadBalancerContainer(String name) {
+        this.loadBalancerContainerName = name;
+        return this;
+    }
+
+    /**
+     * @param strategies capacity providers of the service, which the replacement task set of
+     *     every deployment must use too, empty for the FARGATE launch type
+     */
+    public TaskDefinitionTemplate capacityProviderStrategies(List<CapacityProviderStrategy> strategies) {
+        this.capacityProviderStrategies = new ArrayList<>(strategies);
+        return this;
+    }
+
+    /**
+     * @param functionName name of the Lambda function CodeDeploy invokes once the replacement
+     *     tasks receive the test traffic
+     */
+    public TaskDefinitionTemplate afterAllowTestTraffic(String functionName) {
+        this.afterAllowTestTrafficHook = functionName;
+        return this;
+    }
+
+    /**
+     * @param functionName name of the Lambda function CodeDeploy invokes once the replacement
+     *     tasks receive the production traffic
+     */
+    public TaskDefinitionTemplate afterAllowTraffic(String functionName) {
+        this.afterAllowTrafficHook = functionName;
+        return this;
+    }
+
+    /**
+     * Renders the files and writes them to the codedeploy directory of outdir, once the template
+     * of the stack is written there.
+     *
+     * @throws IllegalStateException when the rendered task definition diverges from the template
+     */
+    void synthesize(Path outdir) throws IOException {
+
+        Map<String, Object> rendered = render();
+        JsonNode synthesized = new ObjectMapper().readTree(outdir.resolve(stack.getTemplateFile()).toFile());
+        List<String> errors = compare(rendered, synthesized);
+        unresolved("taskdef", rendered, errors);
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException(
+                    "CodeDeploy task definition of " + stack.getStackName() + ":\n" + String.join("\n", errors));
+        }
+        write(outdir, rendered);
+    }
+
+    /**
+     * @return the task definition, as expected by the CodeDeploy ECS deploy action
+     */
+    Map<String, Object> render() {
+
+        CfnTaskDefinition cfn = cfnTaskDefinition();
+        Map<String, Object> rendered = new LinkedHashMap<>();
+        rendered.put("executionRoleArn", roleArn(executionRoleName));
+        rendered.put("taskRoleArn", roleArn(taskRoleName));
+        rendered.putAll(taskSettings());
+        rendered.put("requiresCompatibilities", stack.resolve(cfn.getRequiresCompatibilities()));
+
+        List<Object> containers = new ArrayList<>();
+        for (Map<String, Object> container : containerDefinitions()) {
+            Map<String, Object> copy = new LinkedHashMap<>(container);
+            if (containerName.equals(copy.get("name"))) {
+                copy.put("image", imageUri);
+            }
+            if (copy.get("logConfiguration") instanceof Map) {
+                copy.put("logConfiguration", logConfiguration(asMap(copy.get("logConfiguration"))));
+            }
+            containers.add(copy);
+        }
+        rendered.put("containerDefinitions", containers);
+        if (cfn.getRuntimePlatform() != null) {
+            rendered.put("runtimePlatform", stack.resolve(cfn.getRuntimePlatform()));
+        }
+        return rendered;
+    }
+
+    String renderAppSpec() {
+        String appSpec = "version: 0.0\n"
+                + "Resources:\n"
+                + "  - TargetService:\n"
+                + "      Type: AWS::ECS::Service\n"
+                + "      Properties:\n"
+                + "        TaskDefinition: " + TASK_DEFINITION_PLACEHOLDER + "\n"
+                + "        LoadBalancerInfo:\n"
+                + "          ContainerName: \"" + loadBalancerContainerName + "\"\n"
+                + "          ContainerPort: " + containerPort + "\n"
+                + "        PlatformVersion: \"LATEST\"\n";
+        if (!capacityProviderStrategies.isEmpty()) {
+            appSpec += "        CapacityProviderStrategy:\n";
+            for (CapacityProviderStrategy strategy : capacityProviderStrategies) {
+                appSpec += "          - CapacityProvider: \"" + strategy.getCapacityProvider() + "\"\n";
+                if (strategy.getBase() != null) {
+                    appSpec += "            Base: " + strategy.getBase() + "\n";
+                }
+                appSpec += "            Weight: " + (strategy.getWeight() == null ? 0 : strategy.getWeight()) + "\n";
+            }
+        }
+        if (afterAllowTestTrafficHook != null || afterAllowTrafficHook != null) {
+            appSpec += "Hooks:\n";
+        }
+        if (afterAllowTestTrafficHook != null) {
+            appSpec += "  - AfterAllowTestTraffic: \"" + afterAllowTestTrafficHook + "\"\n";
+        }
+        if (afterAllowTrafficHook != null) {
+            appSpec += "  - AfterAllowTraffic: \"" + afterAllowTrafficHook + "\"\n";
+        }
+        return appSpec;
+    }
+
+    /**
+     * @param synthesized CloudFormation template of the stack
+     * @return the differences between the rendered task definition and the one of the template
+     */
+    List<String> compare(Map<String, Object> rendered, JsonNode synthesized) {
+
+        List<String> errors = new ArrayList<>();
+        String logicalId = stack.getLogicalId(cfnTaskDefinition());
+        JsonNode expected = synthesized.path("Resources").path(logicalId).path("Properties");
+        if (expected.isMissingNode()) {
+            errors.add("The template has no task definition " + logicalId);
+            return errors;
+        }
+        // the template has the PascalCase property names of CloudFormation
+        JsonNode actual = new ObjectMapper().valueToTree(pascalCase(rendered));
+        for (String setting : TASK_SETTINGS) {
+            String property = capitalize(setting);
+            if (!same(expected.path(property), actual.path(property))) {
+                errors.add("CodeDeploy task definition " + setting + " is " + actual.path(property)
+                        + ", the template declares " + expected.path(property));
+            }
+        }
+
+        JsonNode expectedContainers = expected.path("ContainerDefinitions");
+        JsonNode actualContainers = actual.path("ContainerDefinitions");
+        if (expectedContainers.size() != actualContainers.size()) {
+            errors.add("CodeDeploy task definition has " + actualContainers.size() + " containers, the template "
+                    + expectedContainers.size());
+            return errors;
+        }
+        for (int i = 0; i < expectedContainers.size(); i++) {
+            for (String setting : CONTAINER_SETTINGS) {
+                String property = capitalize(setting);
+                JsonNode expectedValue = expectedContainers.get(i).path(property);
+                JsonNode actualValue = actualContainers.get(i).path(property);
+                if (!same(expectedValue, actualValue)) {
+                    errors.add("CodeDeploy container " + expectedContainers.get(i).path("Name").asText() + " "
+                            + setting + " is " + actualValue + ", the template declares " + expectedValue);
+                }
+            }
+        }
+        List<Object> renderedContainers = asList(rendered.get("containerDefinitions"));
+        if (renderedContainers.stream().noneMatch(c -> loadBalancerContainerName.equals(asMap(c).get("name")))) {
+            errors.add("The task definition has no container " + loadBalancerContainerName + " for the load balancer");
+        }
+        return errors;
+    }
+
+    void write(Path outdir, Map<String, Object> rendered) throws IOException {
+
+        Path directory = outdir.resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(TASK_DEFINITION_FILE), toJson(rendered).getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve(APPSPEC_FILE), renderAppSpec().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String toJson(Object value) {
+        try {
+            return new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render the task definition", e);
+        }
+    }
+
+    /**
+     * Adds an error for every CloudFormation intrinsic function left in the value, which the
+     * ECS API would take as a literal.
+     */
+    static void unresolved(String path, Object value, List<String> errors) {
+
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                if ("Ref".equals(key) || key.startsWith("Fn::")) {
+                    errors.add("CodeDeploy task definition " + path + " references CloudFormation: " + value);
+                    return;
+                }
+                unresolved(path + "." + key, entry.getValue(), errors);
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            for (int i = 0; i < list.size(); i++) {
+                unresolved(path + "[" + i + "]", list.get(i), errors);
+            }
+        } else if (value instanceof String && ((String) value).contains("${Token[")) {
+            errors.add("CodeDeploy task definition " + path + " has an unresolved token: " + value);
+        }
+    }
+
+    /**
+     * @return the value with the first letter of every property name in upper case
+     */
+    static Object pascalCase(Object value) {
+
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(capitalize(String.valueOf(entry.getKey())), pascalCase(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                copy.add(pascalCase(item));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * Compares numbers by value: the template has 512 where the stack resolves 512.0.
+     */
+    static boolean same(JsonNode expected, JsonNode actual) {
+
+        if (expected.isNumber() && actual.isNumber()) {
+            return expected.decimalValue().compareTo(actual.decimalValue()) == 0;
+        }
+        if (expected.isObject() && actual.isObject()) {
+            if (expected.size() != actual.size()) {
+                return false;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = expected.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if (!same(field.getValue(), actual.path(field.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (expected.isArray() && actual.isArray()) {
+            if (expected.size() != actual.size()) {
+                return false;
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                if (!same(expected.get(i), actual.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return expected.equals(actual);
+    }
+
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private CfnTaskDefinition cfnTaskDefinition() {
+        return (CfnTaskDefinition) taskDefinition.getNode().getDefaultChild();
+    }
+
+    /**
+     * @return the task level settings that size the task
+     */
+    private Map<String, Object> taskSettings() {
+
+        CfnTaskDefinition cfn = cfnTaskDefinition();
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("family", stack.resolve(cfn.getFamily()));
+        settings.put("networkMode", stack.resolve(cfn.getNetworkMode()));
+        settings.put("cpu", stack.resolve(cfn.getCpu()));
+        settings.put("memory", stack.resolve(cfn.getMemory()));
+        return settings;
+    }
+
+    private List<Map<String, Object>> containerDefinitions() {
+
+        List<Map<String, Object>> containers = new ArrayList<>();
+        for (Object container : asList(stack.resolve(cfnTaskDefinition().getContainerDefinitions()))) {
+            containers.add(asMap(container));
+        }
+        return containers;
+    }
+
+    private Map<String, Object> logConfiguration(Map<String, Object> logConfiguration) {
+
+        Map<String, Object> copy = new LinkedHashMap<>(logConfiguration);
+        if (copy.get("options") instanceof Map) {
+            Map<String, Object> options = new LinkedHashMap<>(asMap(copy.get("options")));
+            if (options.containsKey("awslogs-group")) {
+                options.put("awslogs-group", logGroupName);
+            }
+            if (options.containsKey("awslogs-region")) {
+                options.put("awslogs-region", stack.getRegion());
+            }
+            copy.put("options", options);
+        }
+        return copy;
+    }
+
+    private String roleArn(String roleName) {
+        return "arn:" + Service.partition(stack.getRegion()) + ":iam::" + stack.getAccount() + ":role/" + roleName;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value) {
+        return value == null ? new ArrayList<>() : (List<Object>) value;
+    }
+}
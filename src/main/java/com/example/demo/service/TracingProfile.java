@@ -0,0 +1,123 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import software.amazon.awscdk.Duration;
+
+/**
+ * Tracing of the requests served by a stage. The service sends a segment per traced request
+ * over UDP to the X-Ray daemon, which runs as a sidecar container of every task and forwards
+ * them to X-Ray with the task role.
+ *
+ * The service samples samplePercent of the requests the load balancer forwards without a
+ * sampling decision. The requests it leaves out are still traced when they take longer than
+ * tailLatency or fail with a 5xx, so the latency outliers of a canary can be compared with
+ * production in the X-Ray console.
+ */
+public final class TracingProfile {
+
+    /** UDP port of the daemon, in the network namespace of the task. */
+    static final int DAEMON_PORT = 2000;
+
+    private final int samplePercent;
+    private final Duration tailLatency;
+    private final String daemonImage;
+    private final int daemonCpu;
+    private final int daemonMemoryReservationMiB;
+
+    private TracingProfile(Builder builder) {
+        this.samplePercent = builder.samplePercent;
+        this.tailLatency = builder.tailLatency;
+        this.daemonImage = builder.daemonImage;
+        this.daemonCpu = builder.daemonCpu;
+        this.daemonMemoryReservationMiB = builder.daemonMemoryReservationMiB;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static TracingProfile defaults() {
+        return builder().build();
+    }
+
+    public int getSamplePercent() {
+        return samplePercent;
+    }
+
+    public Duration getTailLatency() {
+        return tailLatency;
+    }
+
+    public String getDaemonImage() {
+        return daemonImage;
+    }
+
+    public int getDaemonCpu() {
+        return daemonCpu;
+    }
+
+    public int getDaemonMemoryReservationMiB() {
+        return daemonMemoryReservationMiB;
+    }
+
+    public static final class Builder {
+
+        private int samplePercent = 5;
+        private Duration tailLatency = Duration.millis(500);
+        private String daemonImage = "public.ecr.aws/xray/aws-xray-daemon:3.x";
+        private int daemonCpu = 32;
+        private int daemonMemoryReservationMiB = 256;
+
+        private Builder() {}
+
+        /**
+         * Requests sampled at the head, from 0 to 100.
+         */
+        public Builder samplePercent(int samplePercent) {
+            this.samplePercent = samplePercent;
+            return this;
+        }
+
+        /**
+         * Requests not sampled at the head are still traced when they take longer. Zero only
+         * keeps the 5xx.
+         */
+        public Builder tailLatency(Duration tailLatency) {
+            this.tailLatency = tailLatency;
+            return this;
+        }
+
+        public Builder daemonImage(String daemonImage) {
+            this.daemonImage = daemonImage;
+            return this;
+        }
+
+        /**
+         * CPU units reserved for the daemon, out of the task CPU.
+         */
+        public Builder daemonCpu(int daemonCpu) {
+            this.daemonCpu = daemonCpu;
+            return this;
+        }
+
+        /**
+         * Memory reserved for the daemon. It must fit in the task memory next to the memory
+         * limit of the service container.
+         */
+        public Builder daemonMemoryReservationMiB(int daemonMemoryReservationMiB) {
+            this.daemonMemoryReservationMiB = daemonMemoryReservationMiB;
+            return this;
+        }
+
+        public TracingProfile build() {
+
+            if (samplePercent < 0 || samplePercent > 100) {
+                throw new IllegalArgumentException("The sample percentage must be between 0 and 100: " + samplePercent);
+            }
+            if (tailLatency.toMilliseconds().intValue() < 0) {
+                throw new IllegalArgumentException("The tail latency cannot be negative");
+            }
+            return new TracingProfile(this);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable, pre-encoded representation of a static page. The content is encoded to UTF-8 and
+ * compressed once, when the representation is created, and each encoding carries its own strong
+ * ETag. Serving a request is reduced to picking a byte array or answering 304 Not Modified.
+ */
+final class CachedRepresentation {
+
+    static final String GZIP = "gzip";
+
+    /**
+     * Browsers revalidate on every request, with the ETag. Shared caches, such as the CloudFront
+     * distribution of a stage, keep the page: it only changes with a deployment, which
+     * invalidates them.
+     */
+    private static final CacheControl CACHE_CONTROL = CacheControl.valueOf("max-age=0, s-maxage=86400");
+
+    private final MediaType mediaType;
+    private final byte[] identity;
+    private final byte[] gzip;
+    private final EntityTag identityTag;
+    private final EntityTag gzipTag;
+
+    private CachedRepresentation(MediaType mediaType, byte[] identity) {
+        this.mediaType = mediaType;
+        this.identity = identity;
+        this.gzip = CachedRepresentation.gzip(identity);
+        String hash = CachedRepresentation.sha256(identity);
+        this.identityTag = new EntityTag(hash);
+        this.gzipTag = new EntityTag(hash + "-" + GZIP);
+    }
+
+    /**
+     * Creates a representation of the given text. Line separators and non ASCII characters are
+     * preserved as they are.
+     */
+    static CachedRepresentation of(String content, MediaType mediaType) {
+        return new CachedRepresentation(
+                mediaType.withCharset(StandardCharsets.UTF_8.name()), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Loads a UTF-8 text resource from the classpath.
+     *
+     * @throws IllegalStateException if the resource does not exist
+     */
+    static CachedRepresentation fromClasspath(String name, MediaType mediaType) {
+
+        InputStream resource = Thread.currentThread().getContextClassLoader().getResourceAsStream(name);
+        if (resource == null) {
+            throw new IllegalStateException("Resource " + name + " was not found in the classpath");
+        }
+        try (InputStream in = resource) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            return CachedRepresentation.of(new String(out.toByteArray(), StandardCharsets.UTF_8), mediaType);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Cannot read resource " + name, ioe);
+        }
+    }
+
+    /**
+     * Builds the response for a GET request: 304 when the client already holds the selected
+     * encoding, otherwise the pre-encoded body.
+     *
+     * @param request the request, used to evaluate If-None-Match
+     * @param acceptEncoding value of the Accept-Encoding header, may be null
+     */
+    Response respond(Request request, String acceptEncoding) {
+
+        boolean compressed = CachedRepresentation.acceptsGzip(acceptEncoding) && gzip.length < identity.length;
+        EntityTag tag = compressed ? gzipTag : identityTag;
+
+        Response.ResponseBuilder builder = request.evaluatePreconditions(tag);
+        if (builder == null) {
+            builder = Response.ok(compressed ? gzip : identity, mediaType);
+            if (compressed) {
+                builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+            }
+        }
+        return builder.tag(tag)
+                .cacheControl(CACHE_CONTROL)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build();
+    }
+
+    MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return a copy of the uncompressed body
+     */
+    byte[] getBytes() {
+        return Arrays.copyOf(identity, identity.length);
+    }
+
+    /**
+     * @return a copy of the gzip encoded body
+     */
+    byte[] getGzipBytes() {
+        return Arrays.copyOf(gzip, gzip.length);
+    }
+
+    EntityTag getEntityTag() {
+        return identityTag;
+    }
+
+    EntityTag getGzipEntityTag() {
+        return gzipTag;
+    }
+
+    /**
+     * Parses an Accept-Encoding header (RFC 9110, section 12.5.3). gzip is accepted when it is
+     * listed, or matched by "*", with a quality value greater than zero.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = CachedRepresentation.quality(parts) > 0;
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return accepted;
+            }
+            if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static float quality(String[] parts) {
+
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0f;
+                }
+            }
+        }
+        return 1f;
+    }
+
+    private static byte[] gzip(byte[] content) {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(content);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256(byte[] content) {
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
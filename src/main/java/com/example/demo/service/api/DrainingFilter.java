@@ -0,0 +1,27 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+
+/**
+ * Adds Connection: close to the responses sent while the service drains, so clients and the load
+ * balancer open their next connection to another task instead of reusing a keep-alive connection
+ * that is about to be closed. Grizzly closes the connection once the response is written.
+ */
+public class DrainingFilter implements ContainerResponseFilter {
+
+    private final Lifecycle lifecycle;
+
+    public DrainingFilter(Lifecycle lifecycle) {
+        this.lifecycle = lifecycle;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+        if (lifecycle.isDraining()) {
+            response.getHeaders().putSingle("Connection", "close");
+        }
+    }
+}
@@ -1,64 +1,58 @@
 /* (C)2023 */
 package com.example.demo.service.api;
 
+import jakarta.inject.Singleton;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.stream.Collectors;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
 
 /**
  * Example resource returns example.html directly at the root context.
+ *
+ * The page is loaded once, when the class is initialized, and kept pre-encoded (plain and gzip)
+ * together with its ETag. A single instance serves every request.
  */
 @Path("/")
+@Singleton
 public class ExampleResource {
 
-    private static String HTML = null;
+    private static final CachedRepresentation PAGE =
+            CachedRepresentation.fromClasspath(getPathHTML() + "example.html", MediaType.TEXT_HTML_TYPE);
 
-    public ExampleResource() {
-        if (ExampleResource.HTML == null) ExampleResource.HTML = getFile(getPathHTML() + "example.html");
+    public ExampleResource() {}
+
+    /**
+     * Returns the page, loaded when the class was initialized. Calling it forces the
+     * initialization: {@link Main} does so before the server starts accepting connections, so a
+     * missing page fails the startup instead of the first request.
+     */
+    static CachedRepresentation page() {
+        return ExampleResource.PAGE;
     }
 
-    public String getPathHTML() {
-        return this.getClass()
+    static String getPathHTML() {
+        return ExampleResource.class
                         .getName()
-                        .substring(0, this.getClass().getName().lastIndexOf("."))
+                        .substring(0, ExampleResource.class.getName().lastIndexOf("."))
                         .replace(".", "/") + "/";
     }
 
     /**
-     * Method handling HTTP GET requests. The returned object will be sent
-     * to the client as "text/plain" media type.
+     * Method handling HTTP GET requests. The page is sent as "text/html", gzip encoded when the
+     * client accepts it, or as 304 Not Modified when If-None-Match matches its ETag.
      *
-     * @return String that will be returned as a text/plain response.
+     * @return the pre-encoded page
      */
     @GET
     @Produces(MediaType.TEXT_HTML)
-    public String example() {
-        return ExampleResource.HTML;
-    }
-
-    private String getFile(String filename) {
-
-        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(filename);
-                BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-            // Use resource
-            final String fileAsText = reader.lines().collect(Collectors.joining());
-            return fileAsText;
-        } catch (IOException ioe) {
-            System.out.println("ExampleResource::Cannot HTML file " + filename + ". IOException:" + ioe.getMessage());
-            ioe.printStackTrace();
-            return "";
-        }
-    }
-
-    public static void main(String args[]) {
-
-        ExampleResource e = new ExampleResource();
-        System.out.println(e.getPathHTML());
+    public Response example(
+            @Context Request request, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return ExampleResource.PAGE.respond(request, acceptEncoding);
     }
 }
@@ -0,0 +1,59 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import java.nio.charset.StandardCharsets;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+
+/**
+ * Health endpoints served by Grizzly directly, without going through Jersey:
+ *
+ * <ul>
+ *   <li>/health/live answers 200 while the process can serve requests (container health check)
+ *   <li>/health/ready answers 200 only once the service is warmed up, and 503 otherwise (load
+ *       balancer health check)
+ * </ul>
+ */
+public class HealthHandler extends HttpHandler {
+
+    static final String CONTEXT_PATH = "/health";
+    static final String LIVE = CONTEXT_PATH + "/live";
+    static final String READY = CONTEXT_PATH + "/ready";
+
+    private static final byte[] UP = "UP\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DOWN = "DOWN\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final Lifecycle lifecycle;
+
+    public HealthHandler(Lifecycle lifecycle) {
+        super("health");
+        this.lifecycle = lifecycle;
+    }
+
+    @Override
+    public void service(Request request, Response response) throws Exception {
+
+        String path = request.getRequestURI();
+        boolean up;
+        if (LIVE.equals(path)) {
+            up = lifecycle.isLive();
+        } else if (READY.equals(path)) {
+            up = lifecycle.isReady();
+        } else {
+            response.sendError(HttpStatus.NOT_FOUND_404.getStatusCode());
+            return;
+        }
+
+        byte[] body = up ? UP : DOWN;
+        response.setStatus(up ? HttpStatus.OK_200 : HttpStatus.SERVICE_UNAVAILABLE_503);
+        response.setContentType("text/plain");
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentLength(body.length);
+        if (!Method.HEAD.equals(request.getMethod())) {
+            response.getOutputStream().write(body);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import com.example.demo.service.api.logging.Log;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lifecycle of the service as seen by the load balancer. The service is live from the moment it
+ * starts until it stops, but it is ready to receive traffic only after the warm-up, and no
+ * longer once it starts draining its connections on shutdown.
+ */
+public final class Lifecycle {
+
+    public enum State {
+        STARTING,
+        READY,
+        DRAINING,
+        STOPPED
+    }
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.STARTING);
+
+    /**
+     * Marks the service ready, unless it is already stopping.
+     */
+    public void markReady() {
+        if (state.compareAndSet(State.STARTING, State.READY)) {
+            Log.info("Lifecycle", "Service is ready");
+        }
+    }
+
+    /**
+     * Fails the readiness checks, while the service keeps serving the requests it receives.
+     */
+    public void markDraining() {
+        if (state.getAndUpdate(current -> current == State.STOPPED ? current : State.DRAINING) != State.DRAINING) {
+            Log.info("Lifecycle", "Service is draining");
+        }
+    }
+
+    public void markStopped() {
+        state.set(State.STOPPED);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isLive() {
+        return state.get() != State.STOPPED;
+    }
+
+    public boolean isReady() {
+        return state.get() == State.READY;
+    }
+
+    public boolean isDraining() {
+        return state.get() == State.DRAINING;
+    }
+}
@@ -1,11 +1,40 @@
 /* (C)2023 */
 package com.example.demo.service.api;
 
+import com.example.demo.service.api.logging.AccessLogFilter;
+import com.example.demo.service.api.logging.AsyncLogger;
+import com.example.demo.service.api.logging.Log;
+import com.example.demo.service.api.metrics.EmfMetricsWriter;
+import com.example.demo.service.api.metrics.GrizzlyMetrics;
+import com.example.demo.service.api.metrics.JvmMetrics;
+import com.example.demo.service.api.metrics.LogMetrics;
+import com.example.demo.service.api.metrics.MetricsRegistry;
+import com.example.demo.service.api.metrics.MetricsResource;
+import com.example.demo.service.api.metrics.RequestMetricsFilter;
+import com.example.demo.service.api.metrics.TracingMetrics;
+import com.example.demo.service.api.tracing.SegmentEmitter;
+import com.example.demo.service.api.tracing.TracingFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.glassfish.grizzly.http.server.HttpHandlerRegistration;
 import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.KeepAlive;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.glassfish.grizzly.http2.Http2Configuration;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
 import org.glassfish.jersey.server.ResourceConfig;
 
@@ -16,34 +45,38 @@ import org.glassfish.jersey.server.ResourceConfig;
  */
 public class Main {
 
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Lifecycle lifecycle = new Lifecycle();
+    private final String warmupToken = UUID.randomUUID().toString();
+    private ServerConfig config;
+    private EmfMetricsWriter emfWriter;
+    private AsyncLogger logger;
+    private SegmentEmitter segmentEmitter;
+
     public Main() {}
 
     public static void main(String[] args) {
 
         try {
-            System.out.println("Running Java Version: " + System.getProperty("java.version"));
-            System.out.println("\"Example\" Service");
+            Log.info("Main", "Running Java Version: " + System.getProperty("java.version"));
+            Log.info("Main", "\"Example\" Service");
 
-            HttpServer server = (new Main()).startServer();
+            final Main main = new Main();
+            HttpServer server = main.startServer();
 
-            System.out.println("Application started.\n"
-                    + "Try accessing " + Main.getBaseURI() + " in the browser.\n"
-                    + "Hit ^C to stop the application...");
+            Log.info("Main", "Application started. Try accessing " + Main.getBaseURI() + " in the browser.");
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
                 @Override
                 public void run() {
-                    server.shutdownNow();
+                    main.stop(server);
                 }
             }));
 
             Thread.currentThread().join();
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("Exception msg:" + e.getMessage());
         } catch (Throwable t) {
-            t.printStackTrace();
-            System.out.println("Throwable msg:" + t.getMessage());
+            Log.error("Main", "The service failed: " + t.getMessage(), t);
+            Log.uninstall();
         }
     }
 
@@ -55,31 +88,296 @@ public class Main {
      */
     HttpServer startServer() throws IOException {
 
-        final ResourceConfig rc =
-                new ResourceConfig().packages(this.getClass().getPackage().getName());
-        return GrizzlyHttpServerFactory.createHttpServer(Main.getBaseURI(), rc);
+        // load and pre-encode the page before the server accepts connections
+        ExampleResource.page();
+
+        ServerConfig config = ServerConfig.fromEnvironment();
+        return startServer(createResourceConfig(config.isResourceScanning()), config);
     }
 
-    static URI getBaseURI() throws UnknownHostException {
-        String addr = "http://"
-                + InetAddress.getLocalHost()
-                        .toString()
-                        .substring(0, InetAddress.getLocalHost().toString().indexOf("/")) + ":" + getPort(8080) + "/";
-        System.out.println(addr);
-        return URI.create(addr);
-    }
-
-    private static int getPort(int defaultPort) {
-        final String port = System.getProperty("jersey.config.test.container.port");
-        if (null != port) {
-            try {
-                return Integer.parseInt(port);
-            } catch (NumberFormatException e) {
-                System.out.println("Value of jersey.config.test.container.port property"
-                        + " is not a valid positive integer [" + port + "]."
-                        + " Reverting to default [" + defaultPort + "].");
+    HttpServer startServer(ResourceConfig rc) throws IOException {
+        return startServer(rc, ServerConfig.fromEnvironment());
+    }
+
+    /**
+     * Starts the Grizzly HTTP server for the given Jersey application. The server is created
+     * stopped, so the transport, keep-alive and worker pool can be configured before it accepts
+     * the first connection. The service reports ready once the warm-up requests succeed.
+     */
+    HttpServer startServer(ResourceConfig rc, ServerConfig config) throws IOException {
+
+        this.config = config;
+        logger = new AsyncLogger(
+                config.getLogBufferSize(), config.getLogOverflowPolicy(), config.getLogSampleRate(), System.out);
+        logger.start();
+        Log.install(logger);
+        LogMetrics.bind(logger, metrics);
+        Log.info("Main", config.toString());
+        if (config.isTrainingRun()) {
+            exitAfter(config.getTrainingTimeoutSeconds());
+        }
+        if (config.isAccessLog()) {
+            rc.register(new AccessLogFilter(logger));
+        }
+        if (config.isTracing()) {
+            segmentEmitter = new SegmentEmitter(
+                    SegmentEmitter.address(config.getTracingDaemonAddress()), SegmentEmitter.DEFAULT_CAPACITY);
+            segmentEmitter.start();
+            TracingMetrics.bind(segmentEmitter, metrics);
+            rc.register(new TracingFilter(
+                    config.getName(),
+                    config.getTracingSamplePercent(),
+                    config.getTracingTailLatencyMillis(),
+                    segmentEmitter));
+        }
+
+        final URI baseUri = Main.getBaseURI(config.getHost(), config.getPort());
+        final HttpServer server = GrizzlyHttpServerFactory.createHttpServer(baseUri, rc, false);
+
+        // health checks are answered by Grizzly, without the Jersey request processing
+        server.getServerConfiguration()
+                .addHttpHandler(
+                        new HealthHandler(lifecycle),
+                        HttpHandlerRegistration.builder()
+                                .contextPath(HealthHandler.CONTEXT_PATH)
+                                .urlPattern("/*")
+                                .build());
+
+        for (NetworkListener listener : server.getListeners()) {
+            Main.configure(listener, config);
+            GrizzlyMetrics.bind(listener, metrics);
+        }
+        JvmMetrics.bind(metrics);
+        server.start();
+
+        if (config.isMetricsEmf()) {
+            emfWriter = new EmfMetricsWriter(metrics, config.getMetricsNamespace(), config.getName(), System.out);
+            emfWriter.start(config.getMetricsEmfIntervalSeconds());
+        }
+        warmUp(baseUri, config.getWarmupRequests());
+        return server;
+    }
+
+    /**
+     * Sends requests to the root resource, in the background, so the JIT compiles the request
+     * path before the load balancer sends traffic. Readiness turns true only when every warm-up
+     * request succeeds; otherwise the task never becomes healthy and ECS replaces it. The
+     * requests carry the warm-up token, so the request metrics leave them out.
+     */
+    void warmUp(final URI baseUri, final int requests) {
+
+        Thread warmUp = new Thread(
+                () -> {
+                    try {
+                        for (int i = 0; i < requests; i++) {
+                            HttpURLConnection connection = (HttpURLConnection) baseUri.toURL().openConnection();
+                            connection.setRequestProperty("Accept-Encoding", i % 2 == 0 ? "gzip" : "identity");
+                            connection.setRequestProperty(RequestMetricsFilter.WARMUP_HEADER, warmupToken);
+                            try (InputStream in = connection.getInputStream()) {
+                                byte[] buffer = new byte[8192];
+                                while (in.read(buffer) != -1) {}
+                            }
+                            if (connection.getResponseCode() != 200) {
+                                throw new IOException("Warm-up request answered " + connection.getResponseCode());
+                            }
+                        }
+                        lifecycle.markReady();
+                        if (config.isTrainingRun()) {
+                            Log.info("Main", "Training run complete");
+                            Log.uninstall();
+                            System.exit(0);
+                        }
+                    } catch (Throwable e) {
+                        // any failure, not only I/O: a training run must exit, or the image build hangs
+                        Log.error("Main", "Warm-up failed, the service will not report ready", e);
+                        if (config.isTrainingRun()) {
+                            Log.uninstall();
+                            System.exit(1);
+                        }
+                    }
+                },
+                "warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    /**
+     * Fails a training run that has not completed after the given time: whatever blocks it, the
+     * Dockerfile RUN step ends instead of waiting forever.
+     */
+    void exitAfter(final int seconds) {
+
+        Thread watchdog = new Thread(
+                () -> {
+                    try {
+                        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    Log.error("Main", "Training run not complete after " + seconds + " seconds", null);
+                    Log.uninstall();
+                    System.exit(1);
+                },
+                "training-timeout");
+        watchdog.setDaemon(true);
+        watchdog.start();
+    }
+
+    /**
+     * Stops the server gracefully. ECS sends SIGTERM once the task is deregistered from the target
+     * group, but the load balancer may still route a few requests to it, so the server:
+     *
+     * <ol>
+     *   <li>fails the readiness checks and answers with Connection: close, for the drain period
+     *   <li>stops accepting connections and waits for the in-flight requests, up to the shutdown
+     *       timeout
+     *   <li>closes the remaining connections
+     * </ol>
+     */
+    void stop(HttpServer server) {
+
+        lifecycle.markDraining();
+        try {
+            if (config.getShutdownDrainSeconds() > 0) {
+                TimeUnit.SECONDS.sleep(config.getShutdownDrainSeconds());
+            }
+            server.shutdown(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)
+                    .get(config.getShutdownTimeoutSeconds() + 1L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Log.warn("Main", "Graceful shutdown did not complete: " + e);
+        } finally {
+            server.shutdownNow();
+            lifecycle.markStopped();
+            if (emfWriter != null) {
+                // publish the requests of the last interval
+                emfWriter.stop();
             }
+            if (segmentEmitter != null) {
+                segmentEmitter.stop();
+            }
+        }
+        Log.info("Main", "Application stopped.");
+        // the events of the shutdown are written before the JVM exits
+        Log.uninstall();
+    }
+
+    Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    static void configure(NetworkListener listener, ServerConfig config) {
+
+        KeepAlive keepAlive = listener.getKeepAlive();
+        keepAlive.setIdleTimeoutInSeconds(config.getKeepAliveIdleTimeoutSeconds());
+        keepAlive.setMaxRequestsCount(config.getKeepAliveMaxRequests());
+
+        TCPNIOTransport transport = listener.getTransport();
+        transport.setTcpNoDelay(config.isTcpNoDelay());
+        if (config.getSelectorRunners() > 0) {
+            transport.setSelectorRunnersCount(config.getSelectorRunners());
+        }
+        if (config.getSocketReceiveBufferSize() > 0) {
+            transport.setReadBufferSize(config.getSocketReceiveBufferSize());
+        }
+        if (config.getSocketSendBufferSize() > 0) {
+            transport.setWriteBufferSize(config.getSocketSendBufferSize());
+        }
+
+        ExecutorService virtualThreads = config.isVirtualThreads() ? Main.newVirtualThreadExecutor() : null;
+        if (virtualThreads != null) {
+            transport.setWorkerThreadPool(virtualThreads);
+            Log.info("Main", "Request handling runs on virtual threads");
+        } else if (transport.getWorkerThreadPoolConfig() != null) {
+            ThreadPoolConfig workers = transport.getWorkerThreadPoolConfig();
+            if (config.getWorkerMaxPoolSize() > 0) {
+                workers.setMaxPoolSize(config.getWorkerMaxPoolSize());
+            }
+            if (config.getWorkerCorePoolSize() > 0) {
+                workers.setCorePoolSize(config.getWorkerCorePoolSize());
+                workers.setMaxPoolSize(Math.max(workers.getMaxPoolSize(), config.getWorkerCorePoolSize()));
+            }
+            workers.setQueueLimit(config.getWorkerQueueLimit());
+        }
+
+        if (config.isHttp2()) {
+            listener.registerAddOn(new Http2AddOn(Http2Configuration.builder()
+                    .maxConcurrentStreams(config.getHttp2MaxConcurrentStreams())
+                    .build()));
+        }
+    }
+
+    ResourceConfig createResourceConfig() {
+        return createResourceConfig(false);
+    }
+
+    /**
+     * The resources of the service, plus the metrics and draining filters and the metrics
+     * endpoint, which are registered as instances so they share the state of this server.
+     * Resources are registered explicitly unless scanning is requested, as scanning the
+     * classpath (every dependency is unpacked in the jar) is the slowest part of the startup.
+     */
+    ResourceConfig createResourceConfig(boolean scan) {
+
+        ResourceConfig rc = new ResourceConfig();
+        if (scan) {
+            rc.packages(false, this.getClass().getPackage().getName());
+        } else {
+            rc.register(ExampleResource.class);
+        }
+        return rc.register(new RequestMetricsFilter(metrics, warmupToken))
+                .register(new DrainingFilter(lifecycle))
+                .register(new MetricsResource(metrics));
+    }
+
+    MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The service is compiled for Java 8, so the virtual thread executor (Java 21, preview in 19
+     * and 20) is looked up reflectively.
+     *
+     * @return an executor that starts a virtual thread per task, or null when the running JVM
+     *     cannot create virtual threads, in which case the platform worker pool is kept
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+
+        try {
+            return (ExecutorService)
+                    Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            Log.warn("Main", "Virtual threads are not available in Java " + System.getProperty("java.version")
+                    + ". Reverting to the platform worker pool.");
+        } catch (InvocationTargetException e) {
+            // Java 19 and 20 throw UnsupportedOperationException unless started with --enable-preview
+            Log.warn("Main", "Virtual threads cannot be created: " + e.getCause()
+                    + ". Reverting to the platform worker pool.");
+        } catch (ReflectiveOperationException e) {
+            Log.warn("Main", "Virtual threads cannot be created: " + e + ". Reverting to the platform worker pool.");
+        }
+        return null;
+    }
+
+    static URI getBaseURI() throws UnknownHostException {
+        return Main.getBaseURI(
+                ServerConfig.getSetting(ServerConfig.HOST, null), ServerConfig.getInt(ServerConfig.PORT, 8080));
+    }
+
+    static URI getBaseURI(int port) throws UnknownHostException {
+        return Main.getBaseURI(null, port);
+    }
+
+    /**
+     * @param host address to listen on, null for the address of the host name
+     */
+    static URI getBaseURI(String host, int port) throws UnknownHostException {
+        if (host == null) {
+            host = InetAddress.getLocalHost()
+                    .toString()
+                    .substring(0, InetAddress.getLocalHost().toString().indexOf("/"));
         }
-        return defaultPort;
+        return URI.create("http://" + host + ":" + port + "/");
     }
 }
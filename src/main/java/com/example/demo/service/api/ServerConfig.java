@@ -0,0 +1,658 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import com.example.demo.service.api.logging.AsyncLogger;
+import com.example.demo.service.api.logging.Log;
+
+/**
+ * Settings of the Grizzly HTTP server. {@link #fromEnvironment()} reads every setting from a
+ * system property or, when the property is not set, from an environment variable with the same
+ * name in upper case and with dots replaced by underscores (service.keepalive.idle.seconds
+ * becomes SERVICE_KEEPALIVE_IDLE_SECONDS), so the ECS task definition can tune each task size.
+ *
+ * Sizes and counts lower than or equal to zero keep the Grizzly (or operating system) default.
+ */
+public final class ServerConfig {
+
+    static final String PORT = "jersey.config.test.container.port";
+
+    /**
+     * Address the server listens on, the address of the host name by default. 127.0.0.1 behind a
+     * proxy sidecar.
+     */
+    static final String HOST = "service.host";
+
+    /**
+     * Selects the threads that run Jersey request handling: "platform" (default) keeps Grizzly's
+     * worker pool, "virtual" runs every request on its own virtual thread.
+     */
+    static final String WORKERS = "service.workers";
+
+    static final String WORKERS_VIRTUAL = "virtual";
+    static final String WORKERS_PLATFORM = "platform";
+
+    static final String SELECTORS = "service.selectors";
+    static final String WORKER_CORE_POOL_SIZE = "service.worker.core.pool.size";
+    static final String WORKER_MAX_POOL_SIZE = "service.worker.max.pool.size";
+    static final String WORKER_QUEUE_LIMIT = "service.worker.queue.limit";
+    static final String KEEPALIVE_IDLE_SECONDS = "service.keepalive.idle.seconds";
+    static final String KEEPALIVE_MAX_REQUESTS = "service.keepalive.max.requests";
+    static final String SOCKET_RECEIVE_BUFFER = "service.socket.receive.buffer";
+    static final String SOCKET_SEND_BUFFER = "service.socket.send.buffer";
+    static final String TCP_NODELAY = "service.tcp.nodelay";
+    static final String HTTP2 = "service.http2";
+    static final String HTTP2_MAX_CONCURRENT_STREAMS = "service.http2.max.concurrent.streams";
+    static final String WARMUP_REQUESTS = "service.warmup.requests";
+    static final String SHUTDOWN_DRAIN_SECONDS = "service.shutdown.drain.seconds";
+    static final String SHUTDOWN_TIMEOUT_SECONDS = "service.shutdown.timeout.seconds";
+    static final String NAME = "service.name";
+    static final String METRICS_EMF = "service.metrics.emf";
+    static final String METRICS_EMF_INTERVAL_SECONDS = "service.metrics.emf.interval.seconds";
+    static final String METRICS_NAMESPACE = "service.metrics.namespace";
+    static final String RESOURCES_SCAN = "service.resources.scan";
+    static final String TRAINING_RUN = "service.training.run";
+    static final String TRAINING_TIMEOUT_SECONDS = "service.training.timeout.seconds";
+    static final String LOG_ACCESS = "service.log.access";
+    static final String LOG_BUFFER_SIZE = "service.log.buffer.size";
+    static final String LOG_OVERFLOW = "service.log.overflow";
+    static final String LOG_SAMPLE_RATE = "service.log.sample.rate";
+    static final String TRACING = "service.tracing";
+    static final String TRACING_SAMPLE_PERCENT = "service.tracing.sample.percent";
+    static final String TRACING_TAIL_LATENCY_MILLIS = "service.tracing.tail.latency.millis";
+    static final String TRACING_DAEMON_ADDRESS = "service.tracing.daemon.address";
+
+    /**
+     * The ALB idle timeout is 60 seconds by default. The target must keep idle connections open
+     * for longer than the load balancer, otherwise the ALB may reuse a connection the task is
+     * closing and answer 502.
+     */
+    static final int DEFAULT_KEEPALIVE_IDLE_SECONDS = 65;
+
+    private final int port;
+    private final String host;
+    private final boolean virtualThreads;
+    private final int selectorRunners;
+    private final int workerCorePoolSize;
+    private final int workerMaxPoolSize;
+    private final int workerQueueLimit;
+    private final int keepAliveIdleTimeoutSeconds;
+    private final int keepAliveMaxRequests;
+    private final int socketReceiveBufferSize;
+    private final int socketSendBufferSize;
+    private final boolean tcpNoDelay;
+    private final boolean http2;
+    private final int http2MaxConcurrentStreams;
+    private final int warmupRequests;
+    private final int shutdownDrainSeconds;
+    private final int shutdownTimeoutSeconds;
+    private final boolean resourceScanning;
+    private final boolean trainingRun;
+    private final int trainingTimeoutSeconds;
+    private final String name;
+    private final boolean metricsEmf;
+    private final int metricsEmfIntervalSeconds;
+    private final String metricsNamespace;
+    private final boolean accessLog;
+    private final int logBufferSize;
+    private final AsyncLogger.OverflowPolicy logOverflowPolicy;
+    private final int logSampleRate;
+    private final boolean tracing;
+    private final int tracingSamplePercent;
+    private final int tracingTailLatencyMillis;
+    private final String tracingDaemonAddress;
+
+    private ServerConfig(Builder builder) {
+        this.port = builder.port;
+        this.host = builder.host;
+        this.virtualThreads = builder.virtualThreads;
+        this.selectorRunners = builder.selectorRunners;
+        this.workerCorePoolSize = builder.workerCorePoolSize;
+        this.workerMaxPoolSize = builder.workerMaxPoolSize;
+        this.workerQueueLimit = builder.workerQueueLimit;
+        this.keepAliveIdleTimeoutSeconds = builder.keepAliveIdleTimeoutSeconds;
+        this.keepAliveMaxRequests = builder.keepAliveMaxRequests;
+        this.socketReceiveBufferSize = builder.socketReceiveBufferSize;
+        this.socketSendBufferSize = builder.socketSendBufferSize;
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.http2 = builder.http2;
+        this.http2MaxConcurrentStreams = builder.http2MaxConcurrentStreams;
+        this.warmupRequests = builder.warmupRequests;
+        this.shutdownDrainSeconds = builder.shutdownDrainSeconds;
+        this.shutdownTimeoutSeconds = builder.shutdownTimeoutSeconds;
+        this.resourceScanning = builder.resourceScanning;
+        this.trainingRun = builder.trainingRun;
+        this.trainingTimeoutSeconds = builder.trainingTimeoutSeconds;
+        this.name = builder.name;
+        this.metricsEmf = builder.metricsEmf;
+        this.metricsEmfIntervalSeconds = builder.metricsEmfIntervalSeconds;
+        this.metricsNamespace = builder.metricsNamespace;
+        this.accessLog = builder.accessLog;
+        this.logBufferSize = builder.logBufferSize;
+        this.logOverflowPolicy = builder.logOverflowPolicy;
+        this.logSampleRate = builder.logSampleRate;
+        this.tracing = builder.tracing;
+        this.tracingSamplePercent = builder.tracingSamplePercent;
+        this.tracingTailLatencyMillis = builder.tracingTailLatencyMillis;
+        this.tracingDaemonAddress = builder.tracingDaemonAddress;
+    }
+
+    /**
+     * @return the configuration read from system properties and environment variables
+     */
+    public static ServerConfig fromEnvironment() {
+
+        Builder builder = ServerConfig.builder();
+        return builder.port(getInt(PORT, builder.port))
+                .host(getSetting(HOST, builder.host))
+                .virtualThreads(WORKERS_VIRTUAL.equalsIgnoreCase(getSetting(WORKERS, WORKERS_PLATFORM)))
+                .selectorRunners(getInt(SELECTORS, builder.selectorRunners))
+                .workerCorePoolSize(getInt(WORKER_CORE_POOL_SIZE, builder.workerCorePoolSize))
+                .workerMaxPoolSize(getInt(WORKER_MAX_POOL_SIZE, builder.workerMaxPoolSize))
+                .workerQueueLimit(getInt(WORKER_QUEUE_LIMIT, builder.workerQueueLimit))
+                .keepAliveIdleTimeoutSeconds(getInt(KEEPALIVE_IDLE_SECONDS, builder.keepAliveIdleTimeoutSeconds))
+                .keepAliveMaxRequests(getInt(KEEPALIVE_MAX_REQUESTS, builder.keepAliveMaxRequests))
+                .socketReceiveBufferSize(getInt(SOCKET_RECEIVE_BUFFER, builder.socketReceiveBufferSize))
+                .socketSendBufferSize(getInt(SOCKET_SEND_BUFFER, builder.socketSendBufferSize))
+                .tcpNoDelay(Boolean.parseBoolean(getSetting(TCP_NODELAY, String.valueOf(builder.tcpNoDelay))))
+                .http2(Boolean.parseBoolean(getSetting(HTTP2, String.valueOf(builder.http2))))
+                .http2MaxConcurrentStreams(getInt(HTTP2_MAX_CONCURRENT_STREAMS, builder.http2MaxConcurrentStreams))
+                .warmupRequests(getInt(WARMUP_REQUESTS, builder.warmupRequests))
+                .shutdownDrainSeconds(getInt(SHUTDOWN_DRAIN_SECONDS, builder.shutdownDrainSeconds))
+                .shutdownTimeoutSeconds(getInt(SHUTDOWN_TIMEOUT_SECONDS, builder.shutdownTimeoutSeconds))
+                .resourceScanning(
+                        Boolean.parseBoolean(getSetting(RESOURCES_SCAN, String.valueOf(builder.resourceScanning))))
+                .trainingRun(Boolean.parseBoolean(getSetting(TRAINING_RUN, String.valueOf(builder.trainingRun))))
+                .trainingTimeoutSeconds(getInt(TRAINING_TIMEOUT_SECONDS, builder.trainingTimeoutSeconds))
+                .name(getSetting(NAME, builder.name))
+                .metricsEmf(Boolean.parseBoolean(getSetting(METRICS_EMF, String.valueOf(builder.metricsEmf))))
+                .metricsEmfIntervalSeconds(getInt(METRICS_EMF_INTERVAL_SECONDS, builder.metricsEmfIntervalSeconds))
+                .metricsNamespace(getSetting(METRICS_NAMESPACE, builder.metricsNamespace))
+                .accessLog(Boolean.parseBoolean(getSetting(LOG_ACCESS, String.valueOf(builder.accessLog))))
+                .logBufferSize(getInt(LOG_BUFFER_SIZE, builder.logBufferSize))
+                .logOverflowPolicy(getOverflowPolicy(builder.logOverflowPolicy))
+                .logSampleRate(getInt(LOG_SAMPLE_RATE, builder.logSampleRate))
+                .tracing(Boolean.parseBoolean(getSetting(TRACING, String.valueOf(builder.tracing))))
+                .tracingSamplePercent(getInt(TRACING_SAMPLE_PERCENT, builder.tracingSamplePercent))
+                .tracingTailLatencyMillis(getInt(TRACING_TAIL_LATENCY_MILLIS, builder.tracingTailLatencyMillis))
+                .tracingDaemonAddress(getSetting(TRACING_DAEMON_ADDRESS, builder.tracingDaemonAddress))
+                .build();
+    }
+
+    /**
+     * Reads a setting from a system property or, when the property is not set, from the
+     * environment variable with the same name in upper case and with dots replaced by
+     * underscores.
+     */
+    static String getSetting(String property, String defaultValue) {
+
+        String value = System.getProperty(property);
+        if (value == null) {
+            value = System.getenv(property.toUpperCase().replace('.', '_'));
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    static int getInt(String property, int defaultValue) {
+
+        String value = getSetting(property, null);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                Log.warn("ServerConfig", "Value of " + property + " is not a valid integer [" + value + "]."
+                        + " Reverting to default [" + defaultValue + "].");
+            }
+        }
+        return defaultValue;
+    }
+
+    static AsyncLogger.OverflowPolicy getOverflowPolicy(AsyncLogger.OverflowPolicy defaultValue) {
+
+        String value = getSetting(LOG_OVERFLOW, defaultValue.name());
+        try {
+            return AsyncLogger.OverflowPolicy.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.warn("ServerConfig", "Value of " + LOG_OVERFLOW + " is not a valid policy [" + value + "]."
+                    + " Reverting to default [" + defaultValue + "].");
+            return defaultValue;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the address the server listens on, null for the address of the host name
+     */
+    public String getHost() {
+        return host;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getSelectorRunners() {
+        return selectorRunners;
+    }
+
+    public int getWorkerCorePoolSize() {
+        return workerCorePoolSize;
+    }
+
+    public int getWorkerMaxPoolSize() {
+        return workerMaxPoolSize;
+    }
+
+    public int getWorkerQueueLimit() {
+        return workerQueueLimit;
+    }
+
+    public int getKeepAliveIdleTimeoutSeconds() {
+        return keepAliveIdleTimeoutSeconds;
+    }
+
+    public int getKeepAliveMaxRequests() {
+        return keepAliveMaxRequests;
+    }
+
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    public int getWarmupRequests() {
+        return warmupRequests;
+    }
+
+    public int getShutdownDrainSeconds() {
+        return shutdownDrainSeconds;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public boolean isResourceScanning() {
+        return resourceScanning;
+    }
+
+    public boolean isTrainingRun() {
+        return trainingRun;
+    }
+
+    public int getTrainingTimeoutSeconds() {
+        return trainingTimeoutSeconds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isMetricsEmf() {
+        return metricsEmf;
+    }
+
+    public int getMetricsEmfIntervalSeconds() {
+        return metricsEmfIntervalSeconds;
+    }
+
+    public String getMetricsNamespace() {
+        return metricsNamespace;
+    }
+
+    public boolean isAccessLog() {
+        return accessLog;
+    }
+
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public AsyncLogger.OverflowPolicy getLogOverflowPolicy() {
+        return logOverflowPolicy;
+    }
+
+    public int getLogSampleRate() {
+        return logSampleRate;
+    }
+
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    public int getTracingSamplePercent() {
+        return tracingSamplePercent;
+    }
+
+    public int getTracingTailLatencyMillis() {
+        return tracingTailLatencyMillis;
+    }
+
+    public String getTracingDaemonAddress() {
+        return tracingDaemonAddress;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig [port=" + port + ", host=" + host + ", virtualThreads=" + virtualThreads
+                + ", selectorRunners=" + selectorRunners + ", workerCorePoolSize=" + workerCorePoolSize
+                + ", workerMaxPoolSize=" + workerMaxPoolSize + ", workerQueueLimit=" + workerQueueLimit
+                + ", keepAliveMaxRequests=" + keepAliveMaxRequests
+                + ", socketReceiveBufferSize=" + socketReceiveBufferSize + ", tcpNoDelay=" + tcpNoDelay
+                + ", http2=" + http2 + ", http2MaxConcurrentStreams=" + http2MaxConcurrentStreams
+                + ", warmupRequests=" + warmupRequests + ", shutdownDrainSeconds=" + shutdownDrainSeconds
+                + ", name=" + name + ", metricsEmfIntervalSeconds=" + metricsEmfIntervalSeconds
+                + ", resourceScanning=" + resourceScanning + ", trainingRun=" + trainingRun
+                + ", trainingTimeoutSeconds=" + trainingTimeoutSeconds + ", accessLog=" + accessLog
+                + ", logBufferSize=" + logBufferSize + ", logSampleRate=" + logSampleRate + ", tracing=" + tracing
+                + ", tracingSamplePercent=" + tracingSamplePercent + ", tracingDaemonAddress=" + tracingDaemonAddress
+                + "]";
+    }
+
+    public static final class Builder {
+
+        private int port = 8080;
+        private String host = null;
+        private boolean virtualThreads = false;
+        private int selectorRunners = 0;
+        private int workerCorePoolSize = 0;
+        private int workerMaxPoolSize = 0;
+        private int workerQueueLimit = -1;
+        private int keepAliveIdleTimeoutSeconds = DEFAULT_KEEPALIVE_IDLE_SECONDS;
+        // the ALB reuses connections indefinitely, closing them after N requests only adds handshakes
+        private int keepAliveMaxRequests = -1;
+        private int socketReceiveBufferSize = 0;
+        private int socketSendBufferSize = 0;
+        private boolean tcpNoDelay = true;
+        private boolean http2 = false;
+        private int http2MaxConcurrentStreams = 100;
+        private int warmupRequests = 100;
+        private int shutdownDrainSeconds = 0;
+        private int shutdownTimeoutSeconds = 10;
+        private boolean resourceScanning = false;
+        private boolean trainingRun = false;
+        private int trainingTimeoutSeconds = 300;
+        private String name = "example";
+        private boolean metricsEmf = false;
+        private int metricsEmfIntervalSeconds = 60;
+        private String metricsNamespace = "Example";
+        private boolean accessLog = false;
+        private int logBufferSize = 8192;
+        private AsyncLogger.OverflowPolicy logOverflowPolicy = AsyncLogger.OverflowPolicy.DROP;
+        private int logSampleRate = 10;
+        private boolean tracing = false;
+        private int tracingSamplePercent = 5;
+        private int tracingTailLatencyMillis = 500;
+        private String tracingDaemonAddress = "127.0.0.1:2000";
+
+        private Builder() {}
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * Runs Jersey request handling on virtual threads instead of the worker pool.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Number of selector threads accepting connections and reading requests.
+         */
+        public Builder selectorRunners(int selectorRunners) {
+            this.selectorRunners = selectorRunners;
+            return this;
+        }
+
+        public Builder workerCorePoolSize(int workerCorePoolSize) {
+            this.workerCorePoolSize = workerCorePoolSize;
+            return this;
+        }
+
+        public Builder workerMaxPoolSize(int workerMaxPoolSize) {
+            this.workerMaxPoolSize = workerMaxPoolSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of requests waiting for a worker thread, -1 for an unbounded queue.
+         */
+        public Builder workerQueueLimit(int workerQueueLimit) {
+            this.workerQueueLimit = workerQueueLimit;
+            return this;
+        }
+
+        /**
+         * Seconds an idle keep-alive connection stays open. Must be higher than the idle timeout
+         * of the load balancer in front of the service.
+         */
+        public Builder keepAliveIdleTimeoutSeconds(int keepAliveIdleTimeoutSeconds) {
+            this.keepAliveIdleTimeoutSeconds = keepAliveIdleTimeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Requests served on a connection before it is closed, -1 for no limit.
+         */
+        public Builder keepAliveMaxRequests(int keepAliveMaxRequests) {
+            this.keepAliveMaxRequests = keepAliveMaxRequests;
+            return this;
+        }
+
+        /**
+         * SO_RCVBUF of accepted connections, in bytes.
+         */
+        public Builder socketReceiveBufferSize(int socketReceiveBufferSize) {
+            this.socketReceiveBufferSize = socketReceiveBufferSize;
+            return this;
+        }
+
+        /**
+         * SO_SNDBUF of accepted connections, in bytes.
+         */
+        public Builder socketSendBufferSize(int socketSendBufferSize) {
+            this.socketSendBufferSize = socketSendBufferSize;
+            return this;
+        }
+
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        /**
+         * Enables cleartext HTTP/2 (h2c), by prior knowledge or by upgrade from HTTP/1.1.
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public Builder http2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+            this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+            return this;
+        }
+
+        /**
+         * Requests the service sends to itself after it starts, before it reports ready.
+         */
+        public Builder warmupRequests(int warmupRequests) {
+            this.warmupRequests = warmupRequests;
+            return this;
+        }
+
+        /**
+         * Seconds the service keeps serving after SIGTERM, with failing readiness checks, so the
+         * load balancer stops routing to it before it closes the listener. Align it with the
+         * deregistration delay of the target group.
+         */
+        public Builder shutdownDrainSeconds(int shutdownDrainSeconds) {
+            this.shutdownDrainSeconds = shutdownDrainSeconds;
+            return this;
+        }
+
+        /**
+         * Seconds the server waits for in-flight requests after the drain period, before it
+         * closes the remaining connections.
+         */
+        public Builder shutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+            this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Finds the resources by scanning the classpath, instead of registering them explicitly.
+         * Slower to start, meant for development.
+         */
+        public Builder resourceScanning(boolean resourceScanning) {
+            this.resourceScanning = resourceScanning;
+            return this;
+        }
+
+        /**
+         * Exits once the warm-up requests complete, so a JVM started with -XX:ArchiveClassesAtExit
+         * dumps the classes of the startup and request path into a CDS archive.
+         */
+        public Builder trainingRun(boolean trainingRun) {
+            this.trainingRun = trainingRun;
+            return this;
+        }
+
+        /**
+         * Seconds after which a training run that has not completed exits with status 1, so a
+         * hung warm-up fails the image build instead of blocking it.
+         */
+        public Builder trainingTimeoutSeconds(int trainingTimeoutSeconds) {
+            this.trainingTimeoutSeconds = trainingTimeoutSeconds;
+            return this;
+        }
+
+        /**
+         * Name of the service, the ServiceName dimension of the published metrics.
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Writes the metrics to stdout in the CloudWatch Embedded Metric Format.
+         */
+        public Builder metricsEmf(boolean metricsEmf) {
+            this.metricsEmf = metricsEmf;
+            return this;
+        }
+
+        public Builder metricsEmfIntervalSeconds(int metricsEmfIntervalSeconds) {
+            this.metricsEmfIntervalSeconds = metricsEmfIntervalSeconds;
+            return this;
+        }
+
+        /**
+         * CloudWatch namespace of the published metrics.
+         */
+        public Builder metricsNamespace(String metricsNamespace) {
+            this.metricsNamespace = metricsNamespace;
+            return this;
+        }
+
+        /**
+         * Logs every request handled by Jersey.
+         */
+        public Builder accessLog(boolean accessLog) {
+            this.accessLog = accessLog;
+            return this;
+        }
+
+        /**
+         * Log events waiting to be written, at most. Rounded up to a power of two.
+         */
+        public Builder logBufferSize(int logBufferSize) {
+            this.logBufferSize = logBufferSize;
+            return this;
+        }
+
+        /**
+         * What happens to the log events when stdout cannot keep up: DROP or SAMPLE.
+         */
+        public Builder logOverflowPolicy(AsyncLogger.OverflowPolicy logOverflowPolicy) {
+            this.logOverflowPolicy = logOverflowPolicy;
+            return this;
+        }
+
+        /**
+         * One in logSampleRate INFO events is kept when the SAMPLE policy applies.
+         */
+        public Builder logSampleRate(int logSampleRate) {
+            this.logSampleRate = logSampleRate;
+            return this;
+        }
+
+        /**
+         * Sends a segment per request to the X-Ray daemon.
+         */
+        public Builder tracing(boolean tracing) {
+            this.tracing = tracing;
+            return this;
+        }
+
+        /**
+         * Requests sampled when the caller did not decide, from 0 to 100.
+         */
+        public Builder tracingSamplePercent(int tracingSamplePercent) {
+            this.tracingSamplePercent = Math.max(0, Math.min(100, tracingSamplePercent));
+            return this;
+        }
+
+        /**
+         * Requests that are not sampled are still traced when they take longer, 0 to disable.
+         * Requests answered with a 5xx are always traced.
+         */
+        public Builder tracingTailLatencyMillis(int tracingTailLatencyMillis) {
+            this.tracingTailLatencyMillis = tracingTailLatencyMillis;
+            return this;
+        }
+
+        /**
+         * host:port of the UDP listener of the X-Ray daemon.
+         */
+        public Builder tracingDaemonAddress(String tracingDaemonAddress) {
+            this.tracingDaemonAddress = tracingDaemonAddress;
+            return this;
+        }
+
+        public ServerConfig build() {
+            return new ServerConfig(this);
+        }
+    }
+}
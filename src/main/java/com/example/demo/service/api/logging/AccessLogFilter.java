@@ -0,0 +1,43 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.PreMatching;
+
+/**
+ * Logs every request handled by Jersey: method, path, status and the time from the moment
+ * Jersey received the request until the response filters run. The request thread only claims a
+ * slot of the log buffer (see AsyncLogger).
+ */
+@PreMatching
+public class AccessLogFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    static final String START_PROPERTY = AccessLogFilter.class.getName() + ".start";
+
+    private final AsyncLogger logger;
+
+    public AccessLogFilter(AsyncLogger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+
+        Object start = request.getProperty(START_PROPERTY);
+        if (start != null) {
+            logger.access(
+                    request.getMethod(),
+                    request.getUriInfo().getRequestUri().getRawPath(),
+                    response.getStatus(),
+                    System.nanoTime() - (Long) start);
+        }
+    }
+}
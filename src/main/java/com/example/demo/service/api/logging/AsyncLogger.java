@@ -0,0 +1,261 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes structured log events, one JSON document per line, from a single background thread.
+ *
+ * The threads that log only fill a slot of a bounded ring buffer (see RingBuffer): they never
+ * format, never write to stdout and never wait. When the awslogs driver stalls, the writer
+ * thread blocks on stdout, the ring fills up, and the events that do not fit are counted and
+ * dropped instead of blocking the requests. With the SAMPLE policy, once the ring is half full,
+ * only one in sampleRate INFO events is kept, so the warnings and errors still fit.
+ *
+ * Events are written to the same PrintStream as the EMF metrics, so lines never interleave.
+ */
+public final class AsyncLogger {
+
+    public enum Level {
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    public enum OverflowPolicy {
+        /** Drops the events that find the ring full. */
+        DROP,
+        /** Samples the INFO events once the ring is half full, drops the events that find it full. */
+        SAMPLE
+    }
+
+    /**
+     * The writer parks when the ring is empty: a logged event waits at most this long.
+     */
+    static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Characters written to stdout at once, at most. System.out flushes on every line it
+     * prints, so the writer prints the lines of a batch together.
+     */
+    static final int BATCH_CHARACTERS = 16 * 1024;
+
+    private final RingBuffer ring;
+    private final OverflowPolicy policy;
+    private final int sampleRate;
+    private final PrintStream out;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final StringBuilder batch = new StringBuilder(BATCH_CHARACTERS + 1024);
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AsyncLogger(int capacity, OverflowPolicy policy, int sampleRate, PrintStream out) {
+        this.ring = new RingBuffer(capacity);
+        this.policy = policy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.out = out;
+    }
+
+    public synchronized void start() {
+
+        if (writer == null) {
+            running = true;
+            writer = new Thread(this::drain, "async-logger");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Writes the events logged before this call, then stops the writer.
+     */
+    public synchronized void stop() {
+
+        if (writer != null) {
+            running = false;
+            LockSupport.unpark(writer);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+    }
+
+    public void log(Level level, String logger, String message, Throwable error) {
+
+        long position = claim(level);
+        if (position >= 0) {
+            LogEvent event = ring.get(position);
+            event.timestampMillis = System.currentTimeMillis();
+            event.level = level;
+            event.logger = logger;
+            event.message = message;
+            event.error = error;
+            ring.publish(position);
+        }
+    }
+
+    /**
+     * Logs a request served by the service.
+     */
+    public void access(String method, String path, int status, long durationNanos) {
+
+        long position = claim(Level.INFO);
+        if (position >= 0) {
+            LogEvent event = ring.get(position);
+            event.timestampMillis = System.currentTimeMillis();
+            event.level = Level.INFO;
+            event.logger = "access";
+            event.method = method;
+            event.path = path;
+            event.status = status;
+            event.durationNanos = Math.max(0, durationNanos);
+            ring.publish(position);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getSampled() {
+        return sampled.sum();
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * @return the events waiting to be written, approximately
+     */
+    public int getBuffered() {
+        return ring.size();
+    }
+
+    private long claim(Level level) {
+
+        if (policy == OverflowPolicy.SAMPLE
+                && level == Level.INFO
+                && ring.size() >= ring.capacity() / 2
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            sampled.increment();
+            return -1;
+        }
+        long position = ring.claim();
+        if (position < 0) {
+            dropped.increment();
+        }
+        return position;
+    }
+
+    private void drain() {
+
+        while (true) {
+            boolean stopping = !running;
+            int events = 0;
+            LogEvent event = ring.peek();
+            while (event != null && batch.length() < BATCH_CHARACTERS) {
+                int length = batch.length();
+                try {
+                    format(event, batch);
+                    events++;
+                } catch (RuntimeException e) {
+                    // a throwable that cannot print its stack trace must not stop the writer
+                    batch.setLength(length);
+                    dropped.increment();
+                } finally {
+                    ring.release();
+                }
+                event = ring.peek();
+            }
+            if (batch.length() > 0) {
+                out.print(batch);
+                batch.setLength(0);
+                written.add(events);
+            } else if (stopping) {
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Appends the event to the line as a JSON document, followed by a new line.
+     */
+    static void format(LogEvent event, StringBuilder line) {
+
+        line.append("{\"timestamp\":\"");
+        DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(event.timestampMillis), line);
+        line.append("\",\"level\":\"").append(event.level).append("\",\"logger\":");
+        string(line, event.logger);
+        if (event.isAccess()) {
+            line.append(",\"method\":");
+            string(line, event.method);
+            line.append(",\"path\":");
+            string(line, event.path);
+            line.append(",\"status\":").append(event.status);
+            line.append(",\"durationMs\":").append(event.durationNanos / 1000 / 1000.0);
+        } else {
+            line.append(",\"message\":");
+            string(line, event.message);
+        }
+        if (event.error != null) {
+            StringWriter stackTrace = new StringWriter();
+            event.error.printStackTrace(new PrintWriter(stackTrace));
+            line.append(",\"error\":");
+            string(line, stackTrace.toString());
+        }
+        line.append("}\n");
+    }
+
+    private static void string(StringBuilder line, String value) {
+
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,67 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+/**
+ * Entry point of the service logs. The server installs its AsyncLogger when it starts; until
+ * then, and after it stops, events are formatted and written to stdout by the calling thread,
+ * which only happens during the startup and the shutdown.
+ */
+public final class Log {
+
+    private static volatile AsyncLogger logger;
+
+    private Log() {}
+
+    public static void install(AsyncLogger asyncLogger) {
+        logger = asyncLogger;
+    }
+
+    /**
+     * Writes the pending events and returns to synchronous logging.
+     */
+    public static void uninstall() {
+
+        AsyncLogger installed = logger;
+        logger = null;
+        if (installed != null) {
+            installed.stop();
+        }
+    }
+
+    public static void info(String logger, String message) {
+        log(AsyncLogger.Level.INFO, logger, message, null);
+    }
+
+    public static void warn(String logger, String message) {
+        log(AsyncLogger.Level.WARN, logger, message, null);
+    }
+
+    public static void error(String logger, String message, Throwable error) {
+        log(AsyncLogger.Level.ERROR, logger, message, error);
+    }
+
+    /**
+     * @return the installed logger, null when the server is not running
+     */
+    public static AsyncLogger get() {
+        return logger;
+    }
+
+    private static void log(AsyncLogger.Level level, String name, String message, Throwable error) {
+
+        AsyncLogger installed = logger;
+        if (installed != null) {
+            installed.log(level, name, message, error);
+            return;
+        }
+        LogEvent event = new LogEvent();
+        event.timestampMillis = System.currentTimeMillis();
+        event.level = level;
+        event.logger = name;
+        event.message = message;
+        event.error = error;
+        StringBuilder line = new StringBuilder(256);
+        AsyncLogger.format(event, line);
+        System.out.print(line);
+    }
+}
@@ -0,0 +1,35 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+/**
+ * Slot of the ring buffer, filled in place by the thread that logs and cleared once written, so
+ * logging allocates no event. Access log events carry the request fields, the others a message.
+ */
+final class LogEvent {
+
+    long timestampMillis;
+    AsyncLogger.Level level;
+    String logger;
+    String message;
+    Throwable error;
+
+    String method;
+    String path;
+    int status;
+    long durationNanos = -1;
+
+    boolean isAccess() {
+        return durationNanos >= 0;
+    }
+
+    void clear() {
+        level = null;
+        logger = null;
+        message = null;
+        error = null;
+        method = null;
+        path = null;
+        status = 0;
+        durationNanos = -1;
+    }
+}
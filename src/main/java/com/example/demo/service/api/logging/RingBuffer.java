@@ -0,0 +1,101 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring of pre-allocated events. Request threads claim a
+ * slot with a single compare-and-set, fill it in place and publish it; they never block, and a
+ * full ring is reported to them instead of waiting for the consumer. The sequence of every slot
+ * tells whose turn it is: a producer may fill it when it equals the position of the producer, the
+ * consumer may read it when it equals the position plus one.
+ *
+ * @see <a href="https://www.1024cores.net/home/lock-free-algorithms/queues/bounded-mpmc-queue">Bounded MPMC queue</a>
+ */
+final class RingBuffer {
+
+    private final LogEvent[] events;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    RingBuffer(int capacity) {
+
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.events = new LogEvent[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            events[i] = new LogEvent();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return the position of a slot the caller fills then publishes, or -1 when the ring is full
+     */
+    long claim() {
+
+        long position = tail.get();
+        while (true) {
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (available < 0) {
+                return -1;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    LogEvent get(long position) {
+        return events[(int) position & mask];
+    }
+
+    void publish(long position) {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    /**
+     * Consumer only.
+     *
+     * @return the next published event, or null when there is none yet. It must be released
+     *     before the next call.
+     */
+    LogEvent peek() {
+
+        long position = head;
+        return sequences.get((int) position & mask) == position + 1 ? events[(int) position & mask] : null;
+    }
+
+    /**
+     * Consumer only: clears the event returned by peek and gives its slot back to the producers.
+     */
+    void release() {
+
+        long position = head;
+        events[(int) position & mask].clear();
+        sequences.lazySet((int) position & mask, position + events.length);
+        head = position + 1;
+    }
+
+    /**
+     * @return the number of claimed slots not released yet, approximately
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return events.length;
+    }
+}
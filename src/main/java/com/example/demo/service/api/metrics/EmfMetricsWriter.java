@@ -0,0 +1,181 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import com.example.demo.service.api.logging.Log;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Publishes the metrics to CloudWatch with the Embedded Metric Format: every interval it writes
+ * one JSON document per route, with the request count and latency percentiles of the interval,
+ * and one document with the gauges and the counter increments. The awslogs driver ships stdout
+ * to CloudWatch Logs, which extracts the metrics, so the service needs no CloudWatch client.
+ *
+ * @see <a href="https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html">Embedded Metric Format</a>
+ */
+public class EmfMetricsWriter {
+
+    private final MetricsRegistry registry;
+    private final String namespace;
+    private final String serviceName;
+    private final PrintStream out;
+
+    private final Map<RouteMetrics, Histogram> previousLatency = new HashMap<>();
+    private final Map<String, Double> previousCounters = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public EmfMetricsWriter(MetricsRegistry registry, String namespace, String serviceName, PrintStream out) {
+        this.registry = registry;
+        this.namespace = namespace;
+        this.serviceName = serviceName;
+        this.out = out;
+    }
+
+    public synchronized void start(long intervalSeconds) {
+
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "emf-metrics-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::write, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+            write();
+        }
+    }
+
+    /**
+     * Writes the metrics recorded since the previous invocation.
+     */
+    synchronized void write() {
+
+        try {
+            long timestamp = System.currentTimeMillis();
+            for (RouteMetrics route : registry.getRoutes()) {
+                Histogram current = route.snapshot();
+                Histogram interval = current.copy();
+                Histogram previous = previousLatency.put(route, current);
+                if (previous != null) {
+                    interval.subtract(previous);
+                }
+                if (interval.getTotalCount() > 0) {
+                    out.println(routeDocument(timestamp, route, interval));
+                }
+            }
+            out.println(samplesDocument(timestamp));
+        } catch (RuntimeException e) {
+            // never let an exception cancel the scheduled writes
+            Log.error("EmfMetricsWriter", "Cannot write metrics", e);
+        }
+    }
+
+    String routeDocument(long timestamp, RouteMetrics route, Histogram interval) {
+
+        StringBuilder json = header(timestamp, "\"ServiceName\",\"Route\",\"Method\",\"Status\"");
+        json.append("{\"Name\":\"RequestCount\",\"Unit\":\"Count\"},")
+                .append("{\"Name\":\"LatencyP50\",\"Unit\":\"Milliseconds\"},")
+                .append("{\"Name\":\"LatencyP99\",\"Unit\":\"Milliseconds\"},")
+                .append("{\"Name\":\"LatencyP999\",\"Unit\":\"Milliseconds\"},")
+                .append("{\"Name\":\"LatencyMax\",\"Unit\":\"Milliseconds\"}]}]},");
+        field(json, "ServiceName", serviceName);
+        field(json, "Route", route.getRoute());
+        field(json, "Method", route.getMethod());
+        field(json, "Status", route.getStatus());
+        json.append("\"RequestCount\":").append(interval.getTotalCount()).append(',');
+        json.append("\"LatencyP50\":").append(millis(interval.getValueAtPercentile(50))).append(',');
+        json.append("\"LatencyP99\":").append(millis(interval.getValueAtPercentile(99))).append(',');
+        json.append("\"LatencyP999\":").append(millis(interval.getValueAtPercentile(99.9))).append(',');
+        json.append("\"LatencyMax\":").append(millis(interval.getMaxValue())).append('}');
+        return json.toString();
+    }
+
+    String samplesDocument(long timestamp) {
+
+        Map<String, Double> values = new HashMap<>();
+        for (MetricsRegistry.Sample sample : registry.getSamples()) {
+            String name = metricName(sample.getName());
+            double value = sample.getValue();
+            if ("counter".equals(sample.getType())) {
+                Double previous = previousCounters.put(name, value);
+                value = previous == null ? 0 : Math.max(0, value - previous);
+            }
+            values.put(name, value);
+        }
+
+        StringBuilder json = header(timestamp, "\"ServiceName\"");
+        boolean first = true;
+        for (String name : values.keySet()) {
+            json.append(first ? "" : ",").append("{\"Name\":\"").append(name).append("\"}");
+            first = false;
+        }
+        json.append("]}]},");
+        field(json, "ServiceName", serviceName);
+        first = true;
+        for (Map.Entry<String, Double> value : values.entrySet()) {
+            json.append(first ? "" : ",")
+                    .append('"')
+                    .append(value.getKey())
+                    .append("\":")
+                    .append(String.format(Locale.ROOT, "%.3f", value.getValue()));
+            first = false;
+        }
+        return json.append('}').toString();
+    }
+
+    private StringBuilder header(long timestamp, String dimensions) {
+        return new StringBuilder(512)
+                .append("{\"_aws\":{\"Timestamp\":")
+                .append(timestamp)
+                .append(",\"CloudWatchMetrics\":[{\"Namespace\":\"")
+                .append(escape(namespace))
+                .append("\",\"Dimensions\":[[")
+                .append(dimensions)
+                .append("]],\"Metrics\":[");
+    }
+
+    /**
+     * Turns a Prometheus sample name into a CloudWatch metric name, folding the label values
+     * into the name: jvm_gc_collections_total{gc="G1 Old Generation"} becomes
+     * jvm_gc_collections_total_G1_Old_Generation.
+     */
+    static String metricName(String sample) {
+
+        int labels = sample.indexOf('{');
+        if (labels < 0) {
+            return sample;
+        }
+        StringBuilder name = new StringBuilder(sample.substring(0, labels));
+        String[] values = sample.substring(labels).split("\"");
+        for (int i = 1; i < values.length; i += 2) {
+            name.append('_').append(values[i].replaceAll("[^A-Za-z0-9]+", "_"));
+        }
+        return name.toString();
+    }
+
+    private static void field(StringBuilder json, String name, String value) {
+        json.append('"').append(name).append("\":\"").append(escape(value)).append("\",");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,101 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.glassfish.grizzly.Connection;
+import org.glassfish.grizzly.ConnectionProbe;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
+import org.glassfish.grizzly.threadpool.AbstractThreadPool;
+import org.glassfish.grizzly.threadpool.ThreadPoolProbe;
+
+/**
+ * Gauges of a Grizzly network listener: open client connections, and the queue depth, busy
+ * threads and live threads of its worker pool. Worker pool gauges stay at zero when requests
+ * run on virtual threads, as there is no pool; http_server_requests_in_flight still applies.
+ */
+public final class GrizzlyMetrics {
+
+    private GrizzlyMetrics() {}
+
+    /**
+     * Adds monitoring probes to the listener transport. Must be invoked before the server
+     * starts, so the probes are attached to the worker pool it creates.
+     */
+    public static void bind(NetworkListener listener, MetricsRegistry registry) {
+
+        String labels = "{listener=\"" + listener.getName() + "\"}";
+        TCPNIOTransport transport = listener.getTransport();
+
+        final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+        final LongAdder accepted = new LongAdder();
+        transport.getConnectionMonitoringConfig().addProbes(new ConnectionProbe.Adapter() {
+            @Override
+            public void onAcceptEvent(Connection serverConnection, Connection clientConnection) {
+                connections.add(clientConnection);
+                accepted.increment();
+            }
+
+            @Override
+            public void onCloseEvent(Connection connection) {
+                connections.remove(connection);
+            }
+        });
+        registry.gauge("grizzly_connections_open" + labels, "Open client connections.", () -> connections.size());
+        registry.counter(
+                "grizzly_connections_accepted_total" + labels, "Accepted client connections.", () -> accepted.sum());
+
+        final LongAdder queued = new LongAdder();
+        final LongAdder dequeued = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder threads = new LongAdder();
+        transport.getThreadPoolMonitoringConfig().addProbes(new ThreadPoolProbe.Adapter() {
+            @Override
+            public void onTaskQueueEvent(AbstractThreadPool threadPool, Runnable task) {
+                queued.increment();
+            }
+
+            @Override
+            public void onTaskDequeueEvent(AbstractThreadPool threadPool, Runnable task) {
+                dequeued.increment();
+            }
+
+            @Override
+            public void onTaskCompleteEvent(AbstractThreadPool threadPool, Runnable task) {
+                completed.increment();
+            }
+
+            @Override
+            public void onTaskQueueOverflowEvent(AbstractThreadPool threadPool) {
+                rejected.increment();
+            }
+
+            @Override
+            public void onThreadAllocateEvent(AbstractThreadPool threadPool, Thread thread) {
+                threads.increment();
+            }
+
+            @Override
+            public void onThreadReleaseEvent(AbstractThreadPool threadPool, Thread thread) {
+                threads.decrement();
+            }
+        });
+        registry.gauge(
+                "grizzly_worker_queue_depth" + labels,
+                "Tasks waiting for a worker thread.",
+                () -> Math.max(0, queued.sum() - dequeued.sum()));
+        registry.gauge(
+                "grizzly_worker_busy_threads" + labels,
+                "Worker threads running a task.",
+                () -> Math.max(0, dequeued.sum() - completed.sum()));
+        registry.gauge("grizzly_worker_threads" + labels, "Live worker threads.", () -> threads.sum());
+        registry.counter(
+                "grizzly_worker_rejected_total" + labels,
+                "Tasks rejected because the worker queue was full.",
+                () -> rejected.sum());
+    }
+}
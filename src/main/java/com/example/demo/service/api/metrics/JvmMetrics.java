@@ -0,0 +1,59 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Gauges and counters of the JVM: heap, direct buffers, garbage collections and threads.
+ */
+public final class JvmMetrics {
+
+    private JvmMetrics() {}
+
+    public static void bind(MetricsRegistry registry) {
+
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge(
+                "jvm_memory_heap_used_bytes",
+                "Used heap memory.",
+                () -> memory.getHeapMemoryUsage().getUsed());
+        registry.gauge(
+                "jvm_memory_heap_committed_bytes",
+                "Heap memory committed by the operating system.",
+                () -> memory.getHeapMemoryUsage().getCommitted());
+        registry.gauge(
+                "jvm_memory_heap_max_bytes",
+                "Maximum heap memory.",
+                () -> memory.getHeapMemoryUsage().getMax());
+        registry.gauge(
+                "jvm_memory_nonheap_used_bytes",
+                "Used non-heap memory (metaspace, code cache).",
+                () -> memory.getNonHeapMemoryUsage().getUsed());
+
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            registry.gauge(
+                    "jvm_buffer_pool_used_bytes{pool=\"" + pool.getName() + "\"}",
+                    "Memory used by NIO buffer pools.",
+                    () -> pool.getMemoryUsed());
+        }
+
+        for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "{gc=\"" + gc.getName() + "\"}";
+            registry.counter(
+                    "jvm_gc_collections_total" + labels,
+                    "Garbage collections.",
+                    () -> Math.max(0, gc.getCollectionCount()));
+            registry.counter(
+                    "jvm_gc_collection_seconds_total" + labels,
+                    "Time spent in garbage collections.",
+                    () -> Math.max(0, gc.getCollectionTime()) / 1000d);
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("jvm_threads_live", "Live platform threads.", () -> threads.getThreadCount());
+    }
+}
@@ -0,0 +1,26 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import com.example.demo.service.api.logging.AsyncLogger;
+
+/**
+ * Counters of the asynchronous logger, so the events it drops show up in the metrics.
+ */
+public final class LogMetrics {
+
+    private LogMetrics() {}
+
+    public static void bind(AsyncLogger logger, MetricsRegistry registry) {
+
+        registry.counter("log_events_written_total", "Log events written to stdout.", logger::getWritten);
+        registry.counter(
+                "log_events_dropped_total",
+                "Log events dropped because the log buffer was full.",
+                logger::getDropped);
+        registry.counter(
+                "log_events_sampled_total",
+                "INFO log events left out while the log buffer was filling up.",
+                logger::getSampled);
+        registry.gauge("log_buffer_events", "Log events waiting to be written.", logger::getBuffered);
+    }
+}
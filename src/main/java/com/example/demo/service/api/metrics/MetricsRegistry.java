@@ -0,0 +1,169 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Metrics of the service: per-route request latency and sampled values (gauges and counters)
+ * read when the metrics are rendered. Rendered in the Prometheus text format by {@link
+ * #toPrometheus()} and published to CloudWatch by {@link EmfMetricsWriter}.
+ */
+public class MetricsRegistry {
+
+    static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final Map<String, Sample> samples = new ConcurrentSkipListMap<>();
+
+    /**
+     * @return the metrics of the route, created on first use
+     */
+    public RouteMetrics route(String method, String route, int status) {
+
+        String statusClass = (status / 100) + "xx";
+        String key = method + ' ' + route + ' ' + statusClass;
+        RouteMetrics metrics = routes.get(key);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(key, k -> new RouteMetrics(method, route, statusClass));
+        }
+        return metrics;
+    }
+
+    public Collection<RouteMetrics> getRoutes() {
+        return routes.values();
+    }
+
+    /**
+     * Registers a value that can go up and down.
+     *
+     * @param name metric name, optionally followed by labels: jvm_gc_collections_total{gc="G1"}
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        samples.put(name, new Sample(name, "gauge", help, value));
+    }
+
+    /**
+     * Registers a value that only goes up.
+     *
+     * @param name metric name, optionally followed by labels
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        samples.put(name, new Sample(name, "counter", help, value));
+    }
+
+    public Collection<Sample> getSamples() {
+        return samples.values();
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format (version 0.0.4)
+     */
+    public String toPrometheus() {
+
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP http_server_requests_seconds Latency of the requests handled by Jersey.\n");
+        out.append("# TYPE http_server_requests_seconds summary\n");
+        List<RouteMetrics> sorted = new ArrayList<>(routes.values());
+        sorted.sort((a, b) -> (a.getRoute() + a.getMethod() + a.getStatus())
+                .compareTo(b.getRoute() + b.getMethod() + b.getStatus()));
+        for (RouteMetrics route : sorted) {
+            String labels = "method=\"" + route.getMethod() + "\",route=\"" + escape(route.getRoute())
+                    + "\",status=\"" + route.getStatus() + "\"";
+            Histogram histogram = route.snapshot();
+            for (double quantile : QUANTILES) {
+                out.append("http_server_requests_seconds{")
+                        .append(labels)
+                        .append(",quantile=\"")
+                        .append(quantile)
+                        .append("\"} ")
+                        .append(seconds(histogram.getValueAtPercentile(quantile * 100)))
+                        .append('\n');
+            }
+            out.append("http_server_requests_seconds_count{")
+                    .append(labels)
+                    .append("} ")
+                    .append(histogram.getTotalCount())
+                    .append('\n');
+            out.append("http_server_requests_seconds_sum{")
+                    .append(labels)
+                    .append("} ")
+                    .append(seconds(route.getTotalNanos()))
+                    .append('\n');
+        }
+
+        String family = null;
+        for (Sample sample : samples.values()) {
+            if (!sample.getFamily().equals(family)) {
+                family = sample.getFamily();
+                out.append("# HELP ").append(family).append(' ').append(sample.getHelp()).append('\n');
+                out.append("# TYPE ").append(family).append(' ').append(sample.getType()).append('\n');
+            }
+            out.append(sample.getName()).append(' ').append(format(sample.getValue())).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1e9);
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value)
+                : String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * A named value read when the metrics are rendered.
+     */
+    public static final class Sample {
+
+        private final String name;
+        private final String family;
+        private final String type;
+        private final String help;
+        private final DoubleSupplier value;
+
+        Sample(String name, String type, String help, DoubleSupplier value) {
+            this.name = name;
+            this.family = name.indexOf('{') > 0 ? name.substring(0, name.indexOf('{')) : name;
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getFamily() {
+            return family;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        public double getValue() {
+            return value.getAsDouble();
+        }
+    }
+}
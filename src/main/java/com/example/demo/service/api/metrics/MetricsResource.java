@@ -0,0 +1,27 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+
+/**
+ * Exposes the service metrics in the Prometheus text format at /metrics.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricsRegistry registry;
+
+    public MetricsResource(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public String metrics() {
+        return registry.toPrometheus();
+    }
+}
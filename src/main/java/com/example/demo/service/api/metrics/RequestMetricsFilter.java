@@ -0,0 +1,122 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import jakarta.ws.rs.container.ContainerRequestContext;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+
+/**
+ * Records the count and latency of every request, per matched route template, HTTP method and
+ * status class. Latency is measured from the moment Jersey starts processing the request until
+ * it has finished with it, writing the response included.
+ *
+ * It is a Jersey event listener rather than a response filter: Jersey skips the response filters
+ * when a resource throws an exception without a mapper, whereas the FINISHED event fires for
+ * every request. Such a request is recorded as a 500, the status the container answers with.
+ *
+ * Every request builds its route from the matched templates, and the registry key from the
+ * route, which allocates a few short strings per request.
+ *
+ * The warm-up requests the service sends itself carry the warm-up token in WARMUP_HEADER and
+ * are not recorded: they would be published as traffic to /, and weigh on the latency alarms
+ * of a deployment. The token is random, so a client cannot hide its requests with the header.
+ */
+public class RequestMetricsFilter implements ApplicationEventListener {
+
+    /**
+     * Route of requests that did not match any resource, so unknown paths do not create a new
+     * histogram each.
+     */
+    static final String UNMATCHED = "UNMATCHED";
+
+    public static final String WARMUP_HEADER = "X-Service-Warmup";
+
+    private final MetricsRegistry registry;
+    private final String warmupToken;
+    private final LongAdder inFlight = new LongAdder();
+
+    public RequestMetricsFilter(MetricsRegistry registry) {
+        this(registry, null);
+    }
+
+    /**
+     * @param warmupToken value of WARMUP_HEADER in the warm-up requests, null to record them all
+     */
+    public RequestMetricsFilter(MetricsRegistry registry, String warmupToken) {
+        this.registry = registry;
+        this.warmupToken = warmupToken;
+        registry.gauge(
+                "http_server_requests_in_flight",
+                "Requests received by Jersey that have not been answered yet.",
+                () -> inFlight.sum());
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {}
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        ContainerRequest request = event.getContainerRequest();
+        if (warmupToken != null && warmupToken.equals(request.getHeaderString(WARMUP_HEADER))) {
+            return null;
+        }
+        inFlight.increment();
+        return new RequestListener(System.nanoTime());
+    }
+
+    private final class RequestListener implements RequestEventListener {
+
+        private final long start;
+
+        RequestListener(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onEvent(RequestEvent event) {
+            if (event.getType() != RequestEvent.Type.FINISHED) {
+                return;
+            }
+            inFlight.decrement();
+            // no response when the exception of the resource was not mapped
+            ContainerResponse response = event.getContainerResponse();
+            int status = response == null ? 500 : response.getStatus();
+            registry.route(event.getContainerRequest().getMethod(), route(event.getContainerRequest()), status)
+                    .record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the matched path template, such as /orders/{id}, so all the requests of a
+     *     resource method share one histogram
+     */
+    public static String route(ContainerRequestContext request) {
+
+        if (!(request.getUriInfo() instanceof ExtendedUriInfo)) {
+            return UNMATCHED;
+        }
+        // matched templates are ordered from the resource method to the root resource
+        List<UriTemplate> templates = ((ExtendedUriInfo) request.getUriInfo()).getMatchedTemplates();
+        if (templates.isEmpty()) {
+            return UNMATCHED;
+        }
+        StringBuilder route = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+            if (route.length() > 0 && route.charAt(route.length() - 1) == '/' && template.startsWith("/")) {
+                route.append(template, 1, template.length());
+            } else {
+                route.append(template);
+            }
+        }
+        return route.length() == 0 ? "/" : route.toString();
+    }
+}
@@ -0,0 +1,63 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Request count and latency histogram of one route, HTTP method and status class (2xx, 3xx,
+ * 4xx, 5xx). Recording is safe from any number of request threads and does not allocate;
+ * looking up the RouteMetrics of a request does, see RequestMetricsFilter.
+ */
+public final class RouteMetrics {
+
+    static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final String method;
+    private final String route;
+    private final String status;
+
+    private final ConcurrentHistogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 2);
+    private final LongAdder totalNanos = new LongAdder();
+
+    RouteMetrics(String method, String route, String status) {
+        this.method = method;
+        this.route = route;
+        this.status = status;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+        latency.recordValue(value);
+        totalNanos.add(value);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getCount() {
+        return latency.getTotalCount();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return a copy of the latency histogram (nanoseconds) since the service started
+     */
+    public Histogram snapshot() {
+        return latency.copy();
+    }
+}
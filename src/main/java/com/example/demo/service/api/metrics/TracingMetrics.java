@@ -0,0 +1,22 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import com.example.demo.service.api.tracing.SegmentEmitter;
+
+/**
+ * Counters of the segment emitter, so the segments it drops show up in the metrics.
+ */
+public final class TracingMetrics {
+
+    private TracingMetrics() {}
+
+    public static void bind(SegmentEmitter emitter, MetricsRegistry registry) {
+
+        registry.counter("tracing_segments_sent_total", "Segments sent to the X-Ray daemon.", emitter::getSent);
+        registry.counter(
+                "tracing_segments_dropped_total",
+                "Segments dropped because the queue was full or the daemon could not be reached.",
+                emitter::getDropped);
+        registry.gauge("tracing_segments_queued", "Segments waiting to be sent.", emitter::getQueued);
+    }
+}
@@ -0,0 +1,137 @@
+/* (C)2023 */
+package com.example.demo.service.api.tracing;
+
+import java.util.Locale;
+
+/**
+ * Server span of one request, filled by the request thread and formatted as an X-Ray segment
+ * document by the emitter thread. Times are measured with System.nanoTime from the moment Jersey
+ * receives the request, and placed on the wall clock of that moment, so the two subsegments
+ * show how the time is split between Jersey (matching, filters and the resource method) and
+ * writing the response body.
+ *
+ * @see <a href="https://docs.aws.amazon.com/xray/latest/devguide/xray-api-segmentdocuments.html">Segment documents</a>
+ */
+final class Segment {
+
+    String name;
+    String traceId;
+    String id;
+    String parentId;
+    boolean sampled;
+    boolean tailSampled;
+    long startMicros;
+    long startNanos;
+    long handledNanos;
+    long endNanos;
+
+    String method;
+    String url;
+    String clientIp;
+    String userAgent;
+    String route;
+    int status;
+    long contentLength = -1;
+    String container;
+
+    long durationNanos() {
+        return endNanos - startNanos;
+    }
+
+    /**
+     * Appends the segment as a JSON document.
+     */
+    void format(StringBuilder json) {
+
+        json.append("{\"name\":");
+        string(json, name);
+        json.append(",\"id\":\"").append(id).append("\",\"trace_id\":\"").append(traceId).append('"');
+        if (parentId != null) {
+            json.append(",\"parent_id\":\"").append(parentId).append('"');
+        }
+        json.append(",\"start_time\":").append(seconds(0)).append(",\"end_time\":").append(seconds(durationNanos()));
+        if (container != null) {
+            json.append(",\"origin\":\"AWS::ECS::Container\",\"aws\":{\"ecs\":{\"container\":");
+            string(json, container);
+            json.append("}}");
+        }
+
+        json.append(",\"http\":{\"request\":{\"method\":");
+        string(json, method);
+        json.append(",\"url\":");
+        string(json, url);
+        if (clientIp != null) {
+            json.append(",\"client_ip\":");
+            string(json, clientIp);
+            json.append(",\"x_forwarded_for\":true");
+        }
+        if (userAgent != null) {
+            json.append(",\"user_agent\":");
+            string(json, userAgent);
+        }
+        json.append("},\"response\":{\"status\":").append(status);
+        if (contentLength >= 0) {
+            json.append(",\"content_length\":").append(contentLength);
+        }
+        json.append("}}");
+        if (status >= 500) {
+            json.append(",\"fault\":true");
+        } else if (status == 429) {
+            json.append(",\"error\":true,\"throttle\":true");
+        } else if (status >= 400) {
+            json.append(",\"error\":true");
+        }
+
+        json.append(",\"annotations\":{\"route\":");
+        string(json, route);
+        json.append(",\"tail_sampled\":").append(tailSampled).append('}');
+
+        json.append(",\"subsegments\":[");
+        subsegment(json, "jersey", 0, handledNanos - startNanos);
+        if (endNanos > handledNanos) {
+            json.append(',');
+            subsegment(json, "write", handledNanos - startNanos, endNanos - startNanos);
+        }
+        json.append("]}");
+    }
+
+    private void subsegment(StringBuilder json, String subsegmentName, long startOffsetNanos, long endOffsetNanos) {
+        json.append("{\"id\":\"")
+                .append(TraceHeader.newId())
+                .append("\",\"name\":\"")
+                .append(subsegmentName)
+                .append("\",\"start_time\":")
+                .append(seconds(startOffsetNanos))
+                .append(",\"end_time\":")
+                .append(seconds(endOffsetNanos))
+                .append('}');
+    }
+
+    /**
+     * @return the epoch second, with microseconds, at the given offset from the start
+     */
+    private String seconds(long offsetNanos) {
+        long micros = startMicros + offsetNanos / 1000;
+        return String.format(Locale.ROOT, "%d.%06d", micros / 1_000_000, micros % 1_000_000);
+    }
+
+    private static void string(StringBuilder json, String value) {
+
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
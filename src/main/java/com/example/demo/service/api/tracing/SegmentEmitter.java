@@ -0,0 +1,140 @@
+/* (C)2023 */
+package com.example.demo.service.api.tracing;
+
+import com.example.demo.service.api.logging.Log;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends the finished segments to the X-Ray daemon sidecar, one UDP datagram each, from a single
+ * background thread. Request threads only offer the segment to a bounded queue: when the sender
+ * cannot keep up, the segments that do not fit are counted and dropped, and the requests never
+ * wait for tracing.
+ */
+public final class SegmentEmitter {
+
+    /** Segments waiting to be sent, at most. */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    static final String DAEMON_HEADER = "{\"format\":\"json\",\"version\":1}\n";
+
+    /** The daemon rejects larger documents. */
+    static final int MAX_DATAGRAM_BYTES = 64 * 1024;
+
+    private final InetSocketAddress daemon;
+    private final BlockingQueue<Segment> queue;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final StringBuilder document = new StringBuilder(2048);
+
+    private volatile boolean running;
+    private DatagramSocket socket;
+    private Thread sender;
+
+    public SegmentEmitter(InetSocketAddress daemon, int capacity) {
+        this.daemon = daemon;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * @param address host:port of the daemon, such as 127.0.0.1:2000
+     */
+    public static InetSocketAddress address(String address) {
+
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid X-Ray daemon address [" + address + "], expected host:port");
+        }
+        return new InetSocketAddress(
+                address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    public synchronized void start() throws IOException {
+
+        if (sender == null) {
+            socket = new DatagramSocket();
+            running = true;
+            sender = new Thread(this::send, "xray-emitter");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    /**
+     * Sends the segments finished before this call, then stops the sender.
+     */
+    public synchronized void stop() {
+
+        if (sender != null) {
+            running = false;
+            try {
+                sender.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            socket.close();
+            sender = null;
+        }
+    }
+
+    void emit(Segment segment) {
+        if (!queue.offer(segment)) {
+            dropped.increment();
+        }
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private void send() {
+
+        try {
+            while (running) {
+                Segment segment = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (segment != null) {
+                    send(segment);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment segment = queue.poll(); segment != null; segment = queue.poll()) {
+            send(segment);
+        }
+    }
+
+    private void send(Segment segment) {
+
+        document.setLength(0);
+        document.append(DAEMON_HEADER);
+        segment.format(document);
+        byte[] bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_DATAGRAM_BYTES) {
+            dropped.increment();
+            return;
+        }
+        try {
+            socket.send(new DatagramPacket(bytes, bytes.length, daemon));
+            sent.increment();
+        } catch (IOException e) {
+            dropped.increment();
+            Log.warn("SegmentEmitter", "Cannot send a segment to the X-Ray daemon at " + daemon + ": " + e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* (C)2023 */
+package com.example.demo.service.api.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Trace context of the X-Amzn-Trace-Id header, such as
+ * Root=1-5759e988-bd862e3fe1be46a994272793;Parent=53995c3f42cd8ad8;Sampled=1. The load balancer
+ * adds a Root to every request that has none; callers instrumented with X-Ray also send the id of
+ * their segment as Parent and their sampling decision.
+ *
+ * @see <a href="https://docs.aws.amazon.com/xray/latest/devguide/xray-concepts.html">Tracing header</a>
+ */
+final class TraceHeader {
+
+    private static final Pattern TRACE_ID = Pattern.compile("1-[0-9a-f]{8}-[0-9a-f]{24}");
+    private static final Pattern SEGMENT_ID = Pattern.compile("[0-9a-f]{16}");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    final String root;
+    final String parent;
+    /** The sampling decision of the caller, null when the caller left it to this service. */
+    final Boolean sampled;
+
+    TraceHeader(String root, String parent, Boolean sampled) {
+        this.root = root;
+        this.parent = parent;
+        this.sampled = sampled;
+    }
+
+    /**
+     * @return the trace context of the header, null when it has no valid Root
+     */
+    static TraceHeader parse(String header) {
+
+        if (header == null) {
+            return null;
+        }
+        String root = null;
+        String parent = null;
+        Boolean sampled = null;
+        for (String field : header.split(";")) {
+            int separator = field.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String key = field.substring(0, separator).trim();
+            String value = field.substring(separator + 1).trim();
+            if ("Root".equals(key) && TRACE_ID.matcher(value).matches()) {
+                root = value;
+            } else if ("Parent".equals(key) && SEGMENT_ID.matcher(value).matches()) {
+                parent = value;
+            } else if ("Sampled".equals(key) && ("0".equals(value) || "1".equals(value))) {
+                sampled = "1".equals(value);
+            }
+        }
+        return root == null ? null : new TraceHeader(root, parent, sampled);
+    }
+
+    /**
+     * @return a trace id: version 1, the epoch second, and 96 random bits
+     */
+    static String newTraceId() {
+
+        StringBuilder id = new StringBuilder(35).append("1-");
+        hex(id, System.currentTimeMillis() / 1000, 8);
+        id.append('-');
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        hex(id, random.nextInt() & 0xffffffffL, 8);
+        hex(id, random.nextLong(), 16);
+        return id.toString();
+    }
+
+    /**
+     * @return a segment or subsegment id, 64 random bits
+     */
+    static String newId() {
+
+        StringBuilder id = new StringBuilder(16);
+        hex(id, ThreadLocalRandom.current().nextLong(), 16);
+        return id.toString();
+    }
+
+    private static void hex(StringBuilder id, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            id.append(HEX[(int) (value >>> shift) & 0xf]);
+        }
+    }
+}
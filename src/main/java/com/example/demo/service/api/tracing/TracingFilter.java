@@ -0,0 +1,127 @@
+/* (C)2023 */
+package com.example.demo.service.api.tracing;
+
+import com.example.demo.service.api.metrics.RequestMetricsFilter;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+import jakarta.ws.rs.container.PreMatching;
+import jakarta.ws.rs.ext.WriterInterceptor;
+import jakarta.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a segment for every request handled by Jersey, in the trace of its X-Amzn-Trace-Id
+ * header, and hands it to the SegmentEmitter once the response body is written.
+ *
+ * Sampling is decided twice. At the head, the decision of the caller is kept when the header
+ * has one, otherwise samplePercent of the requests are sampled. At the tail, the segments the
+ * head left out are still sent when the request failed with a 5xx or took longer than
+ * tailLatencyMillis, so the slow requests of a canary are always traced. The service calls no
+ * other service, so the head decision is only propagated back to the caller, with the trace id,
+ * in the response header.
+ */
+@PreMatching
+public class TracingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    public static final String HEADER = "X-Amzn-Trace-Id";
+
+    static final String SEGMENT_PROPERTY = TracingFilter.class.getName() + ".segment";
+
+    private final String name;
+    private final int samplePercent;
+    private final long tailLatencyNanos;
+    private final SegmentEmitter emitter;
+    private final String container = System.getenv("HOSTNAME");
+
+    /**
+     * @param name name of the service in the X-Ray service map
+     * @param samplePercent requests sampled at the head, from 0 to 100
+     * @param tailLatencyMillis requests left out at the head that are still sent when they take
+     *     longer, 0 to only send the requests sampled at the head and the 5xx
+     */
+    public TracingFilter(String name, int samplePercent, long tailLatencyMillis, SegmentEmitter emitter) {
+        this.name = name;
+        this.samplePercent = samplePercent;
+        this.tailLatencyNanos = tailLatencyMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(tailLatencyMillis) : 0;
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+
+        Segment segment = new Segment();
+        segment.startNanos = System.nanoTime();
+        segment.startMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        TraceHeader upstream = TraceHeader.parse(request.getHeaderString(HEADER));
+        segment.traceId = upstream == null ? TraceHeader.newTraceId() : upstream.root;
+        segment.parentId = upstream == null ? null : upstream.parent;
+        segment.sampled = upstream != null && upstream.sampled != null
+                ? upstream.sampled
+                : ThreadLocalRandom.current().nextInt(100) < samplePercent;
+        segment.id = TraceHeader.newId();
+        segment.name = name;
+        segment.container = container;
+        segment.method = request.getMethod();
+        segment.url = request.getUriInfo().getRequestUri().toString();
+        segment.userAgent = request.getHeaderString("User-Agent");
+        String forwardedFor = request.getHeaderString("X-Forwarded-For");
+        if (forwardedFor != null) {
+            // the load balancer appends the address of the client it received the request from
+            int comma = forwardedFor.indexOf(',');
+            segment.clientIp = (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+        }
+        request.setProperty(SEGMENT_PROPERTY, segment);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) {
+
+        Object property = request.getProperty(SEGMENT_PROPERTY);
+        if (!(property instanceof Segment)) {
+            // the request was aborted before this filter saw it
+            return;
+        }
+        Segment segment = (Segment) property;
+        segment.handledNanos = System.nanoTime();
+        segment.status = response.getStatus();
+        segment.contentLength = response.getLength();
+        segment.route = RequestMetricsFilter.route(request);
+        response.getHeaders()
+                .putSingle(HEADER, "Root=" + segment.traceId + ";Sampled=" + (segment.sampled ? "1" : "0"));
+        if (!response.hasEntity()) {
+            request.removeProperty(SEGMENT_PROPERTY);
+            finish(segment, segment.handledNanos);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+
+        try {
+            context.proceed();
+        } finally {
+            Object property = context.getProperty(SEGMENT_PROPERTY);
+            if (property instanceof Segment) {
+                context.removeProperty(SEGMENT_PROPERTY);
+                finish((Segment) property, System.nanoTime());
+            }
+        }
+    }
+
+    private void finish(Segment segment, long endNanos) {
+
+        segment.endNanos = endNanos;
+        if (!segment.sampled) {
+            segment.tailSampled = segment.status >= 500
+                    || (tailLatencyNanos > 0 && segment.durationNanos() >= tailLatencyNanos);
+            if (!segment.tailSampled) {
+                return;
+            }
+        }
+        emitter.emit(segment);
+    }
+}
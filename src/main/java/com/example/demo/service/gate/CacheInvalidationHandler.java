@@ -0,0 +1,90 @@
+/* (C)2023 */
+package com.example.demo.service.gate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.cloudfront.CloudFrontClient;
+import software.amazon.awssdk.services.cloudfront.model.CreateInvalidationRequest;
+import software.amazon.awssdk.services.cloudfront.model.InvalidationBatch;
+import software.amazon.awssdk.services.cloudfront.model.Paths;
+
+/**
+ * AfterAllowTraffic lifecycle hook of the CodeDeploy ECS deployments of a service behind a
+ * CloudFront distribution. CodeDeploy invokes it once production traffic is served by the
+ * replacement tasks: it invalidates the cached responses of the previous version.
+ *
+ * A failed invalidation does not fail the deployment, which would roll back a healthy version:
+ * the cached responses expire with the TTL of the distribution anyway. The hook reports
+ * Succeeded whatever happens, a misconfigured function included.
+ *
+ * It is configured by environment variables, set by the Service stack: EDGE_DISTRIBUTION_ID and
+ * EDGE_INVALIDATION_PATHS, a comma separated list of paths.
+ */
+public class CacheInvalidationHandler {
+
+    private final LifecycleHookClient lifecycleHook;
+    private final CloudFrontClient cloudFront;
+    private final Function<String, String> environment;
+
+    public CacheInvalidationHandler() {
+        this(
+                LifecycleHookClient.fromEnvironment(),
+                // CloudFront is a global service
+                CloudFrontClient.builder()
+                        .region(Region.AWS_GLOBAL)
+                        .httpClient(UrlConnectionHttpClient.create())
+                        .build(),
+                System::getenv);
+    }
+
+    CacheInvalidationHandler(
+            LifecycleHookClient lifecycleHook, CloudFrontClient cloudFront, Function<String, String> environment) {
+        this.lifecycleHook = lifecycleHook;
+        this.cloudFront = cloudFront;
+        this.environment = environment;
+    }
+
+    public Map<String, Object> handleRequest(Map<String, Object> event) {
+
+        String deploymentId = PerformanceGateHandler.field(event, "DeploymentId");
+        String hookExecutionId = PerformanceGateHandler.field(event, "LifecycleEventHookExecutionId");
+        String distributionId = environment.apply("EDGE_DISTRIBUTION_ID");
+        List<String> paths = Collections.emptyList();
+
+        String error = null;
+        try {
+            String invalidationPaths = environment.apply("EDGE_INVALIDATION_PATHS");
+            if (distributionId == null || invalidationPaths == null) {
+                throw new IllegalStateException("EDGE_DISTRIBUTION_ID or EDGE_INVALIDATION_PATHS is not set");
+            }
+            paths = Arrays.asList(invalidationPaths.split(","));
+            // one invalidation per deployment, a retried hook does not create another one
+            cloudFront.createInvalidation(CreateInvalidationRequest.builder()
+                    .distributionId(distributionId)
+                    .invalidationBatch(InvalidationBatch.builder()
+                            .paths(Paths.builder()
+                                    .quantity(paths.size())
+                                    .items(paths)
+                                    .build())
+                            .callerReference(deploymentId)
+                            .build())
+                    .build());
+        } catch (Exception e) {
+            error = e.toString();
+        }
+        System.out.println("CacheInvalidationHandler::" + deploymentId + " " + distributionId + " " + paths
+                + (error == null ? "" : " failed: " + error));
+        lifecycleHook.putStatus(deploymentId, hookExecutionId, PerformanceGateHandler.SUCCEEDED);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("paths", paths);
+        result.put("error", error);
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+/* (C)2023 */
+package com.example.demo.service.gate;
+
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
+import software.amazon.awssdk.services.codedeploy.CodeDeployClient;
+import software.amazon.awssdk.services.codedeploy.model.PutLifecycleEventHookExecutionStatusRequest;
+
+/**
+ * Reports the status of a CodeDeploy lifecycle hook (PutLifecycleEventHookExecutionStatus), with
+ * the CodeDeploy client of the AWS SDK.
+ */
+public class LifecycleHookClient {
+
+    private final CodeDeployClient codeDeploy;
+
+    public LifecycleHookClient(CodeDeployClient codeDeploy) {
+        this.codeDeploy = codeDeploy;
+    }
+
+    /**
+     * @return a client for the region and the credentials of the Lambda environment
+     */
+    public static LifecycleHookClient fromEnvironment() {
+        return new LifecycleHookClient(CodeDeployClient.builder()
+                .httpClient(UrlConnectionHttpClient.create())
+                .build());
+    }
+
+    /**
+     * @param status Succeeded or Failed
+     */
+    public void putStatus(String deploymentId, String lifecycleEventHookExecutionId, String status) {
+        codeDeploy.putLifecycleEventHookExecutionStatus(PutLifecycleEventHookExecutionStatusRequest.builder()
+                .deploymentId(deploymentId)
+                .lifecycleEventHookExecutionId(lifecycleEventHookExecutionId)
+                .status(status)
+                .build());
+    }
+}
@@ -0,0 +1,185 @@
+/* (C)2023 */
+package com.example.demo.service.gate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Sends the same bounded burst of GET requests to the production and to the test listener at
+ * the same time, and compares the p99 latency and the error rate of the replacement tasks with
+ * the ones of the tasks that serve production.
+ *
+ * The test listener regresses when its p99 is above maxLatencyRatio times the production p99
+ * plus latencySlackMillis (the slack keeps a few milliseconds of noise from failing a fast
+ * service), or when its error rate exceeds the production one by more than
+ * maxErrorRateIncreasePercent. Errors are 5xx responses, connection failures and timeouts.
+ */
+public final class PerformanceGate {
+
+    private final int requests;
+    private final int concurrency;
+    private final int requestTimeoutMillis;
+    private final double maxLatencyRatio;
+    private final long latencySlackMillis;
+    private final double maxErrorRateIncreasePercent;
+
+    public PerformanceGate(
+            int requests,
+            int concurrency,
+            int requestTimeoutMillis,
+            double maxLatencyRatio,
+            long latencySlackMillis,
+            double maxErrorRateIncreasePercent) {
+        if (requests < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Invalid burst: " + requests + " requests, " + concurrency
+                    + " concurrent");
+        }
+        this.requests = requests;
+        this.concurrency = concurrency;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.maxLatencyRatio = maxLatencyRatio;
+        this.latencySlackMillis = latencySlackMillis;
+        this.maxErrorRateIncreasePercent = maxErrorRateIncreasePercent;
+    }
+
+    /**
+     * @return the regressions of the test listener, empty when it performs like production
+     */
+    public List<String> evaluate(URI production, URI test) {
+
+        ExecutorService executor = Executors.newFixedThreadPool(2 * concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "performance-gate");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<Burst> baseline = CompletableFuture.supplyAsync(() -> run(production, executor));
+            CompletableFuture<Burst> candidate = CompletableFuture.supplyAsync(() -> run(test, executor));
+            Burst productionBurst = baseline.join();
+            Burst testBurst = candidate.join();
+            System.out.println("PerformanceGate::production " + productionBurst + ", test " + testBurst);
+            return compare(productionBurst, testBurst);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    List<String> compare(Burst production, Burst test) {
+
+        List<String> regressions = new ArrayList<>();
+        double maxP99Millis = production.getP99Millis() * maxLatencyRatio + latencySlackMillis;
+        if (test.getP99Millis() > maxP99Millis) {
+            regressions.add(String.format(
+                    Locale.ROOT,
+                    "p99 of the test listener is %.1f ms, production %.1f ms, limit %.1f ms",
+                    test.getP99Millis(),
+                    production.getP99Millis(),
+                    maxP99Millis));
+        }
+        double maxErrorRate = production.getErrorRatePercent() + maxErrorRateIncreasePercent;
+        if (test.getErrorRatePercent() > maxErrorRate) {
+            regressions.add(String.format(
+                    Locale.ROOT,
+                    "error rate of the test listener is %.2f%%, production %.2f%%, limit %.2f%%",
+                    test.getErrorRatePercent(),
+                    production.getErrorRatePercent(),
+                    maxErrorRate));
+        }
+        return regressions;
+    }
+
+    /**
+     * Sends the requests with at most concurrency in flight. Each worker runs on the executor,
+     * the caller only waits for them.
+     */
+    Burst run(URI uri, ExecutorService executor) {
+
+        Recorder latency = new Recorder(3);
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger errors = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            workers.add(CompletableFuture.runAsync(
+                    () -> {
+                        while (remaining.getAndDecrement() > 0) {
+                            long start = System.nanoTime();
+                            if (!send(uri)) {
+                                errors.incrementAndGet();
+                            }
+                            latency.recordValue(System.nanoTime() - start);
+                        }
+                    },
+                    executor));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+        return new Burst(requests, errors.get(), latency.getIntervalHistogram().getValueAtPercentile(99));
+    }
+
+    /**
+     * The response is read to the end and the connection is not disconnected, so it is kept alive
+     * and reused like the connections of the load balancer clients.
+     */
+    private boolean send(URI uri) {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+            connection.setConnectTimeout(requestTimeoutMillis);
+            connection.setReadTimeout(requestTimeoutMillis);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            int status = connection.getResponseCode();
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body != null) {
+                drain(body);
+            }
+            return status < 500;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        try (InputStream in = body) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // the time to read the whole response is part of the latency
+            }
+        }
+    }
+
+    static final class Burst {
+
+        private final int requests;
+        private final int errors;
+        private final long p99Nanos;
+
+        Burst(int requests, int errors, long p99Nanos) {
+            this.requests = requests;
+            this.errors = errors;
+            this.p99Nanos = p99Nanos;
+        }
+
+        double getP99Millis() {
+            return p99Nanos / 1e6;
+        }
+
+        double getErrorRatePercent() {
+            return 100.0 * errors / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.ROOT, "%d requests, %d errors, p99 %.1f ms", requests, errors, getP99Millis());
+        }
+    }
+}
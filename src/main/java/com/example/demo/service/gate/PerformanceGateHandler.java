@@ -0,0 +1,94 @@
+/* (C)2023 */
+package com.example.demo.service.gate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * AfterAllowTestTraffic lifecycle hook of the CodeDeploy ECS deployments. CodeDeploy invokes it
+ * once the replacement tasks are registered to the test listener, before any production traffic
+ * shifts to them: it runs the PerformanceGate against both listeners and reports Failed, which
+ * stops and rolls back the deployment, when the test listener regresses.
+ *
+ * The handler is a plain method, the Lambda Java runtime deserializes the event into a map.
+ * It is configured by environment variables, set by the Service stack:
+ * GATE_PRODUCTION_URL, GATE_TEST_URL, GATE_REQUESTS, GATE_CONCURRENCY,
+ * GATE_REQUEST_TIMEOUT_MILLIS, GATE_MAX_LATENCY_RATIO, GATE_LATENCY_SLACK_MILLIS and
+ * GATE_MAX_ERROR_RATE_INCREASE_PERCENT.
+ */
+public class PerformanceGateHandler {
+
+    static final String SUCCEEDED = "Succeeded";
+    static final String FAILED = "Failed";
+
+    private final LifecycleHookClient lifecycleHook;
+    private final Function<String, String> environment;
+
+    public PerformanceGateHandler() {
+        this(LifecycleHookClient.fromEnvironment(), System::getenv);
+    }
+
+    PerformanceGateHandler(LifecycleHookClient lifecycleHook, Function<String, String> environment) {
+        this.lifecycleHook = lifecycleHook;
+        this.environment = environment;
+    }
+
+    public Map<String, Object> handleRequest(Map<String, Object> event) {
+
+        String deploymentId = field(event, "DeploymentId");
+        String hookExecutionId = field(event, "LifecycleEventHookExecutionId");
+
+        List<String> regressions;
+        try {
+            PerformanceGate gate = new PerformanceGate(
+                    Integer.parseInt(env("GATE_REQUESTS", "500")),
+                    Integer.parseInt(env("GATE_CONCURRENCY", "10")),
+                    Integer.parseInt(env("GATE_REQUEST_TIMEOUT_MILLIS", "2000")),
+                    Double.parseDouble(env("GATE_MAX_LATENCY_RATIO", "1.5")),
+                    Long.parseLong(env("GATE_LATENCY_SLACK_MILLIS", "25")),
+                    Double.parseDouble(env("GATE_MAX_ERROR_RATE_INCREASE_PERCENT", "1")));
+            regressions = gate.evaluate(
+                    URI.create(env("GATE_PRODUCTION_URL", null)), URI.create(env("GATE_TEST_URL", null)));
+        } catch (Exception e) {
+            // CodeDeploy waits for the status until the hook times out, always report one
+            regressions = new ArrayList<>();
+            regressions.add("Cannot run the performance gate: " + e);
+        }
+
+        String status = regressions.isEmpty() ? SUCCEEDED : FAILED;
+        System.out.println("PerformanceGateHandler::" + deploymentId + " " + status + " " + regressions);
+        lifecycleHook.putStatus(deploymentId, hookExecutionId, status);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("status", status);
+        result.put("regressions", regressions);
+        return result;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the event has no such field: without the ids of the
+     *     hook execution, no status can be reported
+     */
+    static String field(Map<String, Object> event, String name) {
+        Object value = event == null ? null : event.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("The event of the lifecycle hook has no " + name + ": " + event);
+        }
+        return value.toString();
+    }
+
+    private String env(String name, String defaultValue) {
+        String value = environment.apply(name);
+        if (value == null || value.isEmpty()) {
+            if (defaultValue == null) {
+                throw new IllegalStateException(name + " is not set");
+            }
+            return defaultValue;
+        }
+        return value;
+    }
+}
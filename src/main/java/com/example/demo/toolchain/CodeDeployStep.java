@@ -1,7 +1,7 @@
 /* (C)2023 */
 package com.example.demo.toolchain;
 
-import java.util.Arrays;
+import com.example.demo.service.TaskDefinitionTemplate;
 
 import software.amazon.awscdk.pipelines.CodePipelineActionFactoryResult;
 import software.amazon.awscdk.pipelines.FileSet;
@@ -11,36 +11,50 @@ import software.amazon.awscdk.pipelines.Step;
 import software.amazon.awscdk.services.codedeploy.IEcsDeploymentGroup;
 import software.amazon.awscdk.services.codepipeline.Artifact;
 import software.amazon.awscdk.services.codepipeline.IStage;
-import software.amazon.awscdk.services.codepipeline.actions.CodeDeployEcsContainerImageInput;
 import software.amazon.awscdk.services.codepipeline.actions.CodeDeployEcsDeployAction;
 
+/**
+ * Deploys the AppSpec and the task definition that the Service stack renders at synth time
+ * (see TaskDefinitionTemplate), from the output of the synth step that holds the CodeDeploy
+ * files of every stage, not the whole cloud assembly: the action limits the size of its input
+ * artifact. The task definition holds the application image, so the action takes no image input.
+ */
 class CodeDeployStep extends Step implements ICodePipelineActionFactory {
 
     FileSet fileSet = null;
+    String assemblyDirectory = null;
     IEcsDeploymentGroup deploymentGroup = null;
     String envType = null;
 
-    public CodeDeployStep(String id, FileSet fileSet, IEcsDeploymentGroup deploymentGroup, String stageName) {
+    /**
+     * @param fileSet the CodeDeploy files of the stages, in their cloud assembly directories
+     * @param assemblyDirectory directory of the stage in the cloud assembly
+     */
+    public CodeDeployStep(
+            String id,
+            FileSet fileSet,
+            String assemblyDirectory,
+            IEcsDeploymentGroup deploymentGroup,
+            String stageName) {
         super(id);
         this.fileSet = fileSet;
+        this.assemblyDirectory = assemblyDirectory;
         this.deploymentGroup = deploymentGroup;
         this.envType = stageName;
+        this.addDependencyFileSet(fileSet);
     }
 
     @Override
     public CodePipelineActionFactoryResult produceAction(IStage stage, ProduceActionOptions options) {
 
         Artifact artifact = options.getArtifacts().toCodePipeline(fileSet);
+        String directory = assemblyDirectory + "/" + TaskDefinitionTemplate.DIRECTORY + "/";
 
         stage.addAction(CodeDeployEcsDeployAction.Builder.create()
                 .actionName("Deploy")
-                .appSpecTemplateInput(artifact)
-                .taskDefinitionTemplateInput(artifact)
+                .appSpecTemplateFile(artifact.atPath(directory + TaskDefinitionTemplate.APPSPEC_FILE))
+                .taskDefinitionTemplateFile(artifact.atPath(directory + TaskDefinitionTemplate.TASK_DEFINITION_FILE))
                 .runOrder(options.getRunOrder())
-                .containerImageInputs(Arrays.asList(CodeDeployEcsContainerImageInput.builder()
-                        .input(artifact)
-                        .taskDefinitionPlaceholder("IMAGE1_NAME")
-                        .build()))
                 .deploymentGroup(deploymentGroup)
                 .variablesNamespace("deployment-" + envType)
                 .build());
@@ -0,0 +1,176 @@
+/* (C)2023 */
+package com.example.demo.toolchain;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reports the time a pipeline execution spent in every phase: the wall clock time of each
+ * stage (Source, Build, UpdatePipeline, Assets and the deployment stages), the actions that ran
+ * in it, and the time lost between stages. It reads the output of
+ *
+ * <pre>
+ * aws codepipeline list-action-executions --pipeline-name &lt;name&gt; \
+ *     --filter pipelineExecutionId=&lt;id&gt; --output json
+ * </pre>
+ *
+ * from a file, or from the standard input when no file is given.
+ */
+public final class PipelineTimingReport {
+
+    private final List<ActionTiming> actions;
+
+    PipelineTimingReport(List<ActionTiming> actions) {
+        this.actions = new ArrayList<>(actions);
+        this.actions.sort(Comparator.comparing(ActionTiming::getStart));
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        try (InputStream in = args.length > 0 ? Files.newInputStream(Paths.get(args[0])) : System.in) {
+            parse(new ObjectMapper().readTree(in)).print(System.out);
+        }
+    }
+
+    static PipelineTimingReport parse(JsonNode listActionExecutions) {
+
+        List<ActionTiming> actions = new ArrayList<>();
+        for (JsonNode execution : listActionExecutions.path("actionExecutionDetails")) {
+            actions.add(new ActionTiming(
+                    execution.path("stageName").asText(),
+                    execution.path("actionName").asText(),
+                    execution.path("status").asText(),
+                    timestamp(execution.path("startTime")),
+                    timestamp(execution.path("lastUpdateTime"))));
+        }
+        return new PipelineTimingReport(actions);
+    }
+
+    /**
+     * @return the stages in the order they started, with their first start and last end
+     */
+    Map<String, Instant[]> stages() {
+
+        Map<String, Instant[]> stages = new LinkedHashMap<>();
+        for (ActionTiming action : actions) {
+            Instant[] bounds = stages.computeIfAbsent(
+                    action.getStageName(), name -> new Instant[] {action.getStart(), action.getEnd()});
+            if (action.getEnd().isAfter(bounds[1])) {
+                bounds[1] = action.getEnd();
+            }
+        }
+        return stages;
+    }
+
+    void print(PrintStream out) {
+
+        if (actions.isEmpty()) {
+            out.println("No action executions");
+            return;
+        }
+        Instant start = actions.get(0).getStart();
+        Instant end = start;
+        Duration waiting = Duration.ZERO;
+        for (Map.Entry<String, Instant[]> stage : stages().entrySet()) {
+            Instant stageStart = stage.getValue()[0];
+            Instant stageEnd = stage.getValue()[1];
+            if (stageStart.isAfter(end)) {
+                waiting = waiting.plus(Duration.between(end, stageStart));
+            }
+            out.println(String.format(
+                    Locale.ROOT,
+                    "%-40s %10s  (+%s)",
+                    stage.getKey(),
+                    format(Duration.between(stageStart, stageEnd)),
+                    format(Duration.between(start, stageStart))));
+            for (ActionTiming action : actions) {
+                if (action.getStageName().equals(stage.getKey())) {
+                    out.println(String.format(
+                            Locale.ROOT,
+                            "  %-38s %10s  (+%s) %s",
+                            action.getActionName(),
+                            format(action.getDuration()),
+                            format(Duration.between(start, action.getStart())),
+                            action.getStatus()));
+                }
+            }
+            if (stageEnd.isAfter(end)) {
+                end = stageEnd;
+            }
+        }
+        out.println(String.format(Locale.ROOT, "%-40s %10s", "Between stages", format(waiting)));
+        out.println(String.format(Locale.ROOT, "%-40s %10s", "Total", format(Duration.between(start, end))));
+    }
+
+    /**
+     * The AWS CLI prints ISO-8601 timestamps, the API returns epoch seconds.
+     */
+    static Instant timestamp(JsonNode value) {
+
+        if (value.isNumber()) {
+            return Instant.ofEpochMilli(Math.round(value.asDouble() * 1000));
+        }
+        return OffsetDateTime.parse(value.asText()).toInstant();
+    }
+
+    static String format(Duration duration) {
+        long seconds = duration.getSeconds();
+        return String.format(Locale.ROOT, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    static final class ActionTiming {
+
+        private final String stageName;
+        private final String actionName;
+        private final String status;
+        private final Instant start;
+        private final Instant end;
+
+        ActionTiming(String stageName, String actionName, String status, Instant start, Instant end) {
+            this.stageName = stageName;
+            this.actionName = actionName;
+            this.status = status;
+            this.start = start;
+            this.end = end;
+        }
+
+        String getStageName() {
+            return stageName;
+        }
+
+        String getActionName() {
+            return actionName;
+        }
+
+        String getStatus() {
+            return status;
+        }
+
+        Instant getStart() {
+            return start;
+        }
+
+        Instant getEnd() {
+            return end;
+        }
+
+        Duration getDuration() {
+            return Duration.between(start, end);
+        }
+    }
+}
@@ -3,26 +3,42 @@ package com.example.demo.toolchain;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.example.demo.Constants;
+import com.example.demo.service.CapacityProfile;
+import com.example.demo.service.ComputeProfile;
 import com.example.demo.service.Service;
+import com.example.demo.service.ServiceImage;
+import com.example.demo.service.ServiceOptions;
+import com.example.demo.service.TaskDefinitionTemplate;
 
 import software.amazon.awscdk.Arn;
 import software.amazon.awscdk.ArnComponents;
 import software.amazon.awscdk.ArnFormat;
+import software.amazon.awscdk.Duration;
 import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.RemovalPolicy;
 import software.amazon.awscdk.Stack;
 import software.amazon.awscdk.StackProps;
 import software.amazon.awscdk.Stage;
+import software.amazon.awscdk.pipelines.CodeBuildOptions;
+import software.amazon.awscdk.pipelines.CodeBuildStep;
 import software.amazon.awscdk.pipelines.CodeCommitSourceOptions;
 import software.amazon.awscdk.pipelines.CodePipeline;
 import software.amazon.awscdk.pipelines.CodePipelineSource;
-import software.amazon.awscdk.pipelines.ShellStep;
+import software.amazon.awscdk.pipelines.FileSet;
 import software.amazon.awscdk.pipelines.StageDeployment;
 import software.amazon.awscdk.pipelines.Step;
+import software.amazon.awscdk.pipelines.Wave;
+import software.amazon.awscdk.services.codebuild.BucketCacheOptions;
+import software.amazon.awscdk.services.codebuild.BuildEnvironment;
+import software.amazon.awscdk.services.codebuild.BuildSpec;
+import software.amazon.awscdk.services.codebuild.Cache;
 import software.amazon.awscdk.services.codecommit.Repository;
 import software.amazon.awscdk.services.codedeploy.EcsApplication;
 import software.amazon.awscdk.services.codedeploy.EcsDeploymentGroup;
@@ -31,38 +47,243 @@ import software.amazon.awscdk.services.codedeploy.IEcsApplication;
 import software.amazon.awscdk.services.codedeploy.IEcsDeploymentConfig;
 import software.amazon.awscdk.services.codedeploy.IEcsDeploymentGroup;
 import software.amazon.awscdk.services.codepipeline.actions.CodeCommitTrigger;
+import software.amazon.awscdk.services.ecr.IRepository;
+import software.amazon.awscdk.services.ecr.TagMutability;
+import software.amazon.awscdk.services.ecr.TagStatus;
+import software.amazon.awscdk.services.iam.AccountPrincipal;
 import software.amazon.awscdk.services.iam.Effect;
 import software.amazon.awscdk.services.iam.PolicyStatement;
+import software.amazon.awscdk.services.s3.BlockPublicAccess;
+import software.amazon.awscdk.services.s3.Bucket;
+import software.amazon.awscdk.services.s3.BucketEncryption;
+import software.amazon.awscdk.services.s3.LifecycleRule;
 import software.constructs.Construct;
 
 public class Toolchain extends Stack {
 
+    static final String IMAGE_DIGEST_CONTEXT = "serviceImageDigest";
+    static final String BOOTSTRAP_IMAGE_TAG_CONTEXT = "serviceBootstrapImageTag";
+    static final String REPOSITORY_NAME = Constants.APP_NAME.toLowerCase() + "-service";
+    static final String PUBLISH_IMAGES_SCRIPT = "src/main/java/com/example/demo/toolchain/images/publish_images.sh";
+    static final String CODEDEPLOY_FILES_DIRECTORY = "target/codedeploy";
+    static final String BINFMT_REPOSITORY_NAME = "binfmt";
+
     private CodePipeline pipeline = null;
+    private software.amazon.awscdk.services.ecr.Repository serviceRepository = null;
+    private ServiceImage serviceImage = null;
+    private FileSet codeDeployFiles = null;
 
-    private Toolchain(Construct scope, String id, String gitRepoURL, String gitBranch, StackProps props) {
+    private Toolchain(Construct scope, String id, Builder builder, StackProps props) {
 
         super(scope, id, props);
-        pipeline = createPipeline(gitRepoURL, gitBranch);
+        serviceRepository = createServiceRepository();
+        serviceImage = resolveServiceImage();
+        pipeline = createPipeline(builder);
+    }
+
+    /**
+     * Repository of the images the synth step publishes once per pipeline execution. Tags are
+     * immutable, so a tag always designates the bits that were tested in the previous stages.
+     */
+    private software.amazon.awscdk.services.ecr.Repository createServiceRepository() {
+
+        return software.amazon.awscdk.services.ecr.Repository.Builder.create(this, "ServiceRepository")
+                .repositoryName(REPOSITORY_NAME)
+                .imageTagMutability(TagMutability.IMMUTABLE)
+                .imageScanOnPush(Boolean.TRUE)
+                .lifecycleRules(Arrays.asList(software.amazon.awscdk.services.ecr.LifecycleRule.builder()
+                        .description("Keeps the images of the last executions")
+                        .maxImageCount(200)
+                        .build()))
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
     }
 
-    private CodePipeline createPipeline(String repoURL, String branch) {
+    /**
+     * In a pipeline execution, the synth step passes the published images as context (see
+     * publish_images.sh). Without them, every stage builds its images as assets.
+     */
+    private ServiceImage resolveServiceImage() {
+
+        Object digest = this.getNode().tryGetContext(IMAGE_DIGEST_CONTEXT);
+        if (digest == null) {
+            return ServiceImage.fromAssets();
+        }
+        return ServiceImage.fromRepository(
+                this.getAccount(),
+                this.getRegion(),
+                REPOSITORY_NAME,
+                digest.toString(),
+                String.valueOf(this.getNode().tryGetContext(BOOTSTRAP_IMAGE_TAG_CONTEXT)));
+    }
+
+    /**
+     * The tasks of the stages in other accounts pull the images from the toolchain repository.
+     */
+    private void grantImagePull(final String account) {
+
+        serviceRepository.addToResourcePolicy(PolicyStatement.Builder.create()
+                .effect(Effect.ALLOW)
+                .principals(Arrays.asList(new AccountPrincipal(account)))
+                .actions(Arrays.asList(
+                        "ecr:BatchGetImage", "ecr:GetDownloadUrlForLayer", "ecr:BatchCheckLayerAvailability"))
+                .build());
+    }
+
+    /**
+     * With publishAssetsInParallel, every file and image asset is published by its own CodeBuild
+     * action, all in the same pipeline stage. Assets are content addressed, so publishing them
+     * concurrently is safe; it only needs as many concurrent CodeBuild builds as there are assets.
+     *
+     * The source triggers the pipeline from an EventBridge rule on the branch (EVENTS) instead of
+     * polling the repository, which starts a run seconds after a push instead of minutes.
+     */
+    private CodePipeline createPipeline(Builder builder) {
 
         CodePipelineSource source = CodePipelineSource.codeCommit(
-                Repository.fromRepositoryName(this, "CodeRepository", repoURL),
-                branch,
+                Repository.fromRepositoryName(this, "CodeRepository", builder.gitRepoURL),
+                builder.gitBranch,
                 CodeCommitSourceOptions.builder()
-                        .trigger(CodeCommitTrigger.POLL)
+                        .trigger(builder.sourceTrigger)
                         .build());
 
-        return CodePipeline.Builder.create(this, "Pipeline-" + Constants.APP_NAME)
-                .publishAssetsInParallel(Boolean.FALSE)
+        CodeBuildStep synthStep = createSynthStep(source, builder);
+        codeDeployFiles = synthStep.addOutputDirectory(CODEDEPLOY_FILES_DIRECTORY);
+
+        CodePipeline.Builder pipelineBuilder = CodePipeline.Builder.create(this, "Pipeline-" + Constants.APP_NAME)
+                .publishAssetsInParallel(builder.publishAssetsInParallel)
                 .dockerEnabledForSelfMutation(Boolean.TRUE)
                 .crossAccountKeys(Boolean.TRUE)
-                .synth(ShellStep.Builder.create(Constants.APP_NAME + "-synth")
-                        .input(source)
-                        .installCommands(Arrays.asList("npm install"))
-                        .commands(Arrays.asList("mvn -B clean package", "npx cdk synth"))
+                .synth(synthStep);
+        if (builder.dependencyCache) {
+            pipelineBuilder.synthCodeBuildDefaults(createDependencyCache());
+        }
+        return pipelineBuilder.build();
+    }
+
+    /**
+     * Builds the application, publishes its images once for every stage of the execution, and
+     * synthesizes the stages with them. Building images needs a privileged build, which also
+     * lets the build emulate the platforms of the multi-arch images that the host is not.
+     *
+     * The CodeDeploy files of the stages are copied out of the cloud assembly, with their
+     * assembly directories, to a second output that only holds them: the CodeDeploy action
+     * rejects input artifacts of more than a few MB, which the cloud assembly exceeds.
+     */
+    private CodeBuildStep createSynthStep(final CodePipelineSource source, final Builder builder) {
+
+        Map<String, String> env = new HashMap<>();
+        env.put("REPOSITORY_URI", serviceRepository.getRepositoryUri());
+        env.put("REPOSITORY_NAME", REPOSITORY_NAME);
+        env.put("IMAGE_PLATFORMS", String.join(",", builder.imagePlatforms));
+
+        List<PolicyStatement> statements = new ArrayList<>(Arrays.asList(
+                PolicyStatement.Builder.create()
+                        .actions(Arrays.asList("ecr:GetAuthorizationToken"))
+                        .resources(Arrays.asList("*"))
+                        .build(),
+                PolicyStatement.Builder.create()
+                        .actions(Arrays.asList(
+                                "ecr:DescribeImages",
+                                "ecr:BatchCheckLayerAvailability",
+                                "ecr:InitiateLayerUpload",
+                                "ecr:UploadLayerPart",
+                                "ecr:CompleteLayerUpload",
+                                "ecr:PutImage"))
+                        .resources(Arrays.asList(serviceRepository.getRepositoryArn()))
+                        .build()));
+        if (builder.binfmtImageDigest != null) {
+            IRepository binfmtRepository =
+                    software.amazon.awscdk.services.ecr.Repository.fromRepositoryName(
+                            this, "BinfmtRepository", BINFMT_REPOSITORY_NAME);
+            env.put("BINFMT_IMAGE", binfmtRepository.repositoryUriForDigest(builder.binfmtImageDigest));
+            statements.add(PolicyStatement.Builder.create()
+                    .actions(Arrays.asList(
+                            "ecr:BatchGetImage", "ecr:GetDownloadUrlForLayer", "ecr:BatchCheckLayerAvailability"))
+                    .resources(Arrays.asList(binfmtRepository.getRepositoryArn()))
+                    .build());
+        }
+        if (builder.dockerLayerCache) {
+            software.amazon.awscdk.services.ecr.Repository cacheRepository = createBuildCacheRepository();
+            env.put("BUILD_CACHE_URI", cacheRepository.getRepositoryUri());
+            statements.add(PolicyStatement.Builder.create()
+                    .actions(Arrays.asList(
+                            "ecr:BatchGetImage",
+                            "ecr:GetDownloadUrlForLayer",
+                            "ecr:BatchCheckLayerAvailability",
+                            "ecr:InitiateLayerUpload",
+                            "ecr:UploadLayerPart",
+                            "ecr:CompleteLayerUpload",
+                            "ecr:PutImage"))
+                    .resources(Arrays.asList(cacheRepository.getRepositoryArn()))
+                    .build());
+        }
+
+        return CodeBuildStep.Builder.create(Constants.APP_NAME + "-synth")
+                .input(source)
+                .installCommands(Arrays.asList("npm install"))
+                .commands(Arrays.asList(
+                        "mvn -B clean package",
+                        "sh " + PUBLISH_IMAGES_SCRIPT,
+                        "npx cdk synth $(cat target/images.context)",
+                        "mkdir -p " + CODEDEPLOY_FILES_DIRECTORY,
+                        "(cd cdk.out && cp --parents assembly-*/" + TaskDefinitionTemplate.DIRECTORY + "/* ../"
+                                + CODEDEPLOY_FILES_DIRECTORY + ")"))
+                .env(env)
+                .buildEnvironment(BuildEnvironment.builder()
+                        .privileged(Boolean.TRUE)
                         .build())
+                .rolePolicyStatements(statements)
+                .build();
+    }
+
+    /**
+     * Repository of the layer cache of the image builds (docker buildx --cache-to). Its tags
+     * are mutable, unlike the tags of the service repository: every build overwrites the cache
+     * of its image, and the manifests it replaces expire.
+     */
+    private software.amazon.awscdk.services.ecr.Repository createBuildCacheRepository() {
+
+        return software.amazon.awscdk.services.ecr.Repository.Builder.create(this, "BuildCacheRepository")
+                .repositoryName(REPOSITORY_NAME + "-cache")
+                .imageTagMutability(TagMutability.MUTABLE)
+                .lifecycleRules(Arrays.asList(software.amazon.awscdk.services.ecr.LifecycleRule.builder()
+                        .description("Expires the replaced cache manifests")
+                        .tagStatus(TagStatus.UNTAGGED)
+                        .maxImageAge(Duration.days(7))
+                        .build()))
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .build();
+    }
+
+    /**
+     * Keeps the Maven repository and the npm cache of the synth step in S3 between runs, so a run
+     * downloads only the dependencies that changed. An S3 cache, unlike a local cache, is
+     * available on every CodeBuild host.
+     */
+    private CodeBuildOptions createDependencyCache() {
+
+        Bucket bucket = Bucket.Builder.create(this, "BuildCache")
+                .encryption(BucketEncryption.S3_MANAGED)
+                .blockPublicAccess(BlockPublicAccess.BLOCK_ALL)
+                .enforceSsl(Boolean.TRUE)
+                .lifecycleRules(Arrays.asList(LifecycleRule.builder()
+                        .expiration(Duration.days(30))
+                        .build()))
+                .removalPolicy(RemovalPolicy.DESTROY)
+                .autoDeleteObjects(Boolean.TRUE)
+                .build();
+
+        Map<String, Object> cache = new HashMap<>();
+        cache.put("paths", Arrays.asList("/root/.m2/**/*", "/root/.npm/**/*"));
+        Map<String, Object> buildSpec = new HashMap<>();
+        buildSpec.put("cache", cache);
+
+        return CodeBuildOptions.builder()
+                .cache(Cache.bucket(bucket, BucketCacheOptions.builder()
+                        .prefix("synth")
+                        .build()))
+                .partialBuildSpec(BuildSpec.fromObject(buildSpec))
                 .build();
     }
 
@@ -70,63 +291,91 @@ public class Toolchain extends Stack {
             final String stageName,
             final IEcsDeploymentConfig ecsDeploymentConfig,
             final Environment env,
+            final ServiceOptions options,
             final Boolean ADD_APPROVAL) {
 
+        Stage stage = createStage(stageName, ecsDeploymentConfig, env, options);
+        addCodeDeploySteps(pipeline.addStage(stage), stage, stageName, ecsDeploymentConfig, env);
+        return this;
+    }
+
+    /**
+     * Deploys the stages of a wave in parallel. Every stage runs its own blue/green deployment
+     * after its Service stack is deployed, so the wave takes as long as its slowest stage
+     * instead of the sum of their bake times.
+     */
+    private Toolchain addWave(final String waveName, final List<Builder.StageConfig> stages) {
+
+        Wave wave = pipeline.addWave(waveName);
+        for (Builder.StageConfig stageConfig : stages) {
+            Stage stage = createStage(
+                    stageConfig.getStageName(),
+                    stageConfig.getEcsDeployConfig(),
+                    stageConfig.getEnv(),
+                    stageConfig.getOptions());
+            addCodeDeploySteps(
+                    wave.addStage(stage),
+                    stage,
+                    stageConfig.getStageName(),
+                    stageConfig.getEcsDeployConfig(),
+                    stageConfig.getEnv());
+        }
+        return this;
+    }
+
+    private Stage createStage(
+            final String stageName,
+            final IEcsDeploymentConfig ecsDeploymentConfig,
+            final Environment env,
+            final ServiceOptions options) {
+
         // The stage
         Stage stage = Stage.Builder.create(pipeline, stageName).env(env).build();
 
-        final String SERVICE_NAME = Constants.APP_NAME + "Service-" + stageName;
+        final String SERVICE_NAME = serviceName(stageName);
 
         // My stack
         new Service(
                 stage,
                 SERVICE_NAME,
                 ecsDeploymentConfig,
+                options,
+                serviceImage,
                 StackProps.builder()
                         .stackName(SERVICE_NAME)
                         .description(SERVICE_NAME)
                         .build());
 
-        StageDeployment stageDeployment = pipeline.addStage(stage);
-
-        // Configure AWS CodeDeploy
-        Step configureCodeDeployStep = ShellStep.Builder.create("ConfigureBlueGreenDeploy")
-                .input(pipeline.getCloudAssemblyFileSet())
-                .primaryOutputDirectory("codedeploy")
-                .commands(Arrays.asList(new String[] {
-                    "chmod a+x ./codedeploy/codedeploy_configuration.sh",
-                    "./codedeploy/codedeploy_configuration.sh",
-                    String.format(
-                            "./codedeploy/codedeploy_configuration.sh %s %s %s %s %s %s",
-                            env.getAccount(),
-                            env.getRegion(),
-                            Constants.APP_NAME,
-                            stageName,
-                            ((Construct) pipeline).getNode().getId(),
-                            SERVICE_NAME)
-                }))
-                .build();
-       
+        return stage;
+    }
+
+    private void addCodeDeploySteps(
+            final StageDeployment stageDeployment,
+            final Stage stage,
+            final String stageName,
+            final IEcsDeploymentConfig ecsDeploymentConfig,
+            final Environment env) {
+
+        final String SERVICE_NAME = serviceName(stageName);
+
         // At the time the toolchain is deployed, the CodeDeploy deployment action 
         // is created, but the CodeDeploy application and deployment group will not exist. 
         // They will be created when the pipeline runs and deploys the Service stack. 
         // When the pipeline deploys the Service to a remote account, it will create the 
         // CodeDeploy application and deployment group in the correct environment.
+        // The AppSpec and the task definition are rendered by the Service stack at synth time.
         Step deployStep = new CodeDeployStep(
             "codeDeploy"+stageName.toLowerCase(),
-            configureCodeDeployStep.getPrimaryOutput(),
+            codeDeployFiles,
+            stage.getArtifactId(),
             referenceCodeDeployDeploymentGroup(env, SERVICE_NAME, ecsDeploymentConfig, stageName),
             stageName);
 
-        deployStep.addStepDependency(configureCodeDeployStep);
-
-        stageDeployment.addPost(
-            configureCodeDeployStep,
-            deployStep
-        );
+        stageDeployment.addPost(deployStep);
+    }
 
-                
-        return this;
+    private static String serviceName(final String stageName) {
+        return Constants.APP_NAME + "Service-" + stageName;
     }
 
     /**
@@ -213,7 +462,13 @@ public class Toolchain extends Stack {
         private String id;
         private String gitRepoURL;
         private String gitBranch;
-        private List<StageConfig> stages = new ArrayList<>();
+        private Boolean publishAssetsInParallel = Boolean.TRUE;
+        private CodeCommitTrigger sourceTrigger = CodeCommitTrigger.EVENTS;
+        private Boolean dependencyCache = Boolean.TRUE;
+        private Boolean dockerLayerCache = Boolean.TRUE;
+        private List<String> imagePlatforms = null;
+        private String binfmtImageDigest = null;
+        private List<WaveConfig> waves = new ArrayList<>();
 
         private software.amazon.awscdk.StackProps props;
 
@@ -230,31 +485,162 @@ public class Toolchain extends Stack {
         }
 
         public Builder addStage(String name, IEcsDeploymentConfig deployConfig, Environment env) {
-            this.stages.add(new StageConfig(name, deployConfig, env));
+            return addStage(name, deployConfig, env, ServiceOptions.defaults());
+        }
+
+        /**
+         * Adds a stage with its own task size, task counts and autoscaling targets.
+         */
+        public Builder addStage(
+                String name, IEcsDeploymentConfig deployConfig, Environment env, CapacityProfile capacity) {
+            return addStage(
+                    name, deployConfig, env, ServiceOptions.builder().capacity(capacity).build());
+        }
+
+        /**
+         * Adds a stage with its own capacity and load balancer settings.
+         */
+        public Builder addStage(
+                String name, IEcsDeploymentConfig deployConfig, Environment env, ServiceOptions options) {
+            this.waves.add(new WaveConfig(null, Arrays.asList(StageConfig.of(name, deployConfig, env, options))));
+            return this;
+        }
+
+        /**
+         * Adds a wave of stages, deployed in parallel after the previous stages and waves, for
+         * example one stage per region:
+         *
+         * <pre>
+         * .addWave("Production",
+         *         StageConfig.of("ProdUsEast1", EcsDeploymentConfig.CANARY_10_PERCENT_5_MINUTES, usEast1),
+         *         StageConfig.of("ProdEuWest1", EcsDeploymentConfig.CANARY_10_PERCENT_5_MINUTES, euWest1))
+         * </pre>
+         */
+        public Builder addWave(String name, StageConfig... stages) {
+            if (stages.length == 0) {
+                throw new IllegalArgumentException("The wave " + name + " has no stages");
+            }
+            this.waves.add(new WaveConfig(name, Arrays.asList(stages)));
+            return this;
+        }
+
+        /**
+         * Publishes the assets with one CodeBuild action each, in parallel (default), or with a
+         * single action that publishes them one after another.
+         */
+        public Builder publishAssetsInParallel(Boolean publishAssetsInParallel) {
+            this.publishAssetsInParallel = publishAssetsInParallel;
+            return this;
+        }
+
+        /**
+         * How a push to the branch starts the pipeline: EVENTS (default) or POLL.
+         */
+        public Builder sourceTrigger(CodeCommitTrigger sourceTrigger) {
+            this.sourceTrigger = sourceTrigger;
+            return this;
+        }
+
+        /**
+         * Caches the Maven repository and the npm cache of the synth step in S3 (default).
+         */
+        public Builder dependencyCache(Boolean dependencyCache) {
+            this.dependencyCache = dependencyCache;
+            return this;
+        }
+
+        /**
+         * Caches the layers of the images the synth step builds in an ECR repository of the
+         * toolchain (default), so a build only rebuilds the layers that changed, on any host.
+         */
+        public Builder dockerLayerCache(Boolean dockerLayerCache) {
+            this.dockerLayerCache = dockerLayerCache;
+            return this;
+        }
+
+        /**
+         * Platforms of the images the synth step publishes, by default the platforms of the
+         * stages and waves: linux/amd64 only, unless a stage runs on ARM64. The platforms the
+         * CodeBuild host is not are built under emulation, which adds minutes to every execution,
+         * so publishing for a platform no stage runs on is opt-in. Every stage must run on one
+         * of them.
+         */
+        public Builder imagePlatforms(String... imagePlatforms) {
+            this.imagePlatforms = Arrays.asList(imagePlatforms);
+            return this;
+        }
+
+        /**
+         * Digest of the tonistiigi/binfmt image mirrored to the binfmt ECR repository of the
+         * toolchain account, which installs the emulators of the image platforms that the
+         * CodeBuild host is not. Required by those platforms: the image runs privileged in the
+         * synth step, so it is never pulled from Docker Hub nor by tag.
+         */
+        public Builder binfmtImageDigest(String binfmtImageDigest) {
+            this.binfmtImageDigest = binfmtImageDigest;
             return this;
         }
 
         public Toolchain build() {
 
+            if (imagePlatforms == null) {
+                imagePlatforms = stagePlatforms();
+            }
+            for (WaveConfig waveConfig : waves) {
+                for (StageConfig stageConfig : waveConfig.getStages()) {
+                    String platform = stageConfig
+                            .getOptions()
+                            .getCompute()
+                            .getArchitecture()
+                            .getDockerPlatform();
+                    if (!imagePlatforms.contains(platform)) {
+                        throw new IllegalArgumentException("The stage " + stageConfig.getStageName() + " runs on "
+                                + platform + ", the pipeline only publishes images for " + imagePlatforms);
+                    }
+                }
+            }
+
+            boolean emulated = imagePlatforms.stream()
+                    .anyMatch(platform -> !platform.equals(ComputeProfile.Architecture.X86_64.getDockerPlatform()));
+            if (emulated && binfmtImageDigest == null) {
+                throw new IllegalArgumentException(
+                        "The pipeline builds " + imagePlatforms + " images under emulation, mirror "
+                                + "tonistiigi/binfmt to the " + BINFMT_REPOSITORY_NAME
+                                + " ECR repository and set its binfmtImageDigest");
+            }
+            if (binfmtImageDigest != null && !binfmtImageDigest.matches("sha256:[0-9a-f]{64}")) {
+                throw new IllegalArgumentException("Invalid binfmt image digest: " + binfmtImageDigest);
+            }
+
             Map<String, Environment> crossAccountEnvironment = new HashMap<>();
 
-            Toolchain pipeline = new Toolchain(
-                    this.scope, this.id, this.gitRepoURL, this.gitBranch, this.props != null ? this.props : null);
+            Toolchain pipeline = new Toolchain(this.scope, this.id, this, this.props != null ? this.props : null);
             String pipelineAccount = pipeline.getAccount();
 
-            for (StageConfig stageConfig : stages) {
-
-                pipeline.addStage(
-                        stageConfig.getStageName(),
-                        stageConfig.getEcsDeployConfig(),
-                        stageConfig.getEnv(),
-                        stageConfig.getApproval());
+            for (WaveConfig waveConfig : waves) {
+
+                if (waveConfig.getWaveName() == null) {
+                    StageConfig stageConfig = waveConfig.getStages().get(0);
+                    pipeline.addStage(
+                            stageConfig.getStageName(),
+                            stageConfig.getEcsDeployConfig(),
+                            stageConfig.getEnv(),
+                            stageConfig.getOptions(),
+                            stageConfig.getApproval());
+                } else {
+                    pipeline.addWave(waveConfig.getWaveName(), waveConfig.getStages());
+                }
 
-                // if the pipeline is a self-mutating pipeline we need to add file-publishing
-                if (pipeline.isSelfMutationEnabled()
-                        && !pipelineAccount.equals(stageConfig.getEnv().getAccount())) {
+                for (StageConfig stageConfig : waveConfig.getStages()) {
+                    if (!pipelineAccount.equals(stageConfig.getEnv().getAccount())) {
+                        pipeline.grantImagePull(stageConfig.getEnv().getAccount());
+                    }
+                    // if the pipeline is a self-mutating pipeline we need to add file-publishing
+                    if (pipeline.isSelfMutationEnabled()
+                            && !pipelineAccount.equals(stageConfig.getEnv().getAccount())) {
 
-                    crossAccountEnvironment.put(stageConfig.getStageName(), stageConfig.getEnv());
+                        crossAccountEnvironment.put(stageConfig.getStageName(), stageConfig.getEnv());
+                    }
                 }
             }
             if (!crossAccountEnvironment.isEmpty()) {
@@ -263,17 +649,51 @@ public class Toolchain extends Stack {
             return pipeline;
         }
 
-        private static final class StageConfig {
+        private List<String> stagePlatforms() {
+
+            Set<ComputeProfile.Architecture> architectures = EnumSet.noneOf(ComputeProfile.Architecture.class);
+            for (WaveConfig waveConfig : waves) {
+                for (StageConfig stageConfig : waveConfig.getStages()) {
+                    architectures.add(stageConfig.getOptions().getCompute().getArchitecture());
+                }
+            }
+            if (architectures.isEmpty()) {
+                architectures.add(ComputeProfile.Architecture.X86_64);
+            }
+            List<String> platforms = new ArrayList<>();
+            for (ComputeProfile.Architecture architecture : architectures) {
+                platforms.add(architecture.getDockerPlatform());
+            }
+            return platforms;
+        }
+
+        /**
+         * A stage of a wave: its name, deployment configuration, environment and service
+         * options.
+         */
+        public static final class StageConfig {
 
             String name;
             IEcsDeploymentConfig ecsDeploymentConfig;
             Environment env;
+            ServiceOptions options;
             Boolean approval = Boolean.FALSE;
 
-            private StageConfig(String name, IEcsDeploymentConfig ecsDeploymentConfig, Environment env) {
+            private StageConfig(
+                    String name, IEcsDeploymentConfig ecsDeploymentConfig, Environment env, ServiceOptions options) {
                 this.name = name;
                 this.ecsDeploymentConfig = ecsDeploymentConfig;
                 this.env = env;
+                this.options = options;
+            }
+
+            public static StageConfig of(String name, IEcsDeploymentConfig deployConfig, Environment env) {
+                return of(name, deployConfig, env, ServiceOptions.defaults());
+            }
+
+            public static StageConfig of(
+                    String name, IEcsDeploymentConfig deployConfig, Environment env, ServiceOptions options) {
+                return new StageConfig(name, deployConfig, env, options);
             }
 
             public String getStageName() {
@@ -288,11 +708,38 @@ public class Toolchain extends Stack {
                 return env;
             }
 
+            public ServiceOptions getOptions() {
+                return options;
+            }
+
             public Boolean getApproval() {
                 return approval;
             }
         }
 
+        /**
+         * Stages deployed in parallel. A single stage added with addStage has no wave name and is
+         * deployed as a pipeline stage of its own.
+         */
+        private static final class WaveConfig {
+
+            String name;
+            List<StageConfig> stages;
+
+            private WaveConfig(String name, List<StageConfig> stages) {
+                this.name = name;
+                this.stages = stages;
+            }
+
+            public String getWaveName() {
+                return name;
+            }
+
+            public List<StageConfig> getStages() {
+                return stages;
+            }
+        }
+
         /**
          * @return a new instance of {@link Builder}.
          * @param scope Parent of this stack, usually an `App` or a `Stage`, but could be any construct.
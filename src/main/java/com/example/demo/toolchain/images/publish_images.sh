@@ -0,0 +1,77 @@
+##
+#!/bin/sh
+#
+# Synth step: publishes the images of the service once per pipeline execution
+# It builds the application image (target/image/) and the bootstrap image for every platform of
+# IMAGE_PLATFORMS, as multi-arch images, pushes them to the ECR
+# repository of the toolchain, whose tags are immutable, and writes the cdk synth context
+# arguments that make every stage deploy them (see ServiceImage).
+#
+# REPOSITORY_URI = URI of the ECR repository of the toolchain
+# REPOSITORY_NAME = Name of the ECR repository of the toolchain
+# CODEBUILD_RESOLVED_SOURCE_VERSION = Commit being built, tag of the application image
+# IMAGE_PLATFORMS = Platforms of the images, linux/amd64 by default
+# BINFMT_IMAGE = Mirror of tonistiigi/binfmt in the toolchain account, by digest: it installs the emulators of
+#   the platforms the host is not, and is only needed when there are some
+# BUILD_CACHE_URI = URI of the ECR repository of the layer cache, no cache when empty
+#
+# Output: target/images.context
+#
+##
+set -e
+
+BootstrapDir=target/classes/com/example/demo/service/api-bootstrap
+ImagePlatforms=${IMAGE_PLATFORMS:-linux/amd64}
+# a tag designates the images of a set of platforms: changing them publishes new images
+PlatformsHash=$(echo $ImagePlatforms | sha256sum | cut -c1-8)
+ApplicationTag=app-$CODEBUILD_RESOLVED_SOURCE_VERSION-$PlatformsHash
+# the bootstrap image only changes with its sources, so its tag is their content hash
+BootstrapTag=bootstrap-$( (echo $ImagePlatforms; cd $BootstrapDir && find . -type f | LC_ALL=C sort | xargs sha256sum) \
+    | sha256sum | cut -c1-16)
+echo "ImagePlatforms: "$ImagePlatforms
+echo "ApplicationTag: "$ApplicationTag
+echo "BootstrapTag: "$BootstrapTag
+
+aws ecr get-login-password | docker login --username AWS --password-stdin ${REPOSITORY_URI%%/*}
+
+# the RUN steps of the Dockerfiles (the AppCDS training run) execute on every platform, the
+# platforms the host is not run emulated
+HostPlatform=linux/$(docker version --format '{{.Server.Arch}}')
+Emulated=$(echo $ImagePlatforms | tr ',' '\n' | grep -v "^$HostPlatform\$" | cut -d/ -f2 | paste -sd, -)
+if [ -n "$Emulated" ]; then
+    case "$BINFMT_IMAGE" in
+        *@sha256:*) ;;
+        *) echo "Building $Emulated on $HostPlatform needs BINFMT_IMAGE, pinned by digest"; exit 1 ;;
+    esac
+    # the image runs privileged on the host that holds the push credentials: only the mirror, only these emulators
+    docker run --privileged --rm $BINFMT_IMAGE --install $Emulated > /dev/null
+fi
+docker buildx inspect multiarch > /dev/null 2>&1 || docker buildx create --name multiarch
+docker buildx use multiarch
+
+# tags are immutable: an image is pushed once, a retried or restarted execution reuses it
+publish() {
+    if aws ecr describe-images --repository-name $REPOSITORY_NAME --image-ids imageTag=$1 > /dev/null 2>&1; then
+        echo "$1 already published"
+    else
+        # the layers of every platform, as ECR stores them: an OCI image manifest under a mutable tag
+        Cache=""
+        if [ -n "$BUILD_CACHE_URI" ]; then
+            CacheRef=$BUILD_CACHE_URI:$3-$PlatformsHash
+            Cache="--cache-from type=registry,ref=$CacheRef"
+            Cache="$Cache --cache-to type=registry,ref=$CacheRef,mode=max,image-manifest=true,oci-mediatypes=true"
+        fi
+        # pushes one image per platform and the index that lists them, under the tag
+        docker buildx build --platform $ImagePlatforms --provenance=false $Cache -t $REPOSITORY_URI:$1 --push $2
+    fi
+}
+publish $ApplicationTag target/image app
+publish $BootstrapTag $BootstrapDir bootstrap
+
+# digest of the index: every task pulls the image of its own architecture
+ApplicationDigest=$(aws ecr describe-images --repository-name $REPOSITORY_NAME --image-ids imageTag=$ApplicationTag \
+    --query 'imageDetails[0].imageDigest' --output text)
+echo "ApplicationDigest: "$ApplicationDigest
+
+printf -- '-c serviceImageDigest=%s -c serviceBootstrapImageTag=%s' $ApplicationDigest $BootstrapTag > target/images.context
+cat target/images.context
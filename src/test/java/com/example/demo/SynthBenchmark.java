@@ -0,0 +1,119 @@
+/* (C)2023 */
+package com.example.demo;
+
+import com.example.demo.toolchain.Toolchain;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.AppProps;
+import software.amazon.awscdk.AssetStaging;
+import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.FileSystem;
+import software.amazon.awscdk.services.codedeploy.EcsDeploymentConfig;
+
+/**
+ * Measures the synthesis of the Demo application, with the stages of Demo.main and more, as
+ * cdk synth runs it from a workstation: without the image context of the pipeline, so every
+ * stage builds its images as Docker image assets.
+ *
+ * The asset hashes are cached by the CDK for the life of the process, which is a single synth
+ * for cdk synth, so the cache is cleared before every run. The fingerprint of the build
+ * directory is also measured against the fingerprint of the image build context, to show what
+ * every stage hashed and copied before the context held only the Dockerfile and the jar.
+ *
+ * Settings are system properties:
+ *
+ * <ul>
+ *   <li>synth.stages: stages of the pipeline, including the UAT stage of Demo.main (default 4)
+ *   <li>synth.runs: synthesis runs (default 3)
+ *   <li>synth.outdir: directory of the cloud assemblies (default target/synth-benchmark)
+ * </ul>
+ *
+ * It needs mvn package first, for the jar of the image build context.
+ */
+public class SynthBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int stages = Integer.getInteger("synth.stages", 4);
+        int runs = Integer.getInteger("synth.runs", 3);
+        Path outdir = Paths.get(System.getProperty("synth.outdir", "target/synth-benchmark"));
+
+        Path context = Paths.get("target", "image");
+        if (!Files.exists(context.resolve("Dockerfile"))) {
+            throw new IllegalStateException("No image build context in " + context + ", run mvn package first");
+        }
+        fingerprint("target", Paths.get("target"));
+        fingerprint("target/image", context);
+
+        List<Double> millis = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            AssetStaging.clearAssetHashCache();
+            App app = new App(AppProps.builder()
+                    .outdir(outdir.resolve("run-" + i).toString())
+                    .build());
+            long start = System.nanoTime();
+            synthesize(app, stages);
+            millis.add((System.nanoTime() - start) / 1e6);
+        }
+        report("synth stages=" + stages, millis);
+    }
+
+    static void synthesize(App app, int stages) {
+
+        Toolchain.Builder toolchain = Demo.toolchain(app);
+        // Demo.main has one stage, UAT
+        for (int i = 2; i <= stages; i++) {
+            toolchain.addStage(
+                    "Stage" + i,
+                    EcsDeploymentConfig.ALL_AT_ONCE,
+                    Environment.builder()
+                            .account(Demo.SERVICE_ACCOUNT)
+                            .region(Demo.SERVICE_REGION)
+                            .build());
+        }
+        toolchain.build();
+        app.synth();
+    }
+
+    /**
+     * Prints the number of files of the directory and the time the CDK takes to fingerprint it.
+     */
+    static void fingerprint(String name, Path directory) throws IOException {
+
+        long files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(Files::isRegularFile).count();
+        }
+        long start = System.nanoTime();
+        String hash = FileSystem.fingerprint(directory.toString());
+        System.out.println(String.format(
+                Locale.ROOT,
+                "fingerprint %-12s files=%d time=%.0fms hash=%s",
+                name,
+                files,
+                (System.nanoTime() - start) / 1e6,
+                hash.substring(0, 12)));
+    }
+
+    static void report(String name, List<Double> millis) {
+
+        List<Double> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        System.out.println(String.format(
+                Locale.ROOT,
+                "%-14s runs=%d min=%.0fms median=%.0fms max=%.0fms",
+                name,
+                sorted.size(),
+                sorted.get(0),
+                sorted.get(sorted.size() / 2),
+                sorted.get(sorted.size() - 1)));
+    }
+}
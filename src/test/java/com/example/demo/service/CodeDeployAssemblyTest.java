@@ -0,0 +1,263 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.AppProps;
+import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.Stage;
+import software.amazon.awscdk.services.codedeploy.EcsDeploymentConfig;
+
+/**
+ * The CodeDeploy action of the pipeline deploys the files the Service stack writes to its stage
+ * assembly, they must match the synthesized stack.
+ */
+public class CodeDeployAssemblyTest {
+
+    private static final String DIGEST = "sha256:0123456789abcdef";
+
+    private static final String SERVICE_NAME = "DemoService-UAT";
+
+    @TempDir
+    Path outdir;
+
+    @Test
+    public void writesTheCodeDeployTemplatesOfTheSynthesizedStack() throws IOException {
+
+        Service service = synthesize(ServiceOptions.defaults());
+        Path assembly = outdir.resolve(Stage.of(service).getArtifactId());
+        Path codedeploy = assembly.resolve(TaskDefinitionTemplate.DIRECTORY);
+        JsonNode taskdef = taskDefinitionFile(service);
+        JsonNode synthesized = taskDefinition(new ObjectMapper()
+                .readTree(assembly.resolve(service.getTemplateFile()).toFile()));
+
+        assertEquals(synthesized.path("Cpu").asText(), taskdef.path("cpu").asText());
+        assertEquals(synthesized.path("Memory").asText(), taskdef.path("memory").asText());
+        assertEquals(synthesized.path("Family").asText(), taskdef.path("family").asText());
+        assertEquals(1, taskdef.path("containerDefinitions").size());
+        assertEquals(
+                "222222222222.dkr.ecr.us-east-1.amazonaws.com/demo-service@" + DIGEST,
+                container(taskdef, SERVICE_NAME).path("image").asText());
+
+        String appSpec = new String(
+                Files.readAllBytes(codedeploy.resolve(TaskDefinitionTemplate.APPSPEC_FILE)), StandardCharsets.UTF_8);
+        assertTrue(appSpec.contains("ContainerName: \"DemoService-UAT\""), appSpec);
+        assertTrue(appSpec.contains("ContainerPort: 8080"), appSpec);
+    }
+
+    @Test
+    public void deploysTheXRayDaemonNextToTheServiceWhenTracing() throws IOException {
+
+        Service service = synthesize(ServiceOptions.builder()
+                .tracing(TracingProfile.builder().samplePercent(10).build())
+                .build());
+        JsonNode taskdef = taskDefinitionFile(service);
+
+        JsonNode daemon = container(taskdef, Service.XRAY_DAEMON_CONTAINER);
+        assertFalse(daemon.path("essential").asBoolean());
+        assertEquals(2000, daemon.path("portMappings").get(0).path("containerPort").asInt());
+        assertEquals("udp", daemon.path("portMappings").get(0).path("protocol").asText());
+
+        Map<String, String> environment = new HashMap<>();
+        for (JsonNode variable : container(taskdef, SERVICE_NAME).path("environment")) {
+            environment.put(variable.path("name").asText(), variable.path("value").asText());
+        }
+        assertEquals("true", environment.get("SERVICE_TRACING"));
+        assertEquals("10", environment.get("SERVICE_TRACING_SAMPLE_PERCENT"));
+        assertEquals("127.0.0.1:2000", environment.get("SERVICE_TRACING_DAEMON_ADDRESS"));
+    }
+
+    @Test
+    public void routesTheLoadBalancerToTheProxyWhenThereIsOne() throws IOException {
+
+        Service service = synthesize(
+                ServiceOptions.builder().proxy(ProxyProfile.defaults()).build());
+        JsonNode taskdef = taskDefinitionFile(service);
+
+        JsonNode envoy = container(taskdef, Service.PROXY_CONTAINER);
+        assertTrue(envoy.path("essential").asBoolean());
+        assertEquals(8080, envoy.path("portMappings").get(0).path("containerPort").asInt());
+
+        JsonNode application = container(taskdef, SERVICE_NAME);
+        assertEquals(8081, application.path("portMappings").get(0).path("containerPort").asInt());
+        assertEquals(
+                Service.PROXY_CONTAINER,
+                application.path("dependsOn").get(0).path("containerName").asText());
+        Map<String, String> environment = new HashMap<>();
+        for (JsonNode variable : application.path("environment")) {
+            environment.put(variable.path("name").asText(), variable.path("value").asText());
+        }
+        assertEquals("127.0.0.1", environment.get("SERVICE_HOST"));
+        assertEquals("8081", environment.get("JERSEY_CONFIG_TEST_CONTAINER_PORT"));
+
+        String appSpec = appSpec(service);
+        assertTrue(appSpec.contains("ContainerName: \"envoy\""), appSpec);
+        assertTrue(appSpec.contains("ContainerPort: 8080"), appSpec);
+    }
+
+    @Test
+    public void ejectsTheFailingTasksOfBothTargetGroupsBehindTheProxy() throws IOException {
+
+        Service service = synthesize(
+                ServiceOptions.builder().proxy(ProxyProfile.defaults()).build());
+        JsonNode template = new ObjectMapper()
+                .readTree(outdir.resolve(Stage.of(service).getArtifactId())
+                        .resolve(service.getTemplateFile())
+                        .toFile());
+
+        int targetGroups = 0;
+        for (JsonNode resource : template.path("Resources")) {
+            if (!"AWS::ElasticLoadBalancingV2::TargetGroup".equals(resource.path("Type").asText())) {
+                continue;
+            }
+            targetGroups++;
+            Map<String, String> attributes = new HashMap<>();
+            for (JsonNode attribute : resource.path("Properties").path("TargetGroupAttributes")) {
+                attributes.put(attribute.path("Key").asText(), attribute.path("Value").asText());
+            }
+            assertEquals("weighted_random", attributes.get("load_balancing.algorithm.type"));
+            assertEquals("on", attributes.get("load_balancing.algorithm.anomaly_mitigation"));
+        }
+        assertEquals(2, targetGroups);
+    }
+
+    @Test
+    public void rejectsAProxyWithoutAnomalyMitigation() {
+
+        assertThrows(IllegalArgumentException.class, () -> ServiceOptions.builder()
+                .proxy(ProxyProfile.defaults())
+                .loadBalancer(LoadBalancerProfile.defaults())
+                .build());
+    }
+
+    @Test
+    public void runsTheTasksOnGravitonInEveryDeployment() throws IOException {
+
+        Service service = synthesize(ServiceOptions.builder()
+                .compute(ComputeProfile.builder()
+                        .architecture(ComputeProfile.Architecture.ARM64)
+                        .build())
+                .build());
+
+        JsonNode runtimePlatform = taskDefinitionFile(service).path("runtimePlatform");
+        assertEquals("ARM64", runtimePlatform.path("cpuArchitecture").asText());
+        assertEquals("LINUX", runtimePlatform.path("operatingSystemFamily").asText());
+        assertFalse(appSpec(service).contains("CapacityProviderStrategy"));
+    }
+
+    @Test
+    public void placesTheTasksOnFargateSpotInEveryDeployment() throws IOException {
+
+        Service service = synthesize(ServiceOptions.builder()
+                .compute(ComputeProfile.builder().onDemandBase(2).spotWeight(3).build())
+                .build());
+
+        assertTrue(taskDefinitionFile(service).path("runtimePlatform").isMissingNode());
+        String appSpec = appSpec(service);
+        assertTrue(
+                appSpec.contains("        CapacityProviderStrategy:\n"
+                        + "          - CapacityProvider: \"FARGATE\"\n"
+                        + "            Base: 2\n"
+                        + "            Weight: 1\n"
+                        + "          - CapacityProvider: \"FARGATE_SPOT\"\n"
+                        + "            Weight: 3\n"),
+                appSpec);
+    }
+
+    @Test
+    public void rejectsGravitonOnFargateSpot() {
+
+        assertThrows(IllegalArgumentException.class, () -> ComputeProfile.builder()
+                .architecture(ComputeProfile.Architecture.ARM64)
+                .spotWeight(1)
+                .build());
+    }
+
+    @Test
+    public void rejectsAStackWithoutAConcreteEnv() {
+
+        App app = new App(AppProps.builder().outdir(outdir.toString()).build());
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new Service(
+                        app,
+                        SERVICE_NAME,
+                        EcsDeploymentConfig.ALL_AT_ONCE,
+                        StackProps.builder().stackName(SERVICE_NAME).build()));
+    }
+
+    private Service synthesize(ServiceOptions options) {
+
+        App app = new App(AppProps.builder().outdir(outdir.toString()).build());
+        Stage stage = Stage.Builder.create(app, "UAT")
+                .env(Environment.builder()
+                        .account("111111111111")
+                        .region("us-east-1")
+                        .build())
+                .build();
+        Service service = new Service(
+                stage,
+                SERVICE_NAME,
+                EcsDeploymentConfig.ALL_AT_ONCE,
+                options,
+                ServiceImage.fromRepository("222222222222", "us-east-1", "demo-service", DIGEST, "bootstrap-1"),
+                StackProps.builder().stackName(SERVICE_NAME).build());
+        app.synth();
+        return service;
+    }
+
+    private String appSpec(Service service) throws IOException {
+        return new String(
+                Files.readAllBytes(outdir.resolve(Stage.of(service).getArtifactId())
+                        .resolve(TaskDefinitionTemplate.DIRECTORY)
+                        .resolve(TaskDefinitionTemplate.APPSPEC_FILE)),
+                StandardCharsets.UTF_8);
+    }
+
+    private JsonNode taskDefinitionFile(Service service) throws IOException {
+        return new ObjectMapper()
+                .readTree(outdir.resolve(Stage.of(service).getArtifactId())
+                        .resolve(TaskDefinitionTemplate.DIRECTORY)
+                        .resolve(TaskDefinitionTemplate.TASK_DEFINITION_FILE)
+                        .toFile());
+    }
+
+    private static JsonNode container(JsonNode taskdef, String name) {
+
+        for (JsonNode container : taskdef.path("containerDefinitions")) {
+            if (name.equals(container.path("name").asText())) {
+                return container;
+            }
+        }
+        throw new AssertionError("No container " + name + " in " + taskdef);
+    }
+
+    private static JsonNode taskDefinition(JsonNode template) {
+
+        Iterator<JsonNode> resources = template.path("Resources").elements();
+        while (resources.hasNext()) {
+            JsonNode resource = resources.next();
+            if ("AWS::ECS::TaskDefinition".equals(resource.path("Type").asText())) {
+                return resource.path("Properties");
+            }
+        }
+        throw new AssertionError("No task definition in the template");
+    }
+}
@@ -0,0 +1,72 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class JvmOptionsTest {
+
+    @Test
+    public void smallContainerUsesSerialCollectorAndKeepsRoomOffHeap() {
+
+        JvmOptions options = JvmOptions.forContainer(1024, 512);
+        assertEquals(1, options.getProcessors());
+        assertFalse(options.isG1());
+        assertEquals(96, options.getMaxMetaspaceMiB());
+        assertEquals(32, options.getMaxDirectMemoryMiB());
+        // 512 - 96 - 32 - 128 = 256 MiB of heap
+        assertEquals(50, options.getHeapPercentage());
+    }
+
+    @Test
+    public void largeContainerUsesG1() {
+
+        JvmOptions options = JvmOptions.forContainer(2048, 4096);
+        assertEquals(2, options.getProcessors());
+        assertTrue(options.isG1());
+        assertEquals(256, options.getMaxMetaspaceMiB());
+        assertEquals(256, options.getMaxDirectMemoryMiB());
+        assertEquals(JvmOptions.MAX_HEAP_PERCENTAGE, options.getHeapPercentage());
+    }
+
+    @Test
+    public void fractionalCpuCountsAsOneProcessor() {
+
+        JvmOptions options = JvmOptions.forContainer(256, 1024);
+        assertEquals(1, options.getProcessors());
+        assertTrue(options.toString().contains("-XX:ActiveProcessorCount=1"));
+    }
+
+    @Test
+    public void neverGivesTheHeapMoreThanWhatIsLeft() {
+
+        for (int containerMiB = JvmOptions.minContainerMemoryMiB(); containerMiB <= 8192; containerMiB += 16) {
+            JvmOptions options = JvmOptions.forContainer(1024, containerMiB);
+            int heapMiB = containerMiB * options.getHeapPercentage() / 100;
+            int offHeapMiB =
+                    options.getMaxMetaspaceMiB() + options.getMaxDirectMemoryMiB() + JvmOptions.NATIVE_OVERHEAD_MIB;
+            assertTrue(heapMiB + offHeapMiB <= containerMiB, containerMiB + " MiB: " + options);
+        }
+    }
+
+    @Test
+    public void shrinksTheOffHeapCapsOfASmallContainer() {
+
+        // 300 - 96 - 32 - 128 leaves 44 MiB, below the minimum heap
+        JvmOptions options = JvmOptions.forContainer(256, 300);
+        assertEquals(JvmOptions.MIN_METASPACE_MIB, options.getMaxMetaspaceMiB());
+        assertEquals(JvmOptions.MIN_DIRECT_MEMORY_MIB, options.getMaxDirectMemoryMiB());
+        // 300 - 64 - 16 - 128 = 92 MiB
+        assertEquals(30, options.getHeapPercentage());
+    }
+
+    @Test
+    public void rejectsAContainerTooSmallForTheJvm() {
+
+        assertThrows(IllegalArgumentException.class, () -> JvmOptions.forContainer(256, 256));
+    }
+}
@@ -0,0 +1,146 @@
+/* (C)2023 */
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awscdk.App;
+import software.amazon.awscdk.AppProps;
+import software.amazon.awscdk.Environment;
+import software.amazon.awscdk.Stack;
+import software.amazon.awscdk.StackProps;
+import software.amazon.awscdk.services.ecs.AwsLogDriverProps;
+import software.amazon.awscdk.services.ecs.ContainerDefinitionOptions;
+import software.amazon.awscdk.services.ecs.ContainerImage;
+import software.amazon.awscdk.services.ecs.FargateTaskDefinition;
+import software.amazon.awscdk.services.ecs.LogDriver;
+import software.amazon.awscdk.services.ecs.PortMapping;
+import software.amazon.awscdk.services.logs.LogGroup;
+
+public class TaskDefinitionTemplateTest {
+
+    private static final String IMAGE_URI =
+            "111111111111.dkr.ecr.us-east-1.amazonaws.com/demo-service@sha256:0123456789abcdef";
+
+    @TempDir
+    Path outdir;
+
+    private App app;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void rendersTheSynthesizedSizingWithTheApplicationImage() {
+
+        TaskDefinitionTemplate template = template();
+        Map<String, Object> rendered = template.render();
+
+        assertEquals("1024", rendered.get("cpu"));
+        assertEquals("2048", rendered.get("memory"));
+        assertEquals("svc", rendered.get("family"));
+        assertEquals("arn:aws:iam::111111111111:role/svc", rendered.get("executionRoleArn"));
+        assertEquals("arn:aws:iam::111111111111:role/svc-task", rendered.get("taskRoleArn"));
+
+        Map<String, Object> container = ((List<Map<String, Object>>) rendered.get("containerDefinitions")).get(0);
+        assertEquals(IMAGE_URI, container.get("image"));
+        assertEquals(512, ((Number) container.get("memory")).intValue());
+        assertTrue(container.get("environment").toString().contains("JAVA_OPTS"));
+
+        Map<String, Object> logOptions =
+                (Map<String, Object>) ((Map<String, Object>) container.get("logConfiguration")).get("options");
+        assertEquals("/ecs/svc", logOptions.get("awslogs-group"));
+        assertEquals("us-east-1", logOptions.get("awslogs-region"));
+    }
+
+    @Test
+    public void writesTheTemplatesWhenTheStackIsSynthesized() {
+
+        template();
+        app.synth();
+        assertTrue(Files.exists(outdir.resolve("codedeploy/taskdef.json")));
+        assertTrue(Files.exists(outdir.resolve("codedeploy/appspec.yaml")));
+    }
+
+    @Test
+    public void declaresTheTestTrafficHookInTheAppSpec() {
+
+        assertFalse(template().renderAppSpec().contains("Hooks:"));
+        assertTrue(template()
+                .afterAllowTestTraffic("CodeDeployHook_svc")
+                .renderAppSpec()
+                .endsWith("Hooks:\n  - AfterAllowTestTraffic: \"CodeDeployHook_svc\"\n"));
+    }
+
+    @Test
+    public void declaresBothHooksInTheAppSpec() {
+
+        assertTrue(template()
+                .afterAllowTestTraffic("CodeDeployHook_gate")
+                .afterAllowTraffic("CodeDeployHook_cache")
+                .renderAppSpec()
+                .endsWith("Hooks:\n  - AfterAllowTestTraffic: \"CodeDeployHook_gate\"\n"
+                        + "  - AfterAllowTraffic: \"CodeDeployHook_cache\"\n"));
+    }
+
+    @Test
+    public void detectsDivergenceFromTheSynthesizedTemplate() throws IOException {
+
+        TaskDefinitionTemplate template = template();
+        app.synth();
+        JsonNode synthesized = new ObjectMapper().readTree(outdir.resolve("Test.template.json").toFile());
+        Map<String, Object> rendered = template.render();
+        assertEquals(Collections.emptyList(), template.compare(rendered, synthesized));
+
+        rendered.put("cpu", "256");
+        assertFalse(template.compare(rendered, synthesized).isEmpty());
+    }
+
+    private TaskDefinitionTemplate template() {
+
+        app = new App(AppProps.builder().outdir(outdir.toString()).build());
+        Stack stack = new Stack(
+                app,
+                "Test",
+                CodeDeploySynthesizer.props(StackProps.builder()
+                        .env(Environment.builder()
+                                .account("111111111111")
+                                .region("us-east-1")
+                                .build())
+                        .build()));
+        FargateTaskDefinition taskDefinition = FargateTaskDefinition.Builder.create(stack, "Task")
+                .cpu(1024)
+                .memoryLimitMiB(2048)
+                .family("svc")
+                .build();
+        taskDefinition.addContainer(
+                "App",
+                ContainerDefinitionOptions.builder()
+                        .containerName("svc")
+                        .image(ContainerImage.fromRegistry("example"))
+                        .memoryLimitMiB(512)
+                        .environment(Collections.singletonMap("JAVA_OPTS", "-XX:ActiveProcessorCount=1"))
+                        .portMappings(Arrays.asList(PortMapping.builder().containerPort(8080).build()))
+                        .logging(LogDriver.awsLogs(AwsLogDriverProps.builder()
+                                .streamPrefix("svc")
+                                .logGroup(LogGroup.Builder.create(stack, "Logs")
+                                        .logGroupName("/ecs/svc")
+                                        .build())
+                                .build()))
+                        .build());
+        TaskDefinitionTemplate template =
+                new TaskDefinitionTemplate(taskDefinition, "svc", 8080, "svc", "svc-task", "/ecs/svc", IMAGE_URI);
+        ((CodeDeploySynthesizer) stack.getSynthesizer()).codeDeployTemplate(template);
+        return template;
+    }
+}
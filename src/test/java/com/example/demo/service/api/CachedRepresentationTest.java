@@ -0,0 +1,76 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class CachedRepresentationTest {
+
+    private static final String CONTENT = "<html>\n<body>\n  Olá, mundo!\n</body>\n</html>\n";
+
+    @Test
+    public void preservesContentAndLineSeparators() {
+
+        CachedRepresentation page = CachedRepresentation.of(CONTENT, MediaType.TEXT_HTML_TYPE);
+        assertEquals(CONTENT, new String(page.getBytes(), StandardCharsets.UTF_8));
+        assertEquals("UTF-8", page.getMediaType().getParameters().get(MediaType.CHARSET_PARAMETER));
+    }
+
+    @Test
+    public void gzipVariantDecodesToTheSameContent() throws IOException {
+
+        CachedRepresentation page = CachedRepresentation.of(CONTENT, MediaType.TEXT_HTML_TYPE);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(page.getGzipBytes()))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+            assertArrayEquals(page.getBytes(), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void entityTagsAreStrongStableAndPerEncoding() {
+
+        CachedRepresentation page = CachedRepresentation.of(CONTENT, MediaType.TEXT_HTML_TYPE);
+        CachedRepresentation same = CachedRepresentation.of(CONTENT, MediaType.TEXT_HTML_TYPE);
+        CachedRepresentation other = CachedRepresentation.of(CONTENT + " ", MediaType.TEXT_HTML_TYPE);
+
+        assertFalse(page.getEntityTag().isWeak());
+        assertEquals(page.getEntityTag(), same.getEntityTag());
+        assertNotEquals(page.getEntityTag(), other.getEntityTag());
+        assertNotEquals(page.getEntityTag(), page.getGzipEntityTag());
+    }
+
+    @Test
+    public void loadsTheExamplePage() {
+        assertTrue(ExampleResource.page().getBytes().length > 0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"gzip", "gzip, deflate, br", "br;q=1.0, gzip;q=0.8", "x-gzip", "*", "deflate, *;q=0.1"})
+    public void acceptsGzip(String acceptEncoding) {
+        assertTrue(CachedRepresentation.acceptsGzip(acceptEncoding));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "identity", "br", "gzip;q=0", "*;q=0", "gzip;q=0, *"})
+    public void rejectsGzip(String acceptEncoding) {
+        assertFalse(CachedRepresentation.acceptsGzip(acceptEncoding));
+    }
+}
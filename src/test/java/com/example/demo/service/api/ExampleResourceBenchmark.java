@@ -0,0 +1,100 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Variant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls {@link ExampleResource#example} directly, without Jersey or the network: the cost of
+ * selecting the encoding, evaluating If-None-Match and building the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExampleResourceBenchmark {
+
+    @Param({"identity", "gzip"})
+    public String acceptEncoding;
+
+    @Param({"false", "true"})
+    public boolean conditional;
+
+    private ExampleResource resource;
+    private Request request;
+
+    @Setup
+    public void setup() {
+
+        resource = new ExampleResource();
+        EntityTag current = "gzip".equals(acceptEncoding)
+                ? ExampleResource.page().getGzipEntityTag()
+                : ExampleResource.page().getEntityTag();
+        request = new ConditionalGet(conditional ? current : null);
+    }
+
+    @Benchmark
+    public Response example() {
+        return resource.example(request, acceptEncoding);
+    }
+
+    /**
+     * GET request carrying an optional If-None-Match header.
+     */
+    static final class ConditionalGet implements Request {
+
+        private final EntityTag ifNoneMatch;
+
+        ConditionalGet(EntityTag ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public String getMethod() {
+            return "GET";
+        }
+
+        @Override
+        public Variant selectVariant(List<Variant> variants) {
+            return variants.isEmpty() ? null : variants.get(0);
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+            return eTag.equals(ifNoneMatch) ? Response.notModified(eTag) : null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(Date lastModified) {
+            return null;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(Date lastModified, EntityTag eTag) {
+            return evaluatePreconditions(eTag);
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.WebTarget;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.jersey.test.DeploymentContext;
+import org.glassfish.jersey.test.inmemory.InMemoryTestContainerFactory;
+import org.glassfish.jersey.test.spi.TestContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatches requests through the Jersey application built by {@link Main#createResourceConfig()}
+ * with the in-memory connector: routing, filters, injection and entity writing, without sockets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JerseyDispatchBenchmark {
+
+    @Param({"identity", "gzip"})
+    public String acceptEncoding;
+
+    @Param({"false", "true"})
+    public boolean conditional;
+
+    private TestContainer container;
+    private Client client;
+    private WebTarget target;
+    private String ifNoneMatch;
+
+    @Setup
+    public void setup() {
+
+        container = new InMemoryTestContainerFactory()
+                .create(
+                        URI.create("http://localhost/"),
+                        DeploymentContext.builder(new Main().createResourceConfig())
+                                .build());
+        container.start();
+        client = ClientBuilder.newClient(container.getClientConfig());
+        target = client.target(container.getBaseUri());
+
+        EntityTag current = "gzip".equals(acceptEncoding)
+                ? ExampleResource.page().getGzipEntityTag()
+                : ExampleResource.page().getEntityTag();
+        ifNoneMatch = conditional ? current.toString() : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        container.stop();
+    }
+
+    @Benchmark
+    public byte[] get() {
+
+        Response response = target.request()
+                .header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding)
+                .header(HttpHeaders.IF_NONE_MATCH, ifNoneMatch)
+                .get();
+        try {
+            return response.hasEntity() ? response.readEntity(byte[].class) : null;
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * HTTP load generator with two modes.
+ *
+ * <ul>
+ *   <li>Open loop: requests are started at a constant arrival rate, whatever the response time.
+ *       Latency is measured from the time a request was scheduled to start, so time spent
+ *       waiting for a free connection counts as latency.
+ *   <li>Closed loop: a fixed number of connections send requests back to back. A stalled
+ *       response also delays the requests the connection would have sent meanwhile, so latencies
+ *       are recorded with the expected interval between requests to correct for coordinated
+ *       omission.
+ * </ul>
+ */
+class LoadGenerator {
+
+    static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final URL url;
+    private final int connections;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, 3);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    LoadGenerator(URL url, int connections) {
+        this.url = url;
+        this.connections = connections;
+        // keep one cached keep-alive connection per client thread
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+    }
+
+    /**
+     * Sends requests at a constant rate for the given duration.
+     *
+     * @param rate requests per second
+     */
+    Result openLoop(double rate, long durationSeconds) throws InterruptedException {
+
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final long total = (long) (rate * durationSeconds);
+        final ExecutorService clients = Executors.newFixedThreadPool(connections);
+        final CountDownLatch done = new CountDownLatch((int) total);
+
+        reset();
+        final long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            final long intendedStart = start + i * interval;
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            clients.execute(() -> {
+                if (get()) {
+                    recorder.recordValue(Math.min(System.nanoTime() - intendedStart, HIGHEST_TRACKABLE_NANOS));
+                    completed.incrementAndGet();
+                } else {
+                    errors.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        done.await(durationSeconds + 60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+        clients.shutdownNow();
+
+        return new Result(
+                "open", rate, connections, elapsed, recorder.getIntervalHistogram(), completed.get(), errors.get());
+    }
+
+    /**
+     * Each connection sends requests back to back for the given duration.
+     *
+     * @param expectedIntervalNanos expected time between two requests of a connection, used to
+     *     back-fill the samples a stalled request kept from being sent. A value above the
+     *     response times turns the correction off.
+     */
+    Result closedLoop(long durationSeconds, final long expectedIntervalNanos) throws InterruptedException {
+
+        final CountDownLatch done = new CountDownLatch(connections);
+
+        reset();
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        for (int c = 0; c < connections; c++) {
+            Thread client = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long requestStart = System.nanoTime();
+                    if (get()) {
+                        recorder.recordValueWithExpectedInterval(
+                                Math.min(System.nanoTime() - requestStart, HIGHEST_TRACKABLE_NANOS),
+                                expectedIntervalNanos);
+                        completed.incrementAndGet();
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            });
+            client.setDaemon(true);
+            client.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+
+        return new Result(
+                "closed", 0, connections, elapsed, recorder.getIntervalHistogram(), completed.get(), errors.get());
+    }
+
+    private void reset() {
+        recorder.reset();
+        completed.set(0);
+        errors.set(0);
+    }
+
+    private boolean get() {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(5_000);
+            connection.setReadTimeout(30_000);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            // the body is read to the end so the connection goes back to the keep-alive cache
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {}
+            }
+            return connection.getResponseCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Outcome of a run. Latencies are in milliseconds, throughput in successful requests per
+     * second.
+     */
+    static final class Result {
+
+        final String mode;
+        final double targetRate;
+        final int connections;
+        final long requests;
+        final long errors;
+        final double durationSeconds;
+        final double throughput;
+        final double p50;
+        final double p99;
+        final double p999;
+        final double max;
+
+        Result(
+                String mode,
+                double targetRate,
+                int connections,
+                long elapsedNanos,
+                Histogram histogram,
+                long requests,
+                long errors) {
+            this.mode = mode;
+            this.targetRate = targetRate;
+            this.connections = connections;
+            // the corrected histogram also holds back-filled samples, so requests are counted apart
+            this.requests = requests;
+            this.errors = errors;
+            this.durationSeconds = elapsedNanos / 1e9;
+            this.throughput = requests / durationSeconds;
+            this.p50 = histogram.getValueAtPercentile(50) / 1e6;
+            this.p99 = histogram.getValueAtPercentile(99) / 1e6;
+            this.p999 = histogram.getValueAtPercentile(99.9) / 1e6;
+            this.max = histogram.getMaxValue() / 1e6;
+        }
+
+        String toJson() {
+            return String.format(
+                    Locale.ROOT,
+                    "{\"mode\": \"%s\", \"targetRate\": %.1f, \"connections\": %d, \"durationSeconds\": %.3f, "
+                            + "\"requests\": %d, \"errors\": %d, \"throughput\": %.1f, "
+                            + "\"latencyMillis\": {\"p50\": %.3f, \"p99\": %.3f, \"p99.9\": %.3f, \"max\": %.3f}}",
+                    mode,
+                    targetRate,
+                    connections,
+                    durationSeconds,
+                    requests,
+                    errors,
+                    throughput,
+                    p50,
+                    p99,
+                    p999,
+                    max);
+        }
+    }
+}
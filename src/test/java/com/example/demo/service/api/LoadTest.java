@@ -0,0 +1,177 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import org.glassfish.grizzly.http.server.HttpServer;
+
+/**
+ * Starts the service with {@link Main#startServer()}, drives it with {@link LoadGenerator} and
+ * writes the results to a JSON report. The run fails (exit code 1) when a result regresses past
+ * the checked-in baseline by more than the tolerance: a latency percentile higher, or the
+ * throughput lower, than the baseline value.
+ *
+ * Settings are system properties:
+ *
+ * <ul>
+ *   <li>load.mode: open, closed or both (default both)
+ *   <li>load.rate: requests per second of the open loop (default 500)
+ *   <li>load.connections: client connections (default 64)
+ *   <li>load.duration / load.warmup: seconds (default 30 / 10)
+ *   <li>load.report: report file (default target/load-report.json)
+ *   <li>load.baseline: baseline file (default src/test/resources/load-baseline.properties)
+ *   <li>load.update.baseline: true to write the results as the new baseline instead of
+ *       comparing
+ * </ul>
+ */
+public class LoadTest {
+
+    static final String PORT = "9996";
+
+    public static void main(String[] args) throws Exception {
+
+        String mode = System.getProperty("load.mode", "both");
+        double rate = Double.parseDouble(System.getProperty("load.rate", "500"));
+        int connections = Integer.getInteger("load.connections", 64);
+        long duration = Long.getLong("load.duration", 30);
+        long warmup = Long.getLong("load.warmup", 10);
+        Path report = Paths.get(System.getProperty("load.report", "target/load-report.json"));
+        Path baseline =
+                Paths.get(System.getProperty("load.baseline", "src/test/resources/load-baseline.properties"));
+
+        System.setProperty(ServerConfig.PORT, PORT);
+        HttpServer server = new Main().startServer();
+        List<LoadGenerator.Result> results = new ArrayList<>();
+        try {
+            URL url = Main.getBaseURI().toURL();
+            LoadGenerator generator = new LoadGenerator(url, connections);
+
+            // the warm-up also measures the response time the closed loop expects
+            LoadGenerator.Result warm = generator.closedLoop(warmup, LoadGenerator.HIGHEST_TRACKABLE_NANOS);
+            long expectedInterval = Math.max(1, (long) (warm.p50 * 1e6));
+
+            if (!"closed".equals(mode)) {
+                results.add(generator.openLoop(rate, duration));
+            }
+            if (!"open".equals(mode)) {
+                results.add(generator.closedLoop(duration, expectedInterval));
+            }
+        } finally {
+            server.shutdownNow();
+        }
+
+        writeReport(report, results);
+
+        if (Boolean.getBoolean("load.update.baseline")) {
+            writeBaseline(baseline, results);
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        List<String> regressions = compare(loadBaseline(baseline), results);
+        if (!regressions.isEmpty()) {
+            for (String regression : regressions) {
+                System.out.println("REGRESSION " + regression);
+            }
+            System.exit(1);
+        }
+        System.out.println("No regression against " + baseline);
+    }
+
+    static void writeReport(Path report, List<LoadGenerator.Result> results) throws IOException {
+
+        StringBuilder json = new StringBuilder("{\"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            json.append("  ").append(results.get(i).toJson()).append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("]}\n");
+
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        Files.write(report, json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(json);
+    }
+
+    static Properties loadBaseline(Path baseline) throws IOException {
+
+        Properties properties = new Properties();
+        if (Files.exists(baseline)) {
+            try (InputStream in = new FileInputStream(baseline.toFile())) {
+                properties.load(in);
+            }
+        } else {
+            System.out.println("Baseline " + baseline + " not found, nothing to compare");
+        }
+        return properties;
+    }
+
+    /**
+     * @return a description of each result that is worse than the baseline by more than the
+     *     tolerance (baseline property "tolerance", a fraction, default 0.25)
+     */
+    static List<String> compare(Properties baseline, List<LoadGenerator.Result> results) {
+
+        double tolerance = Double.parseDouble(baseline.getProperty("tolerance", "0.25"));
+        List<String> regressions = new ArrayList<>();
+        for (LoadGenerator.Result result : results) {
+            if (result.errors > 0) {
+                regressions.add(result.mode + ": " + result.errors + " failed requests");
+            }
+            checkLatency(baseline, result.mode + ".p50.millis", result.p50, tolerance, regressions);
+            checkLatency(baseline, result.mode + ".p99.millis", result.p99, tolerance, regressions);
+            checkLatency(baseline, result.mode + ".p999.millis", result.p999, tolerance, regressions);
+
+            String key = result.mode + ".throughput";
+            if (baseline.containsKey(key)) {
+                double expected = Double.parseDouble(baseline.getProperty(key));
+                if (result.throughput < expected * (1 - tolerance)) {
+                    regressions.add(String.format(
+                            Locale.ROOT, "%s: %.1f req/s, baseline %.1f req/s", key, result.throughput, expected));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    private static void checkLatency(
+            Properties baseline, String key, double actual, double tolerance, List<String> regressions) {
+
+        if (baseline.containsKey(key)) {
+            double expected = Double.parseDouble(baseline.getProperty(key));
+            if (actual > expected * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.3f ms, baseline %.3f ms", key, actual, expected));
+            }
+        }
+    }
+
+    static void writeBaseline(Path baseline, List<LoadGenerator.Result> results) throws IOException {
+
+        Properties properties = loadBaseline(baseline);
+        properties.putIfAbsent("tolerance", "0.25");
+        for (LoadGenerator.Result result : results) {
+            properties.setProperty(result.mode + ".p50.millis", String.format(Locale.ROOT, "%.3f", result.p50));
+            properties.setProperty(result.mode + ".p99.millis", String.format(Locale.ROOT, "%.3f", result.p99));
+            properties.setProperty(result.mode + ".p999.millis", String.format(Locale.ROOT, "%.3f", result.p999));
+            properties.setProperty(
+                    result.mode + ".throughput", String.format(Locale.ROOT, "%.1f", result.throughput));
+        }
+        try (OutputStream out = new FileOutputStream(baseline.toFile());
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.ISO_8859_1)) {
+            properties.store(writer, "Load test baseline, see LoadTest");
+        }
+    }
+}
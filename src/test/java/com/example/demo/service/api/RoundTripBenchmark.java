@@ -0,0 +1,75 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full HTTP round trip against the server started by {@link Main#startServer()} on this host,
+ * over keep-alive connections. The server runs in the benchmark JVM, so the allocation rate
+ * reported by the gc profiler includes both the client and the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    static final String PORT = "9997";
+
+    @Param({"identity", "gzip"})
+    public String acceptEncoding;
+
+    private HttpServer server;
+    private URL url;
+
+    @Setup
+    public void setup() throws IOException {
+
+        System.setProperty(ServerConfig.PORT, PORT);
+        server = new Main().startServer();
+        url = Main.getBaseURI().toURL();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    public int get() throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        int read = 0;
+        // reading the body to the end returns the connection to the keep-alive cache
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                read += n;
+            }
+        }
+        if (connection.getResponseCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + connection.getResponseCode());
+        }
+        return read;
+    }
+}
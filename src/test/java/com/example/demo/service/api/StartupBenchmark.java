@@ -0,0 +1,149 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the startup time of the service, from the launch of a new JVM until it answers the
+ * first request to / with 200, for three variants:
+ *
+ * <ul>
+ *   <li>scan: resources found by scanning the classpath
+ *   <li>explicit: resources registered explicitly (the default)
+ *   <li>explicit+cds: explicit, with a dynamic AppCDS archive created by a training run of the
+ *       same JVM (Java 13 or later)
+ * </ul>
+ *
+ * Settings are system properties:
+ *
+ * <ul>
+ *   <li>startup.runs: launches per variant (default 5)
+ *   <li>startup.archive: CDS archive file (default target/startup.jsa)
+ * </ul>
+ *
+ * Note that the classes of directories on the classpath (target/classes) are not archived, so
+ * the service jar started by the Dockerfile gains more from the archive than this run does.
+ */
+public class StartupBenchmark {
+
+    static final int PORT = 9995;
+    static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    public static void main(String[] args) throws Exception {
+
+        int runs = Integer.getInteger("startup.runs", 5);
+        Path archive = Paths.get(System.getProperty("startup.archive", "target/startup.jsa"));
+
+        report("scan", measure(runs, "-D" + ServerConfig.RESOURCES_SCAN + "=true"));
+        report("explicit", measure(runs));
+
+        if (javaVersion() < 13) {
+            System.out.println("explicit+cds: skipped, dynamic CDS archives need Java 13 or later");
+            return;
+        }
+        Files.deleteIfExists(archive);
+        int exit = launch("-XX:ArchiveClassesAtExit=" + archive, "-D" + ServerConfig.TRAINING_RUN + "=true")
+                .waitFor();
+        if (exit != 0 || !Files.exists(archive)) {
+            throw new IllegalStateException("Training run failed with exit code " + exit);
+        }
+        report("explicit+cds", measure(runs, "-XX:SharedArchiveFile=" + archive));
+    }
+
+    /**
+     * @return the startup time of each run, in milliseconds
+     */
+    static List<Double> measure(int runs, String... jvmOptions) throws Exception {
+
+        URL url = Main.getBaseURI(PORT).toURL();
+        // the measured runs answer as soon as they start, the training run warms up as in production
+        List<String> options = new ArrayList<>(Arrays.asList(jvmOptions));
+        options.add("-D" + ServerConfig.WARMUP_REQUESTS + "=0");
+        List<Double> millis = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            Process process = launch(options.toArray(new String[0]));
+            try {
+                while (!ok(url)) {
+                    if (!process.isAlive()) {
+                        throw new IllegalStateException("The service exited with code " + process.exitValue());
+                    }
+                    if (System.nanoTime() - start > TIMEOUT_NANOS) {
+                        throw new IllegalStateException("The service did not answer within 60 seconds");
+                    }
+                    Thread.sleep(2);
+                }
+                millis.add((System.nanoTime() - start) / 1e6);
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+        return millis;
+    }
+
+    static Process launch(String... jvmOptions) throws IOException {
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(jvmOptions));
+        command.add("-D" + ServerConfig.PORT + "=" + PORT);
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.to(new File(nullDevice())))
+                .start();
+    }
+
+    static boolean ok(URL url) {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(100);
+            try (InputStream in = connection.getInputStream()) {
+                while (in.read() != -1) {}
+            }
+            return connection.getResponseCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    static void report(String variant, List<Double> millis) {
+
+        List<Double> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        System.out.println(String.format(
+                Locale.ROOT,
+                "%-14s runs=%d min=%.0fms median=%.0fms max=%.0fms",
+                variant,
+                sorted.size(),
+                sorted.get(0),
+                sorted.get(sorted.size() / 2),
+                sorted.get(sorted.size() - 1)));
+    }
+
+    static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+    }
+
+    private static String nullDevice() {
+        return System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+    }
+}
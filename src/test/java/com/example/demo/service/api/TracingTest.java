@@ -0,0 +1,105 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Serves traced requests with a local UDP socket standing in for the X-Ray daemon.
+ */
+public class TracingTest {
+
+    private static final String TRACE_ID = "1-5759e988-bd862e3fe1be46a994272793";
+    private static final String PARENT_ID = "53995c3f42cd8ad8";
+
+    private DatagramSocket daemon;
+    private Main main;
+    private HttpServer server;
+    private int port;
+
+    @BeforeEach
+    public void start() throws IOException {
+
+        daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        daemon.setSoTimeout(5000);
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        main = new Main();
+        server = main.startServer(
+                main.createResourceConfig(),
+                ServerConfig.builder()
+                        .port(port)
+                        .warmupRequests(0)
+                        .tracing(true)
+                        // only the caller decides, the tail is disabled
+                        .tracingSamplePercent(0)
+                        .tracingTailLatencyMillis(0)
+                        .tracingDaemonAddress("127.0.0.1:" + daemon.getLocalPort())
+                        .build());
+    }
+
+    @AfterEach
+    public void stop() {
+        main.stop(server);
+        daemon.close();
+    }
+
+    @Test
+    public void sendsTheSegmentOfASampledRequestInTheTraceOfTheLoadBalancer() throws IOException {
+
+        HttpURLConnection connection = get("Root=" + TRACE_ID + ";Parent=" + PARENT_ID + ";Sampled=1");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("Root=" + TRACE_ID + ";Sampled=1", connection.getHeaderField("X-Amzn-Trace-Id"));
+
+        String datagram = receive();
+        assertTrue(datagram.startsWith("{\"format\":\"json\",\"version\":1}\n{\"name\":\"example\""), datagram);
+        assertTrue(datagram.contains("\"trace_id\":\"" + TRACE_ID + "\",\"parent_id\":\"" + PARENT_ID + "\""));
+        assertTrue(datagram.contains("\"method\":\"GET\""), datagram);
+        assertTrue(datagram.contains("\"response\":{\"status\":200"), datagram);
+        assertTrue(datagram.contains("\"tail_sampled\":false"), datagram);
+        assertTrue(datagram.contains("\"name\":\"jersey\"") && datagram.contains("\"name\":\"write\""), datagram);
+    }
+
+    @Test
+    public void leavesOutTheRequestsTheCallerDidNotSample() throws IOException {
+
+        assertEquals(200, get("Root=" + TRACE_ID + ";Sampled=0").getResponseCode());
+        String sampled = "1-5759e988-000000000000000000000001";
+        assertEquals(200, get("Root=" + sampled + ";Sampled=1").getResponseCode());
+
+        // segments are sent in order: the first one received belongs to the sampled request
+        assertTrue(receive().contains("\"trace_id\":\"" + sampled + "\""));
+    }
+
+    private HttpURLConnection get(String traceHeader) throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) Main.getBaseURI(port).toURL().openConnection();
+        connection.setRequestProperty("X-Amzn-Trace-Id", traceHeader);
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {}
+        }
+        return connection;
+    }
+
+    private String receive() throws IOException {
+
+        DatagramPacket packet = new DatagramPacket(new byte[64 * 1024], 64 * 1024);
+        daemon.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+/* (C)2023 */
+package com.example.demo.service.api;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.server.ResourceConfig;
+
+/**
+ * Compares the platform worker pool with virtual threads under a high number of concurrent
+ * connections. Requests go to a resource that blocks for a fixed time, standing in for an
+ * endpoint waiting on a downstream call. With the platform pool, throughput is capped at
+ * workers / delay; with virtual threads it grows with the number of connections.
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes com.example.demo.service.api.WorkerPoolComparison \
+ *     [connections=1000] [seconds=20] [delayMillis=50]
+ * </pre>
+ *
+ * Virtual threads need Java 21, or Java 19/20 started with --enable-preview.
+ */
+public class WorkerPoolComparison {
+
+    static final String PORT = "9998";
+
+    static volatile long delayMillis = 50;
+
+    @Path("/blocking")
+    public static class BlockingResource {
+
+        @GET
+        @Produces(MediaType.TEXT_PLAIN)
+        public String blocking() throws InterruptedException {
+            Thread.sleep(delayMillis);
+            return "done";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        delayMillis = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        System.setProperty(ServerConfig.PORT, PORT);
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+
+        List<String> report = new ArrayList<>();
+        for (String mode : Arrays.asList(ServerConfig.WORKERS_PLATFORM, ServerConfig.WORKERS_VIRTUAL)) {
+
+            System.setProperty(ServerConfig.WORKERS, mode);
+            HttpServer server = new Main().startServer(new ResourceConfig(BlockingResource.class));
+            try {
+                report.add(String.format("%-9s %s", mode, run(connections, seconds)));
+            } finally {
+                server.shutdownNow();
+            }
+        }
+
+        System.out.println(String.format(
+                "%d connections, %d s, %d ms blocking per request", connections, seconds, delayMillis));
+        System.out.println(String.format(
+                "%-9s %12s %10s %10s %10s %8s", "mode", "requests/s", "p50 ms", "p99 ms", "max ms", "errors"));
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    private static String run(int connections, int seconds) throws Exception {
+
+        final URL url = new URL(Main.getBaseURI() + "blocking");
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final long[][] latencies = new long[connections][];
+        final AtomicLong errors = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(connections);
+
+        for (int c = 0; c < connections; c++) {
+            final int connection = c;
+            Thread client = new Thread(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    if (get(url)) {
+                        if (count == samples.length) {
+                            samples = Arrays.copyOf(samples, count * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+                latencies[connection] = Arrays.copyOf(samples, count);
+                done.countDown();
+            });
+            client.setDaemon(true);
+            client.start();
+        }
+        done.await();
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            return "no successful requests, errors " + errors.get();
+        }
+        return String.format(
+                "%12.0f %10.1f %10.1f %10.1f %8d",
+                all.length / (double) seconds,
+                all[(int) (all.length * 0.50)] / 1e6,
+                all[Math.min(all.length - 1, (int) (all.length * 0.99))] / 1e6,
+                all[all.length - 1] / 1e6,
+                errors.get());
+    }
+
+    private static boolean get(URL url) {
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(10_000);
+            connection.setReadTimeout(30_000);
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buffer = new byte[256];
+                while (in.read(buffer) != -1) {}
+            }
+            return connection.getResponseCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/* (C)2023 */
+package com.example.demo.service.api.logging;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AsyncLoggerTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    @Test
+    public void writesOneJsonDocumentPerEvent() throws Exception {
+
+        AsyncLogger logger = new AsyncLogger(16, AsyncLogger.OverflowPolicy.DROP, 1, out());
+        logger.start();
+        logger.log(AsyncLogger.Level.WARN, "Main", "quote \" and\nnew line", null);
+        logger.access("GET", "/", 200, 1_500_000);
+        logger.stop();
+
+        String[] lines = written().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].matches("\\{\"timestamp\":\"[0-9T:.-]+Z\",\"level\":\"WARN\",\"logger\":\"Main\","
+                + "\"message\":\"quote \\\\\" and\\\\nnew line\"}"), lines[0]);
+        assertTrue(lines[1].endsWith("\"logger\":\"access\",\"method\":\"GET\",\"path\":\"/\",\"status\":200,"
+                + "\"durationMs\":1.5}"), lines[1]);
+        assertEquals(2, logger.getWritten());
+    }
+
+    @Test
+    public void dropsAndCountsTheEventsThatDoNotFit() throws Exception {
+
+        // not started: nothing drains the buffer, as when stdout is blocked
+        AsyncLogger logger = new AsyncLogger(4, AsyncLogger.OverflowPolicy.DROP, 1, out());
+        for (int i = 0; i < 10; i++) {
+            logger.log(AsyncLogger.Level.ERROR, "Test", "event " + i, null);
+        }
+        assertEquals(6, logger.getDropped());
+
+        logger.start();
+        logger.stop();
+        assertTrue(written().startsWith("{") && written().contains("event 3") && !written().contains("event 4"));
+    }
+
+    @Test
+    public void samplesInfoEventsOnceTheBufferIsHalfFull() throws Exception {
+
+        AsyncLogger logger = new AsyncLogger(1024, AsyncLogger.OverflowPolicy.SAMPLE, 1_000_000, out());
+        for (int i = 0; i < 1000; i++) {
+            logger.log(AsyncLogger.Level.INFO, "Test", "info", null);
+        }
+        logger.log(AsyncLogger.Level.ERROR, "Test", "error", null);
+
+        assertTrue(logger.getSampled() >= 480, "sampled " + logger.getSampled());
+        assertEquals(0, logger.getDropped());
+        assertEquals(1000 - logger.getSampled() + 1, logger.getBuffered());
+    }
+
+    @Test
+    public void keepsEveryEventOfConcurrentThreads() throws Exception {
+
+        AsyncLogger logger = new AsyncLogger(1 << 16, AsyncLogger.OverflowPolicy.DROP, 1, out());
+        logger.start();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    logger.access("GET", "/", 200, i);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        logger.stop();
+
+        assertEquals(0, logger.getDropped());
+        assertEquals(40000, logger.getWritten());
+        assertEquals(40000, written().split("\n").length);
+    }
+
+    private PrintStream out() throws UnsupportedEncodingException {
+        return new PrintStream(bytes, true, "UTF-8");
+    }
+
+    private String written() {
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
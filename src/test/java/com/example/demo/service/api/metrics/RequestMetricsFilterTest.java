@@ -0,0 +1,154 @@
+/* (C)2023 */
+package com.example.demo.service.api.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Serves requests in memory, through the listener as Main registers it.
+ */
+public class RequestMetricsFilterTest {
+
+    private static final String WARMUP_TOKEN = "0f8e6a52-warmup";
+
+    @Path("/orders")
+    public static class OrdersResource {
+
+        @GET
+        @Path("{id}")
+        public String get(@PathParam("id") String id) {
+            if ("missing".equals(id)) {
+                throw new NotFoundException();
+            }
+            if ("broken".equals(id)) {
+                throw new IllegalStateException("no mapper for this one");
+            }
+            return id;
+        }
+    }
+
+    private MetricsRegistry registry;
+    private ApplicationHandler handler;
+
+    @BeforeEach
+    public void start() {
+        registry = new MetricsRegistry();
+        handler = new ApplicationHandler(
+                new ResourceConfig(OrdersResource.class).register(new RequestMetricsFilter(registry, WARMUP_TOKEN)));
+    }
+
+    @Test
+    public void recordsTheRequestsOfAResourceMethodUnderItsTemplate() throws Exception {
+
+        assertEquals(200, get("/orders/1"));
+        assertEquals(200, get("/orders/2"));
+
+        RouteMetrics route = onlyRoute();
+        assertEquals("GET", route.getMethod());
+        assertEquals("/orders/{id}", route.getRoute());
+        assertEquals("2xx", route.getStatus());
+        assertEquals(2, route.getCount());
+    }
+
+    @Test
+    public void recordsTheStatusClassOfTheResponse() throws Exception {
+
+        assertEquals(200, get("/orders/1"));
+        assertEquals(404, get("/orders/missing"));
+
+        List<String> statuses = new ArrayList<>();
+        for (RouteMetrics route : registry.getRoutes()) {
+            assertEquals("/orders/{id}", route.getRoute());
+            statuses.add(route.getStatus());
+        }
+        statuses.sort(null);
+        assertEquals(Arrays.asList("2xx", "4xx"), statuses);
+    }
+
+    @Test
+    public void recordsTheUnmatchedPathsUnderOneRoute() throws Exception {
+
+        assertEquals(404, get("/unknown/a"));
+        assertEquals(404, get("/unknown/b"));
+
+        RouteMetrics route = onlyRoute();
+        assertEquals(RequestMetricsFilter.UNMATCHED, route.getRoute());
+        assertEquals("4xx", route.getStatus());
+        assertEquals(2, route.getCount());
+    }
+
+    @Test
+    public void recordsTheRequestsFailingWithAnUnmappedException() throws Exception {
+
+        assertEquals(500, get("/orders/broken"));
+
+        RouteMetrics route = onlyRoute();
+        assertEquals("/orders/{id}", route.getRoute());
+        assertEquals("5xx", route.getStatus());
+        assertEquals(1, route.getCount());
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    public void leavesOutTheWarmUpRequests() throws Exception {
+
+        assertEquals(200, get("/orders/1", WARMUP_TOKEN));
+        assertTrue(registry.getRoutes().isEmpty());
+
+        assertEquals(200, get("/orders/1", "guessed"));
+        assertEquals(1, onlyRoute().getCount());
+    }
+
+    private int get(String path) throws Exception {
+        return get(path, null);
+    }
+
+    private int get(String path, String warmupToken) throws Exception {
+        ContainerRequest request = new ContainerRequest(
+                URI.create("http://localhost/"),
+                URI.create("http://localhost" + path),
+                "GET",
+                null,
+                new MapPropertiesDelegate(),
+                null);
+        if (warmupToken != null) {
+            request.header(RequestMetricsFilter.WARMUP_HEADER, warmupToken);
+        }
+        try {
+            return handler.apply(request).get().getStatus();
+        } catch (ExecutionException e) {
+            // the exception reaches the container, which answers 500
+            return 500;
+        }
+    }
+
+    private double inFlight() {
+        for (MetricsRegistry.Sample sample : registry.getSamples()) {
+            if (sample.getName().equals("http_server_requests_in_flight")) {
+                return sample.getValue();
+            }
+        }
+        throw new AssertionError("no in-flight gauge");
+    }
+
+    private RouteMetrics onlyRoute() {
+        assertEquals(1, registry.getRoutes().size(), registry.getRoutes().toString());
+        return registry.getRoutes().iterator().next();
+    }
+}
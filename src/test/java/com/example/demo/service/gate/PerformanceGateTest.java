@@ -0,0 +1,204 @@
+/* (C)2023 */
+package com.example.demo.service.gate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.cloudfront.CloudFrontClient;
+import software.amazon.awssdk.services.cloudfront.model.CreateInvalidationRequest;
+import software.amazon.awssdk.services.cloudfront.model.CreateInvalidationResponse;
+import software.amazon.awssdk.services.codedeploy.CodeDeployClient;
+import software.amazon.awssdk.services.codedeploy.model.PutLifecycleEventHookExecutionStatusRequest;
+import software.amazon.awssdk.services.codedeploy.model.PutLifecycleEventHookExecutionStatusResponse;
+
+public class PerformanceGateTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+
+    @AfterEach
+    public void stopServers() {
+        servers.forEach(server -> server.stop(0));
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+
+    @Test
+    public void passesWhenTheTestListenerPerformsLikeProduction() throws IOException {
+
+        URI production = stub(5, 200);
+        URI test = stub(5, 200);
+        assertEquals(Collections.emptyList(), gate().evaluate(production, test));
+    }
+
+    @Test
+    public void failsWhenTheTestListenerIsSlower() throws IOException {
+
+        URI production = stub(5, 200);
+        URI test = stub(200, 200);
+        List<String> regressions = gate().evaluate(production, test);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("p99"));
+    }
+
+    @Test
+    public void failsWhenTheTestListenerReturnsErrors() throws IOException {
+
+        URI production = stub(0, 200);
+        URI test = stub(0, 503);
+        List<String> regressions = gate().evaluate(production, test);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("error rate"));
+    }
+
+    @Test
+    public void toleratesTheErrorsProductionAlsoHas() throws IOException {
+
+        URI production = stub(0, 500);
+        URI test = stub(0, 500);
+        assertEquals(Collections.emptyList(), gate().evaluate(production, test));
+    }
+
+    @Test
+    public void countsUnreachableListenersAsErrors() throws IOException {
+
+        URI production = stub(0, 200);
+        HttpServer stopped = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        URI test = URI.create("http://localhost:" + stopped.getAddress().getPort() + "/");
+        stopped.stop(0);
+        List<String> regressions = gate().evaluate(production, test);
+        assertTrue(regressions.stream().anyMatch(regression -> regression.startsWith("error rate")));
+    }
+
+    @Test
+    public void reportsFailedWhenTheGateIsNotConfigured() {
+
+        List<String> statuses = new ArrayList<>();
+        Map<String, Object> result = new PerformanceGateHandler(lifecycleHook(statuses), name -> null)
+                .handleRequest(event());
+
+        assertEquals(Arrays.asList(PerformanceGateHandler.FAILED), statuses);
+        assertEquals(PerformanceGateHandler.FAILED, result.get("status"));
+    }
+
+    @Test
+    public void reportsSucceededWhenTheInvalidationIsNotConfigured() {
+
+        List<String> statuses = new ArrayList<>();
+        CloudFrontClient cloudFront = fake(CloudFrontClient.class, "createInvalidation", request -> {
+            throw new AssertionError("No paths to invalidate");
+        });
+        Map<String, Object> result = new CacheInvalidationHandler(lifecycleHook(statuses), cloudFront, name -> null)
+                .handleRequest(event());
+
+        assertEquals(Arrays.asList(PerformanceGateHandler.SUCCEEDED), statuses);
+        assertTrue(String.valueOf(result.get("error")).contains("EDGE_INVALIDATION_PATHS"));
+    }
+
+    @Test
+    public void invalidatesTheDistributionOncePerDeployment() {
+
+        List<String> statuses = new ArrayList<>();
+        List<Object> invalidations = new ArrayList<>();
+        CloudFrontClient cloudFront = fake(CloudFrontClient.class, "createInvalidation", request -> {
+            invalidations.add(request);
+            return CreateInvalidationResponse.builder().build();
+        });
+        Map<String, String> environment = new HashMap<>();
+        environment.put("EDGE_DISTRIBUTION_ID", "E2EXAMPLE");
+        environment.put("EDGE_INVALIDATION_PATHS", "/*,/index.html");
+        new CacheInvalidationHandler(lifecycleHook(statuses), cloudFront, environment::get).handleRequest(event());
+
+        CreateInvalidationRequest request = (CreateInvalidationRequest) invalidations.get(0);
+        assertEquals("E2EXAMPLE", request.distributionId());
+        assertEquals("d-123", request.invalidationBatch().callerReference());
+        assertEquals(Arrays.asList("/*", "/index.html"), request.invalidationBatch().paths().items());
+        assertEquals(2, request.invalidationBatch().paths().quantity());
+        assertEquals(Arrays.asList(PerformanceGateHandler.SUCCEEDED), statuses);
+    }
+
+    private static Map<String, Object> event() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("DeploymentId", "d-123");
+        event.put("LifecycleEventHookExecutionId", "hook-456");
+        return event;
+    }
+
+    /**
+     * @return a client that adds the status of every PutLifecycleEventHookExecutionStatus request
+     *     of the hook execution of event() to statuses
+     */
+    private static LifecycleHookClient lifecycleHook(List<String> statuses) {
+        CodeDeployClient codeDeploy = fake(CodeDeployClient.class, "putLifecycleEventHookExecutionStatus", request -> {
+            PutLifecycleEventHookExecutionStatusRequest status = (PutLifecycleEventHookExecutionStatusRequest) request;
+            assertEquals("d-123", status.deploymentId());
+            assertEquals("hook-456", status.lifecycleEventHookExecutionId());
+            statuses.add(status.statusAsString());
+            return PutLifecycleEventHookExecutionStatusResponse.builder().build();
+        });
+        return new LifecycleHookClient(codeDeploy);
+    }
+
+    /**
+     * @return a client whose method answers its request with the handler, and whose other
+     *     methods fail
+     */
+    private static <T> T fake(Class<T> client, String method, Function<Object, Object> handler) {
+        InvocationHandler invocationHandler = (proxy, invoked, args) -> {
+            if (invoked.getName().equals(method) && args != null && args.length == 1) {
+                return handler.apply(args[0]);
+            }
+            throw new UnsupportedOperationException(invoked.getName());
+        };
+        return client.cast(Proxy.newProxyInstance(client.getClassLoader(), new Class<?>[] {client}, invocationHandler));
+    }
+
+    private static PerformanceGate gate() {
+        return new PerformanceGate(100, 4, 2000, 1.5, 25, 1);
+    }
+
+    /**
+     * @return the address of a local server that answers every request with the status, after
+     *     the delay
+     */
+    private URI stub(long delayMillis, int status) throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        executors.add(executor);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+    }
+}
@@ -0,0 +1,66 @@
+/* (C)2023 */
+package com.example.demo.toolchain;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class PipelineTimingReportTest {
+
+    private static final String EXECUTIONS = "{\"actionExecutionDetails\": ["
+            + action("Deploy", "Deploy", "2023-05-10T12:06:30+00:00", "2023-05-10T12:15:00+00:00")
+            + "," + action("Build", "Synth", "2023-05-10T12:00:10.500000+00:00", "2023-05-10T12:04:00+00:00")
+            + "," + action("Source", "CodeCommit", "2023-05-10T12:00:00+00:00", "2023-05-10T12:00:05+00:00")
+            + "," + action("Assets", "DockerAsset1", "2023-05-10T12:04:20+00:00", "2023-05-10T12:06:00+00:00")
+            + "," + action("Assets", "FileAsset1", "2023-05-10T12:04:20+00:00", "2023-05-10T12:04:50+00:00")
+            + "]}";
+
+    @Test
+    public void ordersTheStagesByStartTime() throws IOException {
+
+        Map<String, Instant[]> stages = report().stages();
+        assertEquals(Arrays.asList("Source", "Build", "Assets", "Deploy"), Arrays.asList(stages.keySet().toArray()));
+        Instant[] assets = stages.get("Assets");
+        assertEquals(Duration.ofSeconds(100), Duration.between(assets[0], assets[1]));
+    }
+
+    @Test
+    public void reportsTheTimeBetweenStagesAndTheTotal() throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        report().print(new PrintStream(out, true, "UTF-8"));
+        String printed = new String(out.toByteArray(), StandardCharsets.UTF_8);
+
+        // 5.5s after Source, 20s after Build, 30s after Assets
+        assertTrue(printed.matches("(?s).*Between stages\\s+0:55\\n.*"), printed);
+        assertTrue(printed.matches("(?s).*Total\\s+15:00\\n.*"), printed);
+        assertTrue(printed.contains("DockerAsset1"), printed);
+    }
+
+    @Test
+    public void readsEpochSecondTimestamps() throws IOException {
+
+        assertEquals(
+                Instant.ofEpochMilli(1683720000500L),
+                PipelineTimingReport.timestamp(new ObjectMapper().readTree("1683720000.5")));
+    }
+
+    private static PipelineTimingReport report() throws IOException {
+        return PipelineTimingReport.parse(new ObjectMapper().readTree(EXECUTIONS));
+    }
+
+    private static String action(String stage, String action, String start, String end) {
+        return "{\"stageName\":\"" + stage + "\",\"actionName\":\"" + action + "\",\"status\":\"Succeeded\","
+                + "\"startTime\":\"" + start + "\",\"lastUpdateTime\":\"" + end + "\"}";
+    }
+}